@@ -25,6 +25,7 @@ public class MaxBinding {
 
 	 public static final String BINDING_ID = "max";
 	public static final String SERIAL_NUMBER = "serialNumber";
+	public static final String ROOM_ID = "roomId";
 
 	   
 	 // List of main device types 
@@ -33,6 +34,7 @@ public class MaxBinding {
 	   public static final String DEVICE_WALLTHERMOSTAT = "wallthermostat";
 	   public static final String DEVICE_ECOSWITCH = "ecoswitch";
 	   public static final String DEVICE_SHUTTERCONTACT = "shuttercontact";
+	   public static final String ROOM = "room";
 	   public static final String BRIDGE_MAXCUBE = "bridge";
 	 
 	    // List of all Thing Type UIDs
@@ -41,6 +43,7 @@ public class MaxBinding {
 	    public final static ThingTypeUID WALLTHERMOSTAT_THING_TYPE = new ThingTypeUID(BINDING_ID, DEVICE_WALLTHERMOSTAT);
 	    public final static ThingTypeUID ECOSWITCH_THING_TYPE = new ThingTypeUID(BINDING_ID, DEVICE_ECOSWITCH);
 	    public final static ThingTypeUID SHUTTERCONTACT_THING_TYPE = new ThingTypeUID(BINDING_ID, DEVICE_SHUTTERCONTACT);
+	    public final static ThingTypeUID ROOM_THING_TYPE = new ThingTypeUID(BINDING_ID, ROOM);
 	    public final static ThingTypeUID CUBEBRIDGE_THING_TYPE = new ThingTypeUID(BINDING_ID, BRIDGE_MAXCUBE);
 
 	    // List of all Channel ids
@@ -51,10 +54,22 @@ public class MaxBinding {
 	    public final static String CHANNEL_SETTEMP = "set_temp";
 	    public final static String CHANNEL_SWITCH_STATE = "eco_mode";
 	    public final static String CHANNEL_CONTACT_STATE = "contact_state";
+	    public final static String CHANNEL_AVG_VALVE = "avg_valve";
+	    public final static String CHANNEL_MAX_VALVE = "max_valve";
+	    public final static String CHANNEL_MIN_ACTUALTEMP = "min_actual_temp";
+	    public final static String CHANNEL_WINDOW_OPEN = "window_open";
+	    public final static String CHANNEL_POLL_LATENCY = "poll_latency";
+	    public final static String CHANNEL_POLL_BYTES = "poll_bytes";
+	    public final static String CHANNEL_POLL_LINES = "poll_lines";
+	    public final static String CHANNEL_RECONNECTS = "reconnects";
+	    public final static String CHANNEL_QUEUE_DEPTH = "queue_depth";
+	    public final static String CHANNEL_QUEUE_WAIT = "queue_wait";
+	    public final static String CHANNEL_ACK_LATENCY = "ack_latency";
+	    public final static String CHANNEL_DUTY_CYCLE_REMAINING = "duty_cycle_remaining";
 	    
 	    public final static Collection<ThingTypeUID> SUPPORTED_THING_TYPES_UIDS = Lists.newArrayList(
 	    		HEATINGTHERMOSTAT_THING_TYPE, HEATINGTHERMOSTATPLUS_THING_TYPE, WALLTHERMOSTAT_THING_TYPE, 
-	    		ECOSWITCH_THING_TYPE, SHUTTERCONTACT_THING_TYPE, CUBEBRIDGE_THING_TYPE);
+	    		ECOSWITCH_THING_TYPE, SHUTTERCONTACT_THING_TYPE, ROOM_THING_TYPE, CUBEBRIDGE_THING_TYPE);
 
 	    public final static Set<ThingTypeUID> SUPPORTED_DEVICE_THING_TYPES_UIDS =ImmutableSet.of(
 	    		HEATINGTHERMOSTAT_THING_TYPE, HEATINGTHERMOSTATPLUS_THING_TYPE, WALLTHERMOSTAT_THING_TYPE, 
@@ -23,6 +23,8 @@ public class MaxCubeBridgeConfiguration {
 	public static final String REFRESH_INTERVAL = "refreshInterval";
 	public static final String EXCLUSIVE = "exclusive";
 	public static final String MAX_REQUESTS = "maxRequestsPerConnection";
+	public static final String SESSION = "session";
+	public static final String IDLE_TIMEOUT = "idleTimeout";
 	
 
 	/** The IP address of the MAX!Cube LAN gateway */
@@ -53,4 +55,16 @@ public class MaxCubeBridgeConfiguration {
 	 * in exclusive mode, how many requests are allowed until connection is closed and reopened
 	 */
 	public int maxRequestsPerConnection = 1000 ;
+
+	/** If set to true, the binding keeps one connection to the cube
+	 * open and pipelines the state requests and commands on it.
+	 * The connection is released after it has been idle for
+	 * idleTimeout, so other apps can connect to the cube in between.
+	 */
+	public boolean session = false;
+
+	/**
+	 * in session mode, the time in ms after which an idle connection is released
+	 */
+	public long idleTimeout = 60000 ;
 }
@@ -33,6 +33,24 @@ public final class Utils {
 	public static final int fromHex(String hex) {
 		return Integer.parseInt(hex, 16);
 	}
+
+	/**
+	 * Returns the integer value of a hexadecimal RF address.
+	 * 
+	 * @param rfAddress
+	 * 			the RF address as hexadecimal string
+	 * @return the RF address as integer, -1 if the RF address is not a valid hex value 
+	 */
+	public static final int rfAddressFromHex(String rfAddress) {
+		if (rfAddress == null || rfAddress.isEmpty()) {
+			return -1;
+		}
+		try {
+			return Integer.parseInt(rfAddress.trim(), 16);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
 	
 	/**
 	 * Returns the hexadecimal number of a number of integer values.
@@ -171,8 +189,24 @@ public final class Utils {
 	    if ( raw == null ) {
 	        return null;
 	    }
-	    final StringBuilder hex = new StringBuilder( 3 * raw.length );
-	    for ( final byte b : raw ) {
+	    return getHex(raw, 0, raw.length);
+	}
+
+	/**
+	 *  Convert a part of a byte array to a string representation of hexadecimals.
+	 *
+	 * @param raw the byte array
+	 * @param offset the offset of the first byte to convert
+	 * @param length the number of bytes to convert
+	 * @return String equivalent to hex string
+	 **/
+	public static String getHex( byte [] raw, int offset, int length ) {
+	    if ( length <= 0 ) {
+	        return "";
+	    }
+	    final StringBuilder hex = new StringBuilder( 3 * length );
+	    for ( int i = offset; i < offset + length; i++ ) {
+	        final byte b = raw[i];
 	        hex.append(HEXES.charAt((b & 0xF0) >> 4))
 	            .append(HEXES.charAt((b & 0x0F)))
 	            .append(" ");
@@ -0,0 +1,636 @@
+/**
+ * Copyright (c) 2014 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.max.internal.connection;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link MaxCubeConnection} holds the connection state of a single MAX! Cube.
+ * Requests can be submitted from any thread; all socket I/O and state transitions
+ * are executed on the I/O thread of the {@link MaxCubeConnectionManager}, so a slow
+ * or unreachable Cube never blocks other Cubes.
+ *
+ * <pre>
+ *  DISCONNECTED --request--> CONNECTING --connected--> CONNECTED
+ *       ^                        |                         |
+ *       +------ error/timeout ---+---- idle/error/timeout -+
+ * </pre>
+ *
+ * In session mode the connection is kept open and requests are pipelined: they are
+ * written to the Cube back to back without waiting for the previous response. As the
+ * Cube answers the requests in order, each response is matched to the oldest request
+ * still waiting for it, e.g. the S: acknowledgement to its command. The connection is
+ * released after it has been idle for the configured time, so other applications can
+ * connect to the Cube in between.
+ *
+ * While the connection is open, the Cube also sends lines on its own, e.g. an L: line
+ * when a window contact is opened. These lines are passed to the {@link MaxCubeLineListener}
+ * as soon as they are read. Without a listener they are returned with the next poll. The
+ * data the Cube sends after connecting is not passed to the listener: it is not pushed
+ * by the Cube, and is returned with the next poll unless a poll claims it.
+ */
+public final class MaxCubeConnection {
+
+	private enum State {
+		DISCONNECTED, CONNECTING, CONNECTED
+	}
+
+	private static final Logger logger = LoggerFactory.getLogger(MaxCubeConnection.class);
+
+	private static final Charset CHARSET = Charset.forName("ISO-8859-1");
+
+	/** time in ms to wait for the connection to the Cube to be established */
+	private static final long CONNECT_TIMEOUT = 10000;
+
+	/** time in ms to wait for the response of the Cube */
+	private static final long RESPONSE_TIMEOUT = 10000;
+
+	/** maximum number of lines kept that are not requested by any request */
+	private static final int MAX_UNSOLICITED_LINES = 1000;
+
+	private static final String POLL_REQUEST = "l:";
+	private static final String POLL_RESPONSE = "L:";
+	private static final String COMMAND_RESPONSE = "S:";
+
+	private final MaxCubeConnectionManager manager;
+	private final String ipAddress;
+	private final int port;
+
+	private volatile boolean exclusive = false;
+	private volatile int maxRequestsPerConnection = 0;
+	private volatile boolean session = false;
+	private volatile long idleTimeout = 0;
+	private volatile boolean closed = false;
+	private volatile MaxCubeLineListener lineListener = null;
+
+	private final AtomicInteger errorCount = new AtomicInteger();
+	private final AtomicInteger reconnectCount = new AtomicInteger();
+
+	private final Queue<MaxCubeRequest> pendingRequests = new ConcurrentLinkedQueue<MaxCubeRequest>();
+	private final Queue<MaxCubeRequest> cancelledRequests = new ConcurrentLinkedQueue<MaxCubeRequest>();
+
+	/* the fields below are only accessed by the I/O thread */
+	private State state = State.DISCONNECTED;
+	private SocketChannel channel = null;
+	private SelectionKey key = null;
+	private final Deque<MaxCubeRequest> inFlightRequests = new ArrayDeque<MaxCubeRequest>();
+	private final Deque<PendingWrite> pendingWrites = new ArrayDeque<PendingWrite>();
+	private boolean awaitingConnectData = false;
+	private boolean connectDataClaimed = false;
+	private long deadline = 0;
+	private long lastActivity = 0;
+	private int requestCount = 0;
+	private final ByteBuffer readBuffer = ByteBuffer.allocate(4096);
+	private byte[] lineBuffer = new byte[1024];
+	private int lineLength = 0;
+	private final List<String> unsolicitedLines = new ArrayList<String>();
+	private boolean lostByError = false;
+
+	/**
+	 * The payload of a request to be written to the Cube, optionally completing the request once written.
+	 */
+	private static final class PendingWrite {
+		final ByteBuffer buffer;
+		final MaxCubeRequest request;
+		final boolean completesRequest;
+
+		PendingWrite(ByteBuffer buffer, MaxCubeRequest request, boolean completesRequest) {
+			this.buffer = buffer;
+			this.request = request;
+			this.completesRequest = completesRequest;
+		}
+
+		/**
+		 * @return true if nothing of the request has been written yet
+		 */
+		boolean isUnsent() {
+			return buffer.position() == 0;
+		}
+	}
+
+	MaxCubeConnection(MaxCubeConnectionManager manager, String ipAddress, int port) {
+		this.manager = manager;
+		this.ipAddress = ipAddress;
+		this.port = port;
+	}
+
+	/**
+	 * If set to true, the connection to the Cube is left open after a request has been completed.
+	 */
+	public void setExclusive(boolean exclusive) {
+		this.exclusive = exclusive;
+	}
+
+	/**
+	 * In exclusive mode, the number of requests after which the connection is closed and reopened.
+	 * A value of 0 or less keeps the connection open.
+	 */
+	public void setMaxRequestsPerConnection(int maxRequestsPerConnection) {
+		this.maxRequestsPerConnection = maxRequestsPerConnection;
+	}
+
+	/**
+	 * Enables the pipelined session mode.
+	 *
+	 * @param session
+	 *            true to keep the connection open and pipeline the requests
+	 * @param idleTimeout
+	 *            the time in ms after which an idle connection is released, 0 to keep it open
+	 */
+	public void setSession(boolean session, long idleTimeout) {
+		this.session = session;
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Sets the listener receiving the lines sent by the Cube on its own, see {@link MaxCubeLineListener}.
+	 *
+	 * @param lineListener
+	 *            the listener, null to return these lines with the next poll
+	 */
+	public void setLineListener(MaxCubeLineListener lineListener) {
+		this.lineListener = lineListener;
+	}
+
+	/**
+	 * @return the number of times the connection to the Cube has been lost because of an error
+	 */
+	public int getErrorCount() {
+		return errorCount.get();
+	}
+
+	/**
+	 * @return the number of times the connection has been established again after an error
+	 */
+	public int getReconnectCount() {
+		return reconnectCount.get();
+	}
+
+	public String getIpAddress() {
+		return ipAddress;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * Requests the latest live information of all devices. The request completes with the
+	 * L: line. When a new connection is opened for the request, the complete data sent
+	 * by the Cube after connecting (H:, M:, C: and L: lines) is returned.
+	 *
+	 * @return the request, holding the raw lines read from the Cube
+	 */
+	public MaxCubeRequest poll() {
+		return submit(new MaxCubeRequest(POLL_REQUEST, POLL_RESPONSE));
+	}
+
+	/**
+	 * Sends a command to the Cube. The request completes with the S: acknowledgement
+	 * of the Cube for this command.
+	 *
+	 * @param commandString
+	 *            the command string, e.g. as created by S_Command
+	 * @return the request
+	 */
+	public MaxCubeRequest send(String commandString) {
+		return submit(new MaxCubeRequest(commandString, COMMAND_RESPONSE));
+	}
+
+	/**
+	 * Closes the connection. Pending requests are failed.
+	 */
+	public void close() {
+		closed = true;
+		manager.wakeup();
+	}
+
+	private MaxCubeRequest submit(MaxCubeRequest request) {
+		if (closed) {
+			request.fail(new IOException("Connection to MAX! Cube " + ipAddress + " is closed"));
+			return request;
+		}
+		request.setConnection(this);
+		pendingRequests.add(request);
+		manager.wakeup();
+		return request;
+	}
+
+	/**
+	 * Removes a cancelled request. A request which has not been started yet is removed right away, the
+	 * I/O thread removes a started request unless it has already been written (see
+	 * {@link #removeCancelledRequests()}).
+	 */
+	void cancel(MaxCubeRequest request) {
+		if (!pendingRequests.remove(request)) {
+			cancelledRequests.add(request);
+			manager.wakeup();
+		}
+	}
+
+	/**
+	 * @return true if the connection is closed and can be removed from the connection manager
+	 */
+	boolean isReleased() {
+		return closed && state == State.DISCONNECTED;
+	}
+
+	/**
+	 * @return the point in time at which this connection needs to be processed again, 0 if none
+	 */
+	long getDeadline() {
+		if (state == State.CONNECTING || !inFlightRequests.isEmpty()) {
+			return deadline;
+		}
+		if (state == State.CONNECTED && session && idleTimeout > 0) {
+			return lastActivity + idleTimeout;
+		}
+		return 0;
+	}
+
+	/**
+	 * Drives the state machine of this connection. Called by the I/O thread.
+	 */
+	void process(Selector selector, long now) {
+		if (closed) {
+			IOException e = new IOException("Connection to MAX! Cube " + ipAddress + " closed");
+			disconnect(e);
+			failPendingRequests(e);
+			return;
+		}
+		removeCancelledRequests();
+
+		if (state == State.CONNECTING && now >= deadline) {
+			ConnectException e = new ConnectException("Connection timed out on " + ipAddress + " port " + port);
+			disconnect(e);
+			failPendingRequests(e);
+		} else if (!inFlightRequests.isEmpty() && now >= deadline) {
+			disconnect(new SocketTimeoutException("Read timed out on " + ipAddress + " port " + port));
+		} else if (state == State.CONNECTED && session && idleTimeout > 0 && inFlightRequests.isEmpty()
+				&& pendingWrites.isEmpty() && pendingRequests.isEmpty() && now >= lastActivity + idleTimeout) {
+			logger.debug("Releasing idle connection to MAX! Cube {}", ipAddress);
+			disconnect(null);
+		}
+
+		if (pendingRequests.isEmpty()) {
+			return;
+		}
+		if (state == State.DISCONNECTED) {
+			connect(selector, now);
+		} else if (state == State.CONNECTED) {
+			startPendingRequests(now);
+		}
+	}
+
+	/**
+	 * Removes the cancelled requests which have not been written yet, so the Cube never receives them. A
+	 * request which has already been (partly) written stays in flight until the Cube answers it, the
+	 * response is then passed on as an unsolicited line and can not be taken for the response of the next
+	 * request.
+	 */
+	private void removeCancelledRequests() {
+		MaxCubeRequest request;
+		while ((request = cancelledRequests.poll()) != null) {
+			Iterator<PendingWrite> writes = pendingWrites.iterator();
+			while (writes.hasNext()) {
+				PendingWrite write = writes.next();
+				if (write.request == request && write.isUnsent()) {
+					writes.remove();
+					inFlightRequests.remove(request);
+					logger.debug("Removed cancelled request to MAX! Cube {}", ipAddress);
+					onRequestCompleted();
+					break;
+				}
+			}
+		}
+	}
+
+	private void connect(Selector selector, long now) {
+		try {
+			logger.debug("Open new connection... to {} port {}", ipAddress, port);
+			deadline = now + CONNECT_TIMEOUT;
+			channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			boolean connected = channel.connect(new InetSocketAddress(ipAddress, port));
+			key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+			state = State.CONNECTING;
+			if (connected) {
+				onConnected(now);
+			}
+		} catch (IOException e) {
+			disconnect(e);
+			failPendingRequests(e);
+		}
+	}
+
+	/**
+	 * Called by the I/O thread when the selection key of this connection is ready.
+	 */
+	void handle(SelectionKey selectedKey, long now) {
+		boolean connecting = state == State.CONNECTING;
+		try {
+			if (selectedKey.isConnectable()) {
+				if (channel.finishConnect()) {
+					onConnected(now);
+				}
+				return;
+			}
+			if (selectedKey.isReadable()) {
+				onReadable(now);
+			}
+			if (selectedKey.isValid() && selectedKey.isWritable()) {
+				onWritable();
+			}
+		} catch (IOException e) {
+			disconnect(e);
+			if (connecting) {
+				failPendingRequests(e);
+			}
+		}
+	}
+
+	private void onConnected(long now) throws IOException {
+		if (lostByError) {
+			reconnectCount.incrementAndGet();
+			lostByError = false;
+		}
+		state = State.CONNECTED;
+		awaitingConnectData = true;
+		connectDataClaimed = false;
+		requestCount = 0;
+		lastActivity = now;
+		key.interestOps(SelectionKey.OP_READ);
+		startPendingRequests(now);
+	}
+
+	/**
+	 * Starts the pending requests. Without session mode, a request is only started
+	 * once the previous request has been completed.
+	 */
+	private void startPendingRequests(long now) {
+		while (state == State.CONNECTED) {
+			if (!session && (!inFlightRequests.isEmpty() || !pendingWrites.isEmpty())) {
+				return;
+			}
+			if (!session && !exclusive && requestCount > 0) {
+				// without exclusive mode every request uses a new connection
+				return;
+			}
+			MaxCubeRequest request = pendingRequests.poll();
+			if (request == null) {
+				return;
+			}
+			if (request.isCancelled()) {
+				continue;
+			}
+			startRequest(request, now);
+		}
+	}
+
+	private void startRequest(MaxCubeRequest request, long now) {
+		if (inFlightRequests.isEmpty()) {
+			deadline = now + RESPONSE_TIMEOUT;
+		}
+		lastActivity = now;
+		requestCount++;
+		if (request.getResponsePrefix() == null) {
+			queueWrite(request, true);
+			return;
+		}
+
+		inFlightRequests.add(request);
+		if (POLL_RESPONSE.equals(request.getResponsePrefix())) {
+			request.addLines(unsolicitedLines);
+			unsolicitedLines.clear();
+			if (awaitingConnectData && !connectDataClaimed) {
+				// the data sent after connecting completes the request
+				connectDataClaimed = true;
+				request.setServedByConnectData(true);
+				return;
+			}
+			logger.debug("Sending state request #{} to MAX! Cube {}", requestCount, ipAddress);
+		}
+		queueWrite(request, false);
+	}
+
+	private void queueWrite(MaxCubeRequest request, boolean completesRequest) {
+		String payload = request.getPayload();
+		// note that "L:\r\n" or "l:\n" would not work
+		ByteBuffer buffer = CHARSET.encode(payload.endsWith("\r\n") ? payload : payload + "\r\n");
+		pendingWrites.add(new PendingWrite(buffer, request, completesRequest));
+		try {
+			onWritable();
+		} catch (IOException e) {
+			disconnect(e);
+		}
+	}
+
+	private void onWritable() throws IOException {
+		PendingWrite write;
+		while ((write = pendingWrites.peek()) != null) {
+			if (write.request.isCancelled() && write.isUnsent()) {
+				// skip requests cancelled while waiting for the previous writes
+				pendingWrites.poll();
+				inFlightRequests.remove(write.request);
+				onRequestCompleted();
+				if (state != State.CONNECTED) {
+					return;
+				}
+				continue;
+			}
+			channel.write(write.buffer);
+			if (write.buffer.hasRemaining()) {
+				key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				return;
+			}
+			pendingWrites.poll();
+			if (write.completesRequest) {
+				write.request.complete();
+				onRequestCompleted();
+				if (state != State.CONNECTED) {
+					return;
+				}
+			}
+		}
+		key.interestOps(SelectionKey.OP_READ);
+	}
+
+	private void onReadable(long now) throws IOException {
+		readBuffer.clear();
+		int read = channel.read(readBuffer);
+		if (read < 0) {
+			disconnect(new IOException("Connection closed by MAX! Cube " + ipAddress));
+			return;
+		}
+		readBuffer.flip();
+		while (readBuffer.hasRemaining() && state == State.CONNECTED) {
+			byte b = readBuffer.get();
+			if (b == '\n') {
+				int length = lineLength;
+				if (length > 0 && lineBuffer[length - 1] == '\r') {
+					length--;
+				}
+				lineLength = 0;
+				onLine(new String(lineBuffer, 0, length, CHARSET), now);
+			} else {
+				if (lineLength == lineBuffer.length) {
+					byte[] newBuffer = new byte[lineBuffer.length * 2];
+					System.arraycopy(lineBuffer, 0, newBuffer, 0, lineLength);
+					lineBuffer = newBuffer;
+				}
+				lineBuffer[lineLength++] = b;
+			}
+		}
+	}
+
+	private void onLine(String line, long now) {
+		lastActivity = now;
+		deadline = now + RESPONSE_TIMEOUT;
+
+		if (awaitingConnectData) {
+			// the Cube sends this data before answering any request, it only belongs to the request claiming it
+			if (line.startsWith(POLL_RESPONSE)) {
+				awaitingConnectData = false;
+			}
+			MaxCubeRequest claimingRequest = null;
+			for (MaxCubeRequest inFlightRequest : inFlightRequests) {
+				if (inFlightRequest.isServedByConnectData()) {
+					claimingRequest = inFlightRequest;
+					break;
+				}
+			}
+			if (claimingRequest == null || claimingRequest.isCancelled()) {
+				bufferUnsolicitedLine(line);
+			} else {
+				claimingRequest.addLine(line);
+				if (!awaitingConnectData) {
+					inFlightRequests.remove(claimingRequest);
+					claimingRequest.complete();
+					onRequestCompleted();
+				}
+			}
+			return;
+		}
+
+		MaxCubeRequest request = inFlightRequests.peek();
+		if (request == null || !POLL_RESPONSE.equals(request.getResponsePrefix()) && !request.isCompletedBy(line)) {
+			// all lines are passed with the next poll, except the response of a command
+			addUnsolicitedLine(line);
+			return;
+		}
+
+		if (request.isCancelled()) {
+			// the request has been written before it was cancelled, its response is consumed here
+			addUnsolicitedLine(line);
+		} else {
+			request.addLine(line);
+		}
+		if (request.isCompletedBy(line)) {
+			inFlightRequests.poll();
+			request.complete();
+			onRequestCompleted();
+		}
+	}
+
+	private void addUnsolicitedLine(String line) {
+		MaxCubeLineListener listener = lineListener;
+		if (listener != null) {
+			try {
+				listener.onUnsolicitedLine(this, line);
+			} catch (RuntimeException e) {
+				logger.debug("Error passing line read from MAX! Cube {} to listener", ipAddress, e);
+			}
+			return;
+		}
+		bufferUnsolicitedLine(line);
+	}
+
+	private void bufferUnsolicitedLine(String line) {
+		if (unsolicitedLines.size() >= MAX_UNSOLICITED_LINES) {
+			unsolicitedLines.remove(0);
+		}
+		unsolicitedLines.add(line);
+	}
+
+	private void onRequestCompleted() {
+		if (session || !inFlightRequests.isEmpty() || !pendingWrites.isEmpty()) {
+			return;
+		}
+		if (!exclusive) {
+			disconnect(null);
+		} else if (maxRequestsPerConnection > 0 && requestCount >= maxRequestsPerConnection) {
+			logger.debug("maxRequestsPerConnection reached, reconnecting.");
+			disconnect(null);
+		}
+	}
+
+	private void failPendingRequests(Exception cause) {
+		MaxCubeRequest request;
+		while ((request = pendingRequests.poll()) != null) {
+			request.fail(cause);
+		}
+	}
+
+	private void disconnect(Exception cause) {
+		if (channel != null) {
+			if (cause != null) {
+				logger.debug("Closing connection to MAX! Cube {}: {}", ipAddress, cause.getMessage());
+				if (!closed) {
+					errorCount.incrementAndGet();
+					lostByError = true;
+				}
+			}
+			if (key != null) {
+				key.cancel();
+			}
+			try {
+				channel.close();
+			} catch (IOException e) {
+				logger.trace("Error closing connection to MAX! Cube {}", ipAddress, e);
+			}
+		}
+		channel = null;
+		key = null;
+		state = State.DISCONNECTED;
+		awaitingConnectData = false;
+		lineLength = 0;
+		unsolicitedLines.clear();
+
+		Exception failure = cause != null ? cause : new IOException("Connection to MAX! Cube " + ipAddress
+				+ " closed");
+		MaxCubeRequest request;
+		while ((request = inFlightRequests.poll()) != null) {
+			request.fail(failure);
+		}
+		PendingWrite write;
+		while ((write = pendingWrites.poll()) != null) {
+			if (write.completesRequest) {
+				write.request.fail(failure);
+			}
+		}
+	}
+}
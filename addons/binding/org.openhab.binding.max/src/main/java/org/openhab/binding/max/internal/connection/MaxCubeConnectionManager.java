@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) 2014 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.max.internal.connection;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link MaxCubeConnectionManager} handles the connections to all MAX! Cubes
+ * using non-blocking I/O on a single thread. Each {@link MaxCubeConnection} keeps its
+ * own state, so there is no need to serialize the communication with the different Cubes.
+ *
+ * The I/O thread is started when the first connection is opened and stops when the
+ * last connection has been closed.
+ */
+public final class MaxCubeConnectionManager implements Runnable {
+
+	private static final Logger logger = LoggerFactory.getLogger(MaxCubeConnectionManager.class);
+
+	private static final MaxCubeConnectionManager instance = new MaxCubeConnectionManager();
+
+	private final List<MaxCubeConnection> connections = new CopyOnWriteArrayList<MaxCubeConnection>();
+
+	private Selector selector = null;
+	private Thread ioThread = null;
+
+	private MaxCubeConnectionManager() {
+	}
+
+	public static MaxCubeConnectionManager getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Creates a new connection to a MAX! Cube. The socket itself is opened as soon
+	 * as the first request is submitted to the connection.
+	 *
+	 * @param ipAddress
+	 *            the IP address of the MAX! Cube
+	 * @param port
+	 *            the port of the MAX! Cube
+	 * @return the connection
+	 * @throws IOException
+	 *             if the selector could not be opened
+	 */
+	public synchronized MaxCubeConnection open(String ipAddress, int port) throws IOException {
+		if (ioThread == null) {
+			selector = Selector.open();
+			ioThread = new Thread(this, "MAX! Cube I/O");
+			ioThread.setDaemon(true);
+			ioThread.start();
+		}
+		MaxCubeConnection connection = new MaxCubeConnection(this, ipAddress, port);
+		connections.add(connection);
+		return connection;
+	}
+
+	synchronized void wakeup() {
+		if (selector != null) {
+			selector.wakeup();
+		}
+	}
+
+	@Override
+	public void run() {
+		Selector selector;
+		synchronized (this) {
+			selector = this.selector;
+		}
+		logger.debug("MAX! Cube I/O thread started.");
+		while (true) {
+			try {
+				selector.select(getSelectTimeout());
+				long now = System.currentTimeMillis();
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (key.isValid()) {
+						((MaxCubeConnection) key.attachment()).handle(key, now);
+					}
+				}
+
+				for (MaxCubeConnection connection : connections) {
+					connection.process(selector, now);
+					if (connection.isReleased()) {
+						connections.remove(connection);
+					}
+				}
+			} catch (Exception e) {
+				logger.warn("Unexpected error in MAX! Cube I/O thread: {}", e.getMessage(), e);
+			}
+
+			synchronized (this) {
+				if (connections.isEmpty()) {
+					try {
+						selector.close();
+					} catch (IOException e) {
+						logger.trace("Error closing selector", e);
+					}
+					this.selector = null;
+					ioThread = null;
+					logger.debug("MAX! Cube I/O thread stopped.");
+					return;
+				}
+			}
+		}
+	}
+
+	private long getSelectTimeout() {
+		long now = System.currentTimeMillis();
+		long timeout = 0;
+		for (MaxCubeConnection connection : connections) {
+			long deadline = connection.getDeadline();
+			if (deadline > 0) {
+				long remaining = Math.max(1, deadline - now);
+				timeout = timeout == 0 ? remaining : Math.min(timeout, remaining);
+			}
+		}
+		return timeout;
+	}
+}
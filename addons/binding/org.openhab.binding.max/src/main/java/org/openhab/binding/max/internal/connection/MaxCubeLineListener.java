@@ -0,0 +1,27 @@
+/**
+ * Copyright (c) 2014 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.max.internal.connection;
+
+/**
+ * The {@link MaxCubeLineListener} receives the lines a MAX! Cube sends on its own,
+ * e.g. the L: line sent when the state of a device changes while the connection is open.
+ */
+public interface MaxCubeLineListener {
+
+	/**
+	 * Called by the I/O thread of the {@link MaxCubeConnectionManager} for each line read
+	 * from the Cube that is not part of the response to a request. As this blocks the I/O
+	 * of all Cubes, the line has to be processed on another thread.
+	 *
+	 * @param connection
+	 *            the connection the line has been read from
+	 * @param line
+	 *            the line without the line terminator
+	 */
+	void onUnsolicitedLine(MaxCubeConnection connection, String line);
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright (c) 2014 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.max.internal.connection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A single request to a MAX! Cube handled by a {@link MaxCubeConnection}.
+ * The request is completed by the connection manager I/O thread, either when the
+ * expected response line has been read or, for requests without a response, once
+ * the request has been written to the Cube.
+ *
+ * The result of the request are the raw lines read from the Cube while the request
+ * was active. Cancelling the request removes it from its connection, unless it has
+ * already been written to the Cube.
+ */
+public final class MaxCubeRequest implements Future<List<String>> {
+
+	private final String payload;
+	private final String responsePrefix;
+
+	private boolean servedByConnectData = false;
+
+	private final List<String> lines = new ArrayList<String>();
+	private final CountDownLatch done = new CountDownLatch(1);
+	private volatile Exception failure = null;
+	private volatile boolean cancelled = false;
+	private volatile MaxCubeConnection connection = null;
+
+	/**
+	 * Creates a new request.
+	 *
+	 * @param payload
+	 *            the request line to be written to the Cube, or <code>null</code> if
+	 *            only the data the Cube sends after connecting is required
+	 * @param responsePrefix
+	 *            the prefix of the line completing the request (e.g. <code>L:</code>),
+	 *            or <code>null</code> if the request completes once written
+	 */
+	MaxCubeRequest(String payload, String responsePrefix) {
+		this.payload = payload;
+		this.responsePrefix = responsePrefix;
+	}
+
+	String getPayload() {
+		return payload;
+	}
+
+	String getResponsePrefix() {
+		return responsePrefix;
+	}
+
+	/**
+	 * @return true if the request is answered by the data the Cube sends after connecting
+	 */
+	boolean isServedByConnectData() {
+		return servedByConnectData;
+	}
+
+	void setServedByConnectData(boolean servedByConnectData) {
+		this.servedByConnectData = servedByConnectData;
+	}
+
+	void setConnection(MaxCubeConnection connection) {
+		this.connection = connection;
+	}
+
+	boolean isCompletedBy(String line) {
+		return responsePrefix != null && line.startsWith(responsePrefix);
+	}
+
+	void addLine(String line) {
+		lines.add(line);
+	}
+
+	void addLines(List<String> received) {
+		lines.addAll(received);
+	}
+
+	void complete() {
+		done.countDown();
+	}
+
+	void fail(Exception e) {
+		failure = e;
+		done.countDown();
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		if (isDone()) {
+			return false;
+		}
+		cancelled = true;
+		done.countDown();
+		MaxCubeConnection connection = this.connection;
+		if (connection != null) {
+			connection.cancel(this);
+		}
+		return true;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public boolean isDone() {
+		return done.getCount() == 0;
+	}
+
+	@Override
+	public List<String> get() throws InterruptedException, ExecutionException {
+		done.await();
+		return getResult();
+	}
+
+	@Override
+	public List<String> get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+			TimeoutException {
+		if (!done.await(timeout, unit)) {
+			throw new TimeoutException("No response from MAX! Cube within " + unit.toMillis(timeout) + "ms");
+		}
+		return getResult();
+	}
+
+	private List<String> getResult() throws ExecutionException {
+		if (cancelled) {
+			throw new CancellationException();
+		}
+		if (failure != null) {
+			throw new ExecutionException(failure);
+		}
+		return lines;
+	}
+}
@@ -0,0 +1,199 @@
+/**
+ * Copyright (c) 2014 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.max.internal.console;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.eclipse.osgi.framework.console.CommandInterpreter;
+import org.eclipse.osgi.framework.console.CommandProvider;
+import org.openhab.binding.max.internal.handler.DeviceHistory;
+import org.openhab.binding.max.internal.handler.LatencyHistogram;
+import org.openhab.binding.max.internal.handler.MaxCubeBridgeHandler;
+import org.openhab.binding.max.internal.handler.MaxCubeMetrics;
+import org.openhab.binding.max.internal.message.Device;
+import org.openhab.binding.max.internal.message.MessageType;
+
+/**
+ * The {@link MaxConsoleCommandProvider} provides the <code>max</code> console command,
+ * which shows the history kept by the {@link MaxCubeBridgeHandler}s for their thermostats
+ * and the performance of the communication with the MAX! Cubes.
+ */
+public final class MaxConsoleCommandProvider implements CommandProvider {
+
+	private static final int DEFAULT_SAMPLES = 20;
+	private static final int DEFAULT_TREND_MINUTES = 60;
+	private static final int DEFAULT_STUCK_MINUTES = 120;
+	private static final double DEFAULT_STUCK_DEVIATION = 2.0;
+
+	private final List<MaxCubeBridgeHandler> bridgeHandlers = new CopyOnWriteArrayList<MaxCubeBridgeHandler>();
+
+	public void addBridgeHandler(MaxCubeBridgeHandler bridgeHandler) {
+		bridgeHandlers.add(bridgeHandler);
+	}
+
+	public void removeBridgeHandler(MaxCubeBridgeHandler bridgeHandler) {
+		bridgeHandlers.remove(bridgeHandler);
+	}
+
+	/**
+	 * @return true if no bridge handler is known
+	 */
+	public boolean isEmpty() {
+		return bridgeHandlers.isEmpty();
+	}
+
+	/**
+	 * Executes the <code>max</code> console command.
+	 *
+	 * @param interpreter
+	 *            the command interpreter
+	 */
+	public void _max(CommandInterpreter interpreter) {
+		String subCommand = interpreter.nextArgument();
+		try {
+			if ("history".equals(subCommand)) {
+				String serialNumber = interpreter.nextArgument();
+				printHistory(interpreter, serialNumber, parseInt(interpreter.nextArgument(), DEFAULT_SAMPLES));
+			} else if ("trend".equals(subCommand)) {
+				printTrends(interpreter, parseInt(interpreter.nextArgument(), DEFAULT_TREND_MINUTES));
+			} else if ("metrics".equals(subCommand)) {
+				printMetrics(interpreter);
+			} else if ("stuck".equals(subCommand)) {
+				int minutes = parseInt(interpreter.nextArgument(), DEFAULT_STUCK_MINUTES);
+				String deviation = interpreter.nextArgument();
+				printStuckValves(interpreter, minutes,
+						deviation == null ? DEFAULT_STUCK_DEVIATION : Double.parseDouble(deviation));
+			} else {
+				interpreter.print(getHelp());
+			}
+		} catch (NumberFormatException e) {
+			interpreter.println("Invalid number: " + e.getMessage());
+		}
+	}
+
+	private static int parseInt(String value, int defaultValue) {
+		return value == null ? defaultValue : Integer.parseInt(value);
+	}
+
+	private void printHistory(CommandInterpreter interpreter, String serialNumber, int samples) {
+		if (serialNumber == null) {
+			interpreter.print(getHelp());
+			return;
+		}
+		for (MaxCubeBridgeHandler bridgeHandler : bridgeHandlers) {
+			DeviceHistory history = bridgeHandler.getDeviceHistory(serialNumber);
+			if (history == null) {
+				continue;
+			}
+			SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+			interpreter.println("time                 actual  setpoint  valve");
+			for (int i = Math.max(0, history.size() - samples); i < history.size(); i++) {
+				interpreter.println(String.format(Locale.ENGLISH, "%s  %6.1f  %8.1f  %4d%%",
+						format.format(new Date(history.getTimestamp(i))), history.getActualTemperature(i),
+						history.getSetpointTemperature(i), history.getValvePosition(i)));
+			}
+			return;
+		}
+		interpreter.println("No history for device " + serialNumber);
+	}
+
+	private void printTrends(CommandInterpreter interpreter, int minutes) {
+		long since = System.currentTimeMillis() - minutes * 60000L;
+		for (MaxCubeBridgeHandler bridgeHandler : bridgeHandlers) {
+			for (Device device : bridgeHandler.getDevices()) {
+				DeviceHistory history = bridgeHandler.getDeviceHistory(device.getSerialNumber());
+				if (history == null) {
+					continue;
+				}
+				double trend = history.getTemperatureTrend(since);
+				interpreter.println(String.format(Locale.ENGLISH, "%s %-30s %s", device.getSerialNumber(),
+						device.getName(), Double.isNaN(trend) ? "n/a" : String.format(Locale.ENGLISH, "%+.2f °C/h", trend)));
+			}
+		}
+	}
+
+	private void printStuckValves(CommandInterpreter interpreter, int minutes, double deviation) {
+		long now = System.currentTimeMillis();
+		int count = 0;
+		for (MaxCubeBridgeHandler bridgeHandler : bridgeHandlers) {
+			for (Device device : bridgeHandler.getDevices()) {
+				DeviceHistory history = bridgeHandler.getDeviceHistory(device.getSerialNumber());
+				if (history != null && history.isValveStuck(now, minutes * 60000L, deviation)) {
+					int latest = history.size() - 1;
+					interpreter.println(String.format(Locale.ENGLISH, "%s %-30s valve %d%%, actual %.1f °C, setpoint %.1f °C",
+							device.getSerialNumber(), device.getName(), history.getValvePosition(latest),
+							history.getActualTemperature(latest), history.getSetpointTemperature(latest)));
+					count++;
+				}
+			}
+		}
+		interpreter.println(count + " thermostats with a valve unchanged for " + minutes + " minutes and a deviation of at least "
+				+ deviation + " °C");
+	}
+
+	private void printMetrics(CommandInterpreter interpreter) {
+		for (MaxCubeBridgeHandler bridgeHandler : bridgeHandlers) {
+			MaxCubeMetrics metrics = bridgeHandler.getMetrics();
+			interpreter.println("MAX! Cube " + bridgeHandler.getThing().getUID());
+			interpreter.println(String.format(Locale.ENGLISH, "  polls %d, lines %d, bytes %d, last poll %d lines / %d bytes",
+					metrics.getPolls(), metrics.getLinesRead(), metrics.getBytesRead(), metrics.getLastPollLines(),
+					metrics.getLastPollBytes()));
+			printHistogram(interpreter, "poll latency", metrics.getPollLatency());
+			printHistogram(interpreter, "queue wait", metrics.getQueueWait());
+			printHistogram(interpreter, "ack latency", metrics.getAcknowledgeLatency());
+			for (MessageType type : MessageType.values()) {
+				if (metrics.getParseCount(type) > 0) {
+					interpreter.println(String.format(Locale.ENGLISH, "  %s: messages %d, mean parse time %.1f µs", type,
+							metrics.getParseCount(type), metrics.getMeanParseTime(type)));
+				}
+			}
+			interpreter.println(String.format(Locale.ENGLISH,
+					"  reconnects %d, connection errors %d, queued commands %d, duty cycle remaining %d%%",
+					bridgeHandler.getReconnectCount(), bridgeHandler.getConnectionErrorCount(),
+					bridgeHandler.getCommandQueueSize(), bridgeHandler.getDutyCycleRemaining()));
+			interpreter.println(String.format(Locale.ENGLISH, "  pending device events %d, coalesced device events %d",
+					bridgeHandler.getPendingDeviceEvents(), bridgeHandler.getCoalescedDeviceEvents()));
+		}
+	}
+
+	private static void printHistogram(CommandInterpreter interpreter, String name, LatencyHistogram histogram) {
+		if (histogram.getCount() == 0) {
+			interpreter.println("  " + name + ": none");
+			return;
+		}
+		StringBuilder buckets = new StringBuilder();
+		long[] bounds = LatencyHistogram.getBucketBounds();
+		long[] counts = histogram.getBucketCounts();
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] > 0) {
+				buckets.append(i < bounds.length ? " <=" + bounds[i] : " >" + bounds[bounds.length - 1]).append(':')
+						.append(counts[i]);
+			}
+		}
+		interpreter.println(String.format(Locale.ENGLISH, "  %s: count %d, mean %.0f ms, p95 %d ms, max %d ms,%s", name,
+				histogram.getCount(), histogram.getMean(), histogram.getPercentile(95), histogram.getMax(), buckets));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getHelp() {
+		StringBuilder help = new StringBuilder();
+		help.append("---MAX! commands---\n");
+		help.append("\tmax history <serial number> [<samples>] - show the latest samples of a thermostat\n");
+		help.append("\tmax trend [<minutes>] - show the temperature trend of all thermostats\n");
+		help.append("\tmax metrics - show the performance of the communication with the MAX! Cubes\n");
+		help.append("\tmax stuck [<minutes> [<deviation>]] - list thermostats whose valve seems to be stuck\n");
+		return help.toString();
+	}
+}
@@ -42,24 +42,19 @@ public class MaxCubeBridgeDiscovery extends AbstractDiscoveryService  {
 	}
 
 	private void discoverCube() {
-		String cubeSerialNumber = null;
-		MaxCubeBridgeDiscoveryResult discoverResults = MaxCubeDiscover.DiscoverCube(null);
-		cubeSerialNumber = discoverResults.getSerialNumber();
-
-		if(cubeSerialNumber!=null) {
+		for (MaxCubeBridgeDiscoveryResult discoverResults : MaxCubeDiscover.discoverCubes(null)) {
+			String cubeSerialNumber = discoverResults.getSerialNumber();
 			logger.trace("Adding new MAX! Cube Lan Gateway on {} with id '{}' to Smarthome inbox", discoverResults.getIpAddress(), cubeSerialNumber);
 
 			Map<String, Object> properties = new HashMap<>(2);
 	        properties.put(MaxCubeBridgeConfiguration.IP_ADDRESS,discoverResults.getIpAddress());
 	        properties.put(MaxBinding.SERIAL_NUMBER,cubeSerialNumber);
 			ThingUID uid = new ThingUID( MaxBinding.CUBEBRIDGE_THING_TYPE, cubeSerialNumber);
-			if(uid!=null) {
-				DiscoveryResult result = DiscoveryResultBuilder.create(uid)
-						.withProperties(properties)
-						.withLabel("MAX! Cube LAN Gateway (" + cubeSerialNumber + ")" )
-						.build();
-				thingDiscovered (result);
-			} 
+			DiscoveryResult result = DiscoveryResultBuilder.create(uid)
+					.withProperties(properties)
+					.withLabel("MAX! Cube LAN Gateway (" + cubeSerialNumber + ")" )
+					.build();
+			thingDiscovered (result);
 		}	
 	}
 
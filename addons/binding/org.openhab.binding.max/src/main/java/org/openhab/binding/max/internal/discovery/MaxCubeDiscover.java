@@ -9,20 +9,33 @@
 package org.openhab.binding.max.internal.discovery;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.InterfaceAddress;
 import java.net.NetworkInterface;
-import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.openhab.binding.max.internal.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Automatic UDP discovery of a MAX! Cube Lan Gateway on the local network. 
+ * Automatic UDP discovery of MAX! Cube Lan Gateways on the local network. 
+ * 
+ * The discovery request is broadcast on all interfaces at once using a single
+ * non-blocking channel, which also receives the responses. All Cubes responding are
+ * returned. The discovery finishes as soon as no further responses arrive.
  * 
  * @author Marcel Verpaalen, based on UDP client code of Michiel De Mey 
  * @author Marcel Verpaalen, major revision for OH2 allowing discovery of a specific Max!Cube based on serial 
@@ -32,8 +45,18 @@ public final class MaxCubeDiscover {
 
 	static final String MAXCUBE_DISCOVER_STRING ="eQ3Max*\0**********I";
 	static final String RFADDRESS ="rfAddress";
+	static final int DISCOVERY_PORT = 23272;
+
+	/** time to wait for the first response */
+	static final long RESPONSE_TIMEOUT = 3000;
+	/** time to wait for further responses after a response has been received */
+	static final long QUIET_TIMEOUT = 1000;
+	/** maximum duration of a discovery */
+	static final long MAX_DISCOVERY_TIME = 10000;
+
+	private static final Charset CHARSET = Charset.forName("ISO-8859-1");
+
 	static Logger logger = LoggerFactory.getLogger(MaxCubeDiscover.class);
-	static boolean discoveryRunning = false;
 
 	/**
 	 * Automatic UDP discovery of a MAX! Cube
@@ -52,162 +75,158 @@ public final class MaxCubeDiscover {
 
 	/**
 	 * Automatic UDP discovery of a MAX! Cube
-	 * @return if the cube is found, returns the HashMap containing the details.
+	 * @return if a cube is found, the details of the first cube found.
+	 * Otherwise a result without details.
 	 */
-	public synchronized final static MaxCubeBridgeDiscoveryResult DiscoverCube(final String cubeSerialNumber) {
-		discoveryRunning = true;
-		String maxCubeIP = null;
-		String maxCubeName = null;
-		String serialNumber = null;
-		String rfAddress = null;
-
-		Thread thread = new Thread("Sendbroadcast"){
-			public void run(){
-				if (cubeSerialNumber !=null){
-					sendBroadcastforDevice(cubeSerialNumber);
-				} else {
-					sendBroadcast();			
-				}
+	public final static MaxCubeBridgeDiscoveryResult DiscoverCube(final String cubeSerialNumber) {
+		Collection<MaxCubeBridgeDiscoveryResult> results = discoverCubes(cubeSerialNumber);
+		if (results.isEmpty()) {
+			return new MaxCubeBridgeDiscoveryResult(null, null, null, null);
+		}
+		return results.iterator().next();
+	}
+
+	/**
+	 * Automatic UDP discovery of all MAX! Cubes on the network. Discoveries are
+	 * serialized, as they all use the discovery port.
+	 * 
+	 * @param cubeSerialNumber
+	 * 			the serial number of the Cube searched, null to find all Cubes 
+	 * @return the Cubes found, in the order of their responses
+	 */
+	public synchronized static Collection<MaxCubeBridgeDiscoveryResult> discoverCubes(final String cubeSerialNumber) {
+		Map<String, MaxCubeBridgeDiscoveryResult> results = new LinkedHashMap<String, MaxCubeBridgeDiscoveryResult>();
+		String discoverString = cubeSerialNumber != null ? "eQ3Max*\0" + cubeSerialNumber + "I" : MAXCUBE_DISCOVER_STRING;
+
+		DatagramChannel channel = null;
+		Selector selector = null;
+		try {
+			channel = DatagramChannel.open();
+			channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+			channel.setOption(StandardSocketOptions.SO_BROADCAST, true);
+			channel.bind(new InetSocketAddress(DISCOVERY_PORT));
+			channel.configureBlocking(false);
+			selector = Selector.open();
+			channel.register(selector, SelectionKey.OP_READ);
+
+			ByteBuffer request = ByteBuffer.wrap(discoverString.getBytes(CHARSET));
+			for (InetAddress broadcast : getBroadcastAddresses()) {
 				try {
-					sleep(5000);
-				} catch (Exception e) {
+					request.rewind();
+					channel.send(request, new InetSocketAddress(broadcast, DISCOVERY_PORT));
+					logger.trace( "Request packet sent to: {}", broadcast.getHostAddress());
+				} catch (IOException e) {
+					logger.debug( "Error while sending request packet sent to: {}: {}", broadcast.getHostAddress(), e.getMessage());
 				}
-				discoveryRunning = false;
-				logger.trace( "Done sending broadcast discovery messages.");
 			}
-		};
-		thread.start();
-		DatagramSocket bcReceipt = null;
-
-		try{
-			bcReceipt = new DatagramSocket(23272);
-			bcReceipt.setReuseAddress(true);
-			bcReceipt.setSoTimeout(10000);
-
-			while (discoveryRunning){
-				//Wait for a response
-				byte[] recvBuf = new byte[1500];
-				DatagramPacket receivePacket = new DatagramPacket(recvBuf, recvBuf.length);
-				bcReceipt.receive(receivePacket);
-
-				//We have a response
-				String message = new String(receivePacket.getData()).trim();
-				logger.trace( "Broadcast response from {} : {} '{}'", receivePacket.getAddress(),message.length(),message);
-
-				//Check if the message is correct
-				if (message.startsWith("eQ3Max") &&  !message.equals(MAXCUBE_DISCOVER_STRING)) {
-					maxCubeIP=receivePacket.getAddress().getHostAddress();
-					maxCubeName=message.substring(0, 8);
-					serialNumber=message.substring(8, 18);
-					byte[] unknownData=message.substring(18,21).getBytes();
-					rfAddress=Utils.getHex(message.substring(21).getBytes()).replace(" ", "").toLowerCase();
-					logger.info("MAX! Cube found on network");
-					logger.debug("Found at  : {}", maxCubeIP);
-					logger.debug("Name      : {}", maxCubeName);
-					logger.debug("Serial    : {}", serialNumber);
-					logger.debug("RF Address: {}", rfAddress);
-					logger.trace("Unknown   : {}", Utils.getHex(unknownData));
+
+			long start = System.currentTimeMillis();
+			long deadline = start + RESPONSE_TIMEOUT;
+			ByteBuffer buffer = ByteBuffer.allocate(1500);
+			while (true) {
+				long now = System.currentTimeMillis();
+				long timeout = Math.min(deadline, start + MAX_DISCOVERY_TIME) - now;
+				if (timeout <= 0 || selector.select(timeout) == 0) {
+					logger.trace("No further response");
+					break;
+				}
+				selector.selectedKeys().clear();
+
+				InetSocketAddress sender;
+				buffer.clear();
+				while ((sender = (InetSocketAddress) channel.receive(buffer)) != null) {
+					buffer.flip();
+					// not trimmed, the RF address at the end may contain any byte
+					String message = new String(buffer.array(), 0, buffer.limit(), CHARSET);
+					buffer.clear();
+					logger.trace( "Broadcast response from {} : {} '{}'", sender.getAddress(),message.length(),message);
+
+					MaxCubeBridgeDiscoveryResult result = parseResponse(sender.getAddress(), message);
+					if (result != null && (cubeSerialNumber == null || cubeSerialNumber.equals(result.getSerialNumber()))) {
+						results.put(result.getSerialNumber(), result);
+						deadline = System.currentTimeMillis() + QUIET_TIMEOUT;
+					}
 				}
 			}
-		} catch (SocketTimeoutException ex) {
-			logger.trace("No further response");
 		} catch (IOException ex) {
 			logger.debug(ex.toString());
 		} finally {
 			//Close the port!		
 			try {
-				if (bcReceipt !=null) 
-					bcReceipt.close();
+				if (selector != null) 
+					selector.close();
+				if (channel != null) 
+					channel.close();
 			}	catch (Exception e) {
 				logger.debug(e.toString());
 			}
 		}
-		//TODO add this to a discoverResults array to deal with possible multiple Lan gateways on the network
-		MaxCubeBridgeDiscoveryResult bridgeDiscovered = new MaxCubeBridgeDiscoveryResult ( maxCubeIP, serialNumber,  rfAddress, maxCubeName);
-		return bridgeDiscovered;
-	}
-
-	/**
-	 * Send broadcast message over all active interfaces for a specific device
-	 * @param serialnumber of the Max!Cube lan gateway searched.
-	 */
-	private static void sendBroadcastforDevice(String serialnumber) { 
-		sendBroadcastMessage ("eQ3Max*\0" + serialnumber + "I");
+		logger.debug("{} MAX! Cube(s) found on network", results.size());
+		return results.values();
 	}
 
 	/**
-	 * Send a generic broadcast message over all active interfaces to find all devices
+	 * Parses the response of a MAX! Cube to the discovery request.
+	 * @param address the address the response was sent from
+	 * @param message the response
+	 * @return the discovery result, null if the message is no response of a MAX! Cube
 	 */
-	private static void sendBroadcast() { 
-		sendBroadcastMessage (MAXCUBE_DISCOVER_STRING);
+	static MaxCubeBridgeDiscoveryResult parseResponse(InetAddress address, String message) {
+		//Check if the message is correct
+		if (!message.startsWith("eQ3Max") || message.startsWith("eQ3Max*") || message.length() < 24) {
+			return null;
+		}
+		String maxCubeIP=address.getHostAddress();
+		String maxCubeName=message.substring(0, 8);
+		String serialNumber=message.substring(8, 18);
+		byte[] unknownData=message.substring(18,21).getBytes(CHARSET);
+		String rfAddress=Utils.getHex(message.substring(21).getBytes(CHARSET)).replace(" ", "").toLowerCase();
+		logger.info("MAX! Cube found on network");
+		logger.debug("Found at  : {}", maxCubeIP);
+		logger.debug("Name      : {}", maxCubeName);
+		logger.debug("Serial    : {}", serialNumber);
+		logger.debug("RF Address: {}", rfAddress);
+		logger.trace("Unknown   : {}", Utils.getHex(unknownData));
+		return new MaxCubeBridgeDiscoveryResult ( maxCubeIP, serialNumber,  rfAddress, maxCubeName);
 	}
 
 	/**
-	 * Send broadcast message over all active interfaces
-	 * @param discoverString String to be used for the discovery
+	 * @return the broadcast addresses of all active interfaces
 	 */
-	private static void sendBroadcastMessage(String discoverString) {
-		DatagramSocket bcSend = null;
-		//Find the MaxCube using UDP broadcast
-		try {
-			bcSend = new DatagramSocket();
-			bcSend.setBroadcast(true);
+	private static List<InetAddress> getBroadcastAddresses() throws IOException {
+		List<InetAddress> addresses = new ArrayList<InetAddress>();
 
-			byte[] sendData = discoverString.getBytes();
+		Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+		while (interfaces.hasMoreElements()) {
+			NetworkInterface networkInterface = (NetworkInterface) interfaces.nextElement();
 
-			// Broadcast the message over all the network interfaces
-			Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
-			while (interfaces.hasMoreElements()) {
-				NetworkInterface networkInterface = (NetworkInterface) interfaces.nextElement();
+			if (networkInterface.isLoopback() || !networkInterface.isUp()) {
+				continue;
+			}
 
-				if (networkInterface.isLoopback() || !networkInterface.isUp()) {
+			for (InterfaceAddress interfaceAddress : networkInterface.getInterfaceAddresses()) {
+				InetAddress broadcast = interfaceAddress.getBroadcast();
+				if (broadcast == null) {
 					continue;
 				}
 
-				for (InterfaceAddress interfaceAddress : networkInterface.getInterfaceAddresses()) {
-					InetAddress broadcast = interfaceAddress.getBroadcast();
-					if (broadcast == null) {
-						continue;
-					}
-
-					//ugly hack to workaround Java issue of wrong broadcast address for Wlan devices 
-					//http://bugs.java.com/bugdatabase/view_bug.do?bug_id=7158636
-					byte[] networkIpAddress = interfaceAddress.getAddress().getAddress();
-					byte[] broadcastIpAddress = broadcast.getAddress();
-
-					if (networkIpAddress[0] != broadcastIpAddress[0]){
-						broadcastIpAddress = networkIpAddress;
-						broadcastIpAddress[3]= (byte) 0xFF;
-						InetAddress newbroadcast =  InetAddress.getByAddress(broadcastIpAddress);
-						logger.debug( "Strange broadcast address '{}' for IP {}, replaced with '{}' Interface: '{}' '{}'", broadcast.getHostAddress(), interfaceAddress.getAddress(),newbroadcast.getHostAddress(),  networkInterface.getDisplayName(),  networkInterface.getName());
-						broadcast = newbroadcast;
-					}
-					// Send the broadcast package!
-					try {
-						DatagramPacket sendPacket = new DatagramPacket(sendData, sendData.length, broadcast, 23272);
-						logger.trace( "Sending request packet sent to: {} Interface: '{}' '{}'", broadcast.getHostAddress(),  networkInterface.getDisplayName(),  networkInterface.getName());
-						bcSend.send(sendPacket);
-					} catch (Exception e) {
-						logger.debug( "Error while sending request packet sent to: {} Interface: '{}' '{}'", broadcast.getHostAddress(),  networkInterface.getDisplayName(),  networkInterface.getName());
-
-						logger.debug(e.getMessage());
-						logger.debug(Utils.getStackTrace(e));
-					}
-
-					logger.trace( "Request packet sent to: {} Interface: {}", broadcast.getHostAddress(),  networkInterface.getDisplayName());
+				//ugly hack to workaround Java issue of wrong broadcast address for Wlan devices 
+				//http://bugs.java.com/bugdatabase/view_bug.do?bug_id=7158636
+				byte[] networkIpAddress = interfaceAddress.getAddress().getAddress();
+				byte[] broadcastIpAddress = broadcast.getAddress();
+
+				if (networkIpAddress[0] != broadcastIpAddress[0]){
+					broadcastIpAddress = networkIpAddress;
+					broadcastIpAddress[3]= (byte) 0xFF;
+					InetAddress newbroadcast =  InetAddress.getByAddress(broadcastIpAddress);
+					logger.debug( "Strange broadcast address '{}' for IP {}, replaced with '{}' Interface: '{}' '{}'", broadcast.getHostAddress(), interfaceAddress.getAddress(),newbroadcast.getHostAddress(),  networkInterface.getDisplayName(),  networkInterface.getName());
+					broadcast = newbroadcast;
+				}
+				if (!addresses.contains(broadcast)) {
+					addresses.add(broadcast);
 				}
 			}
-
-		} catch (IOException ex) {
-			logger.debug(ex.toString());
-		}finally {
-			try {
-				if (bcSend !=null) 
-					bcSend.close();
-			}	catch (Exception e) {
-				logger.debug(e.toString());
-			}}
-
+		}
+		return addresses;
 	}
 }
-
@@ -102,4 +102,9 @@ public class MaxDeviceDiscoveryService  extends AbstractDiscoveryService impleme
 	public void onDeviceRemoved(MaxCubeBridgeHandler bridge, Device device) {
 		//this can be ignored here
 	}
+
+	@Override
+	public void onDeviceOnlineChanged(ThingUID bridge, String serialNumber, boolean online) {
+		//this can be ignored here
+	}
 }
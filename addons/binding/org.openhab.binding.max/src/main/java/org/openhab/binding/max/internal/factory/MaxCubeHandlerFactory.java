@@ -9,6 +9,7 @@ package org.openhab.binding.max.internal.factory;
 
 import java.util.Hashtable;
 
+import org.eclipse.osgi.framework.console.CommandProvider;
 import org.eclipse.smarthome.config.core.Configuration;
 import org.eclipse.smarthome.config.discovery.DiscoveryService;
 import org.eclipse.smarthome.core.thing.Bridge;
@@ -19,9 +20,11 @@ import org.eclipse.smarthome.core.thing.binding.BaseThingHandlerFactory;
 import org.eclipse.smarthome.core.thing.binding.ThingHandler;
 import org.openhab.binding.max.MaxBinding;
 import org.openhab.binding.max.config.MaxCubeBridgeConfiguration;
+import org.openhab.binding.max.internal.console.MaxConsoleCommandProvider;
 import org.openhab.binding.max.internal.discovery.MaxDeviceDiscoveryService;
 import org.openhab.binding.max.internal.handler.MaxCubeBridgeHandler;
 import org.openhab.binding.max.internal.handler.MaxCubeHandler;
+import org.openhab.binding.max.internal.handler.MaxRoomHandler;
 import org.osgi.framework.ServiceRegistration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,6 +40,8 @@ public class MaxCubeHandlerFactory extends BaseThingHandlerFactory {
 
 	private Logger logger = LoggerFactory.getLogger(MaxCubeHandlerFactory.class);
 	private ServiceRegistration<?> discoveryServiceReg;
+	private final MaxConsoleCommandProvider consoleCommandProvider = new MaxConsoleCommandProvider();
+	private ServiceRegistration<?> consoleCommandProviderReg;
 
 
 	@Override
@@ -72,7 +77,9 @@ public class MaxCubeHandlerFactory extends BaseThingHandlerFactory {
 
 	private ThingUID getMaxCubeDeviceUID(ThingTypeUID thingTypeUID, ThingUID thingUID,
 			Configuration configuration , ThingUID bridgeUID ) {
-		String SerialNumber = (String) configuration.get(MaxBinding.SERIAL_NUMBER);
+		String SerialNumber = MaxBinding.ROOM_THING_TYPE.equals(thingTypeUID)
+				? String.valueOf(configuration.get(MaxBinding.ROOM_ID))
+				: (String) configuration.get(MaxBinding.SERIAL_NUMBER);
 
 		if (thingUID == null) {
 			thingUID = new ThingUID(thingTypeUID, SerialNumber, bridgeUID.getId());
@@ -88,8 +95,26 @@ public class MaxCubeHandlerFactory extends BaseThingHandlerFactory {
 		this.discoveryServiceReg = bundleContext.registerService(DiscoveryService.class.getName(), discoveryService, new Hashtable<String, Object>());
 	}
 
+	private synchronized void registerConsoleCommandProvider(MaxCubeBridgeHandler maxCubeBridgeHandler) {
+		consoleCommandProvider.addBridgeHandler(maxCubeBridgeHandler);
+		if (this.consoleCommandProviderReg == null) {
+			this.consoleCommandProviderReg = bundleContext.registerService(CommandProvider.class.getName(), consoleCommandProvider, new Hashtable<String, Object>());
+		}
+	}
+
+	private synchronized void unregisterConsoleCommandProvider(MaxCubeBridgeHandler maxCubeBridgeHandler) {
+		consoleCommandProvider.removeBridgeHandler(maxCubeBridgeHandler);
+		if (this.consoleCommandProviderReg != null && consoleCommandProvider.isEmpty()) {
+			consoleCommandProviderReg.unregister();
+			consoleCommandProviderReg = null;
+		}
+	}
+
 	@Override
 	protected void removeHandler(ThingHandler thingHandler) {
+		if (thingHandler instanceof MaxCubeBridgeHandler) {
+			unregisterConsoleCommandProvider((MaxCubeBridgeHandler) thingHandler);
+		}
 		if(this.discoveryServiceReg!=null) {
 			MaxDeviceDiscoveryService service = (MaxDeviceDiscoveryService) bundleContext.getService(discoveryServiceReg.getReference());
 			service.deactivate();
@@ -104,7 +129,10 @@ public class MaxCubeHandlerFactory extends BaseThingHandlerFactory {
 		if (thing.getThingTypeUID().equals(MaxBinding.CUBEBRIDGE_THING_TYPE)) {
 			MaxCubeBridgeHandler handler = new MaxCubeBridgeHandler((Bridge) thing);
 			registerDeviceDiscoveryService(handler);
+			registerConsoleCommandProvider(handler);
 			return handler;
+		} else if (thing.getThingTypeUID().equals(MaxBinding.ROOM_THING_TYPE)) {
+			return new MaxRoomHandler(thing);
 		} else if (supportsThingType(thing.getThingTypeUID())) {
 			return new MaxCubeHandler(thing);            
 		} else {
@@ -0,0 +1,283 @@
+/**
+ * Copyright (c) 2014 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.max.internal.handler;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.smarthome.core.thing.Bridge;
+import org.eclipse.smarthome.core.thing.ThingUID;
+import org.openhab.binding.max.internal.message.Device;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link DeviceEventDispatcher} passes the device events of a MAX! Cube bridge to the
+ * {@link DeviceStatusListener}s without blocking the thread polling the Cube.
+ *
+ * Each listener has its own queue, so the events are passed to a listener in the order they
+ * have been dispatched, while different listeners are called concurrently by a small pool
+ * of threads. The listeners are passed a snapshot of the device taken when the event is
+ * dispatched, so they never read a device while the Cube is polled. A state change of a
+ * device is only queued once per listener: a later change replaces the snapshot of the
+ * queued state change. State changes are never dropped, as the change detection of the
+ * device would not pass an unchanged device again; the queued state changes are bounded by
+ * the number of listeners and devices.
+ */
+final class DeviceEventDispatcher {
+
+	private static final Logger logger = LoggerFactory.getLogger(DeviceEventDispatcher.class);
+
+	/** number of threads calling the listeners */
+	static final int THREADS = 4;
+
+	/** maximum number of events passed to a listener before the thread moves on to other listeners */
+	private static final int BATCH_SIZE = 50;
+
+	/** time in ms after which a listener is reported as slow */
+	private static final long SLOW_LISTENER_TIME = 1000;
+
+	private static final AtomicInteger threadCount = new AtomicInteger();
+
+	private final ExecutorService executor;
+
+	private final ConcurrentMap<DeviceStatusListener, ListenerQueue> queues = new ConcurrentHashMap<DeviceStatusListener, ListenerQueue>();
+
+	private final AtomicInteger pending = new AtomicInteger();
+	private final AtomicInteger maxPending = new AtomicInteger();
+	private final AtomicLong dispatched = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong maxListenerTime = new AtomicLong();
+
+	private static final int STATE_CHANGED = 0;
+	private static final int ADDED = 1;
+	private static final int ONLINE_CHANGED = 2;
+
+	private static final class Event {
+		final int type;
+		final Device device;
+		final Bridge bridge;
+		final ThingUID bridgeUID;
+		final String serialNumber;
+		final boolean online;
+
+		Event(int type, Device device, Bridge bridge, ThingUID bridgeUID, String serialNumber, boolean online) {
+			this.type = type;
+			this.device = device;
+			this.bridge = bridge;
+			this.bridgeUID = bridgeUID;
+			this.serialNumber = serialNumber;
+			this.online = online;
+		}
+	}
+
+	/**
+	 * The events of a single listener, passed by at most one thread at a time.
+	 */
+	private final class ListenerQueue implements Runnable {
+		private final DeviceStatusListener listener;
+		private final Queue<Event> events = new ConcurrentLinkedQueue<Event>();
+		/** the snapshots of the queued state changes by serial number */
+		private final ConcurrentMap<String, Device> pendingStateChanges = new ConcurrentHashMap<String, Device>();
+		private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+		ListenerQueue(DeviceStatusListener listener) {
+			this.listener = listener;
+		}
+
+		void add(Event event) {
+			events.add(event);
+			if (scheduled.compareAndSet(false, true)) {
+				execute(this);
+			}
+		}
+
+		@Override
+		public void run() {
+			Event event;
+			int count = 0;
+			while (count < BATCH_SIZE && (event = events.poll()) != null) {
+				pending.decrementAndGet();
+				if (event.type == STATE_CHANGED) {
+					// later state changes have to be queued again from now on
+					Device device = pendingStateChanges.remove(event.serialNumber);
+					if (device != null) {
+						deliver(listener, event, device);
+					}
+				} else {
+					deliver(listener, event, event.device);
+				}
+				count++;
+			}
+			scheduled.set(false);
+			if (!events.isEmpty() && scheduled.compareAndSet(false, true)) {
+				execute(this);
+			}
+		}
+	}
+
+	DeviceEventDispatcher(final String name) {
+		executor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "MAX! " + name + " events " + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Queues the notification of a listener about a changed device state.
+	 */
+	void dispatchStateChanged(DeviceStatusListener listener, ThingUID bridgeUID, Device device) {
+		ListenerQueue queue = getQueue(listener);
+		String serialNumber = device.getSerialNumber();
+		Device snapshot = device.snapshot();
+		Device queued = queue.pendingStateChanges.get(serialNumber);
+		if (queued != null && queued.isUpdated()) {
+			// the replaced snapshot must not hide a change from the listener
+			snapshot.setUpdated(true);
+		}
+		if (queue.pendingStateChanges.put(serialNumber, snapshot) != null) {
+			coalesced.incrementAndGet();
+			return;
+		}
+		enqueue(queue, new Event(STATE_CHANGED, null, null, bridgeUID, serialNumber, true));
+	}
+
+	/**
+	 * Queues the notification of a listener about an added device.
+	 */
+	void dispatchAdded(DeviceStatusListener listener, Bridge bridge, Device device) {
+		enqueue(getQueue(listener), new Event(ADDED, device.snapshot(), bridge, bridge.getUID(), device.getSerialNumber(),
+				true));
+	}
+
+	/**
+	 * Queues the notification of a listener about a device going online or offline.
+	 */
+	void dispatchOnlineChanged(DeviceStatusListener listener, ThingUID bridgeUID, String serialNumber, boolean online) {
+		enqueue(getQueue(listener), new Event(ONLINE_CHANGED, null, null, bridgeUID, serialNumber, online));
+	}
+
+	private void enqueue(ListenerQueue queue, Event event) {
+		int count = pending.incrementAndGet();
+		int max = maxPending.get();
+		while (count > max && !maxPending.compareAndSet(max, count)) {
+			max = maxPending.get();
+		}
+		dispatched.incrementAndGet();
+		queue.add(event);
+	}
+
+	private ListenerQueue getQueue(DeviceStatusListener listener) {
+		ListenerQueue queue = queues.get(listener);
+		if (queue == null) {
+			queues.putIfAbsent(listener, new ListenerQueue(listener));
+			queue = queues.get(listener);
+		}
+		return queue;
+	}
+
+	private void execute(ListenerQueue queue) {
+		try {
+			executor.execute(queue);
+		} catch (RejectedExecutionException e) {
+			// shut down, the events are discarded
+			queue.scheduled.set(false);
+		}
+	}
+
+	private void deliver(DeviceStatusListener listener, Event event, Device device) {
+		long start = System.currentTimeMillis();
+		try {
+			switch (event.type) {
+			case ADDED:
+				listener.onDeviceAdded(event.bridge, device);
+				break;
+			case ONLINE_CHANGED:
+				listener.onDeviceOnlineChanged(event.bridgeUID, event.serialNumber, event.online);
+				break;
+			default:
+				listener.onDeviceStateChanged(event.bridgeUID, device);
+				break;
+			}
+		} catch (Exception e) {
+			logger.error("An exception occurred while calling the DeviceStatusListener", e);
+		}
+		long time = System.currentTimeMillis() - start;
+		long max = maxListenerTime.get();
+		while (time > max && !maxListenerTime.compareAndSet(max, time)) {
+			max = maxListenerTime.get();
+		}
+		if (time >= SLOW_LISTENER_TIME) {
+			logger.debug("DeviceStatusListener {} took {}ms for device {}.", listener, time, event.serialNumber);
+		}
+	}
+
+	/**
+	 * Forgets the queue of a listener, once its pending events have been passed.
+	 */
+	void remove(DeviceStatusListener listener) {
+		queues.remove(listener);
+	}
+
+	/**
+	 * Stops calling the listeners, pending events are discarded.
+	 */
+	void shutdown() {
+		executor.shutdownNow();
+		queues.clear();
+		pending.set(0);
+	}
+
+	/**
+	 * @return the number of events waiting to be passed to the listeners
+	 */
+	int getPendingEvents() {
+		return Math.max(0, pending.get());
+	}
+
+	/**
+	 * @return the highest number of pending events so far
+	 */
+	int getMaxPendingEvents() {
+		return maxPending.get();
+	}
+
+	/**
+	 * @return the number of events queued
+	 */
+	long getDispatchedEvents() {
+		return dispatched.get();
+	}
+
+	/**
+	 * @return the number of state changes passed with an already queued state change
+	 */
+	long getCoalescedEvents() {
+		return coalesced.get();
+	}
+
+	/**
+	 * @return the longest time in ms a listener took for a single event
+	 */
+	long getMaxListenerTime() {
+		return maxListenerTime.get();
+	}
+}
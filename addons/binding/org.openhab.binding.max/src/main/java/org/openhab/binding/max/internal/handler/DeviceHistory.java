@@ -0,0 +1,202 @@
+/**
+ * Copyright (c) 2014 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.max.internal.handler;
+
+/**
+ * The {@link DeviceHistory} keeps the last samples of a MAX! thermostat in a ring buffer:
+ * the time of the sample, the actual temperature, the setpoint temperature and the valve
+ * position. The samples are stored in arrays of primitives, so adding a sample does not
+ * allocate any objects.
+ *
+ * A sample is added whenever the state of the thermostat has changed. Samples are indexed
+ * from 0, the oldest sample, to {@link #size()} - 1, the latest sample.
+ */
+public final class DeviceHistory {
+
+	/** stored for an unknown temperature */
+	private static final short UNKNOWN_TEMPERATURE = Short.MIN_VALUE;
+
+	private final long[] timestamps;
+	private final short[] actualTemperatures;
+	private final short[] setpointTemperatures;
+	private final byte[] valvePositions;
+
+	private int next = 0;
+	private int size = 0;
+
+	/**
+	 * @param capacity
+	 *            the maximum number of samples kept
+	 */
+	public DeviceHistory(int capacity) {
+		timestamps = new long[capacity];
+		actualTemperatures = new short[capacity];
+		setpointTemperatures = new short[capacity];
+		valvePositions = new byte[capacity];
+	}
+
+	/**
+	 * Adds a sample, replacing the oldest sample if the history is full.
+	 *
+	 * @param timestamp
+	 *            the time of the sample
+	 * @param actualTemperature
+	 *            the actual temperature in °C, 0 or NaN if not measured
+	 * @param setpointTemperature
+	 *            the setpoint temperature in °C
+	 * @param valvePosition
+	 *            the valve position in percent
+	 */
+	public synchronized void add(long timestamp, double actualTemperature, double setpointTemperature, int valvePosition) {
+		timestamps[next] = timestamp;
+		actualTemperatures[next] = toTenths(actualTemperature);
+		setpointTemperatures[next] = toTenths(setpointTemperature);
+		valvePositions[next] = (byte) Math.max(0, Math.min(100, valvePosition));
+		next = (next + 1) % timestamps.length;
+		if (size < timestamps.length) {
+			size++;
+		}
+	}
+
+	private static short toTenths(double temperature) {
+		if (Double.isNaN(temperature) || temperature == 0) {
+			return UNKNOWN_TEMPERATURE;
+		}
+		return (short) Math.round(temperature * 10);
+	}
+
+	private static double fromTenths(short temperature) {
+		return temperature == UNKNOWN_TEMPERATURE ? Double.NaN : temperature / 10.0;
+	}
+
+	private int position(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		return (next - size + index + timestamps.length) % timestamps.length;
+	}
+
+	/**
+	 * @return the number of samples
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * @return the maximum number of samples kept
+	 */
+	public int capacity() {
+		return timestamps.length;
+	}
+
+	public synchronized long getTimestamp(int index) {
+		return timestamps[position(index)];
+	}
+
+	/**
+	 * @return the actual temperature in °C, NaN if not measured
+	 */
+	public synchronized double getActualTemperature(int index) {
+		return fromTenths(actualTemperatures[position(index)]);
+	}
+
+	/**
+	 * @return the setpoint temperature in °C
+	 */
+	public synchronized double getSetpointTemperature(int index) {
+		return fromTenths(setpointTemperatures[position(index)]);
+	}
+
+	/**
+	 * @return the valve position in percent
+	 */
+	public synchronized int getValvePosition(int index) {
+		return valvePositions[position(index)];
+	}
+
+	/**
+	 * Computes the trend of the actual temperature as the slope of the least squares fit
+	 * through the measured samples since the given time.
+	 *
+	 * @param since
+	 *            the time of the oldest sample taken into account
+	 * @return the trend in °C per hour, NaN if less than two measured samples are available
+	 */
+	public synchronized double getTemperatureTrend(long since) {
+		int count = 0;
+		double sumX = 0;
+		double sumY = 0;
+		double sumXY = 0;
+		double sumXX = 0;
+		long origin = 0;
+		for (int i = 0; i < size; i++) {
+			int position = position(i);
+			if (timestamps[position] < since || actualTemperatures[position] == UNKNOWN_TEMPERATURE) {
+				continue;
+			}
+			if (count == 0) {
+				origin = timestamps[position];
+			}
+			double x = (timestamps[position] - origin) / 3600000.0;
+			double y = actualTemperatures[position] / 10.0;
+			count++;
+			sumX += x;
+			sumY += y;
+			sumXY += x * y;
+			sumXX += x * x;
+		}
+		double denominator = count * sumXX - sumX * sumX;
+		if (count < 2 || denominator == 0) {
+			return Double.NaN;
+		}
+		return (count * sumXY - sumX * sumY) / denominator;
+	}
+
+	/**
+	 * Detects a valve that does not move although the actual temperature deviates from the
+	 * setpoint temperature: the valve position of all samples during the given time is the
+	 * same, and the latest measured temperature deviates by at least the given amount.
+	 *
+	 * @param now
+	 *            the current time
+	 * @param duration
+	 *            the time in ms the valve position has to be unchanged
+	 * @param minDeviation
+	 *            the minimum deviation in °C
+	 * @return true if the valve seems to be stuck
+	 */
+	public synchronized boolean isValveStuck(long now, long duration, double minDeviation) {
+		if (size == 0) {
+			return false;
+		}
+		int latest = position(size - 1);
+		byte valvePosition = valvePositions[latest];
+		long unchangedSince = timestamps[latest];
+		int measured = -1;
+		for (int i = size - 1; i >= 0; i--) {
+			int position = position(i);
+			if (valvePositions[position] != valvePosition) {
+				break;
+			}
+			unchangedSince = timestamps[position];
+			if (measured < 0 && actualTemperatures[position] != UNKNOWN_TEMPERATURE) {
+				measured = position;
+			}
+		}
+		if (unchangedSince > now - duration || measured < 0) {
+			return false;
+		}
+		int deviation = actualTemperatures[measured] - setpointTemperatures[measured];
+		if (Math.abs(deviation) < minDeviation * 10) {
+			return false;
+		}
+		// a closed valve above the setpoint or an open valve below it is doing its job
+		return deviation > 0 ? valvePosition > 0 : valvePosition < 100;
+	}
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2014 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.max.internal.handler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The {@link DeviceLivenessTracker} decides whether the devices of a MAX! Cube are online.
+ *
+ * A device is online while it has been listed in a L message within the timeout. The
+ * tracker remembers the state last reported for each device, so only the transitions
+ * between online and offline are passed to the listeners.
+ */
+final class DeviceLivenessTracker {
+
+	/** interval in ms in which the bridge checks whether devices have timed out */
+	static final long CHECK_INTERVAL = 15000;
+
+	/** number of polls a device may be missing before it is offline */
+	static final int MISSED_POLLS = 3;
+
+	/** state last reported, by normalized serial number */
+	private final Map<String, Boolean> reported = new HashMap<String, Boolean>();
+
+	private long timeout;
+
+	/**
+	 * @param timeout
+	 *            the time in ms after which a device not seen is offline
+	 */
+	DeviceLivenessTracker(long timeout) {
+		this.timeout = timeout;
+	}
+
+	synchronized void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	synchronized long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Checks a device and returns its new state if it differs from the state last reported.
+	 * The state of a device not reported yet always counts as changed.
+	 *
+	 * @param key
+	 *            the normalized serial number of the device
+	 * @param lastSeen
+	 *            the time the device has last been seen, 0 if not seen yet
+	 * @param now
+	 *            the current time
+	 * @return the new state, or null if it has not changed
+	 */
+	synchronized Boolean update(String key, long lastSeen, long now) {
+		Boolean online = lastSeen > 0 && now - lastSeen <= timeout;
+		if (online.equals(reported.put(key, online))) {
+			return null;
+		}
+		return online;
+	}
+
+	/**
+	 * Forgets the state reported for a device, so it is reported again with the next check.
+	 *
+	 * @param key
+	 *            the normalized serial number of the device
+	 */
+	synchronized void forget(String key) {
+		reported.remove(key);
+	}
+
+	/**
+	 * @return the number of devices last reported as online
+	 */
+	synchronized int getOnlineCount() {
+		int count = 0;
+		for (Boolean online : reported.values()) {
+			if (online) {
+				count++;
+			}
+		}
+		return count;
+	}
+}
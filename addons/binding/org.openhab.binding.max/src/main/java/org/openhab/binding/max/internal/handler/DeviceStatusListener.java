@@ -41,4 +41,12 @@ public interface DeviceStatusListener {
      */
     public void onDeviceAdded(Bridge bridge, Device device);
 
+    /**
+     * This method is called whenever a device starts or stops being reported by the MAX! Cube.
+     * @param bridge The MAX! Cube bridge the device is connected to.
+     * @param serialNumber The serial number of the device.
+     * @param online true if the device has been reported recently, false if it has not been reported for a while.
+     */
+    public void onDeviceOnlineChanged(ThingUID bridge, String serialNumber, boolean online);
+
 }
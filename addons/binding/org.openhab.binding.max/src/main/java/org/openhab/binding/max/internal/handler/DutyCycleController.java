@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2014 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.max.internal.handler;
+
+import org.openhab.binding.max.internal.message.S_Message;
+
+/**
+ * The {@link DutyCycleController} decides how many commands may be sent to a MAX! Cube,
+ * based on the duty cycle and the free memory slots reported in its S: responses.
+ *
+ * The Cube may only use its radio for 1% of the time. While enough of this budget is left,
+ * several commands are sent at once. The closer the budget is to being used up, the fewer
+ * commands are sent at once. Once the Cube reports the budget as exhausted, has no free
+ * memory slots or discards a command, sending is suspended with an exponentially growing
+ * back-off, which is reset as soon as a command is accepted again.
+ */
+final class DutyCycleController {
+
+	/** used duty cycle in percent from which on only one command is sent at once */
+	static final int DUTY_CYCLE_HIGH = 80;
+
+	/** used duty cycle in percent from which on no commands are sent */
+	static final int DUTY_CYCLE_LIMIT = 100;
+
+	/** maximum number of commands sent at once */
+	static final int MAX_WINDOW = 8;
+
+	static final long MIN_BACKOFF = 10000;
+	static final long MAX_BACKOFF = 600000;
+
+	private int dutyCycle = -1;
+	private int freeMemorySlots = -1;
+
+	private long backoff = 0;
+	private long resumeTime = 0;
+
+	/**
+	 * Updates the state of the Cube from its response to a command or an S: line
+	 * received while polling.
+	 *
+	 * @param message
+	 *            the S message
+	 * @param now
+	 *            the current time
+	 */
+	synchronized void update(S_Message message, long now) {
+		if (message.getDutyCycle() < 0) {
+			return;
+		}
+		dutyCycle = message.getDutyCycle();
+		freeMemorySlots = message.getFreeMemorySlots();
+		if (message.isCommandDiscarded() || dutyCycle >= DUTY_CYCLE_LIMIT || freeMemorySlots == 0) {
+			backOff(now);
+		} else {
+			backoff = 0;
+		}
+	}
+
+	/**
+	 * Suspends sending after a command could not be delivered to the Cube.
+	 *
+	 * @param now
+	 *            the current time
+	 */
+	synchronized void onFailure(long now) {
+		backOff(now);
+	}
+
+	private void backOff(long now) {
+		backoff = backoff == 0 ? MIN_BACKOFF : Math.min(backoff * 2, MAX_BACKOFF);
+		resumeTime = now + backoff;
+	}
+
+	/**
+	 * @param now
+	 *            the current time
+	 * @return the number of commands that may be sent at once, 0 if sending is suspended
+	 */
+	synchronized int getSendWindow(long now) {
+		if (now < resumeTime) {
+			return 0;
+		}
+		if (dutyCycle < 0) {
+			// nothing known about the Cube yet, a single command tells us more
+			return 1;
+		}
+		if (dutyCycle >= DUTY_CYCLE_HIGH) {
+			return 1;
+		}
+		return 1 + (DUTY_CYCLE_HIGH - dutyCycle) * (MAX_WINDOW - 1) / DUTY_CYCLE_HIGH;
+	}
+
+	/**
+	 * @param now
+	 *            the current time
+	 * @return the time until sending is resumed in milliseconds, 0 if sending is not suspended
+	 */
+	synchronized long getResumeDelay(long now) {
+		return Math.max(0, resumeTime - now);
+	}
+
+	/**
+	 * @return the last reported used duty cycle in percent, -1 if unknown
+	 */
+	synchronized int getDutyCycle() {
+		return dutyCycle;
+	}
+
+	/**
+	 * @return the last reported number of free memory slots, -1 if unknown
+	 */
+	synchronized int getFreeMemorySlots() {
+		return freeMemorySlots;
+	}
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2014 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.max.internal.handler;
+
+/**
+ * The {@link LatencyHistogram} counts durations in fixed buckets, so recording a duration
+ * neither allocates nor keeps the individual values. The last bucket counts the durations
+ * above the highest bound.
+ */
+public final class LatencyHistogram {
+
+	/** upper bounds of the buckets in ms */
+	private static final long[] BOUNDS = { 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000 };
+
+	private final long[] counts = new long[BOUNDS.length + 1];
+	private long count = 0;
+	private long sum = 0;
+	private long max = 0;
+	private long last = -1;
+
+	/**
+	 * @param millis
+	 *            the duration in ms
+	 */
+	public synchronized void record(long millis) {
+		millis = Math.max(0, millis);
+		int bucket = 0;
+		while (bucket < BOUNDS.length && millis > BOUNDS[bucket]) {
+			bucket++;
+		}
+		counts[bucket]++;
+		count++;
+		sum += millis;
+		max = Math.max(max, millis);
+		last = millis;
+	}
+
+	/**
+	 * @return the upper bounds of the buckets in ms, the last bucket has no upper bound
+	 */
+	public static long[] getBucketBounds() {
+		return BOUNDS.clone();
+	}
+
+	/**
+	 * @return the number of durations in each bucket
+	 */
+	public synchronized long[] getBucketCounts() {
+		return counts.clone();
+	}
+
+	/**
+	 * @return the number of durations recorded
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the duration recorded last in ms, -1 if none has been recorded
+	 */
+	public synchronized long getLast() {
+		return last;
+	}
+
+	/**
+	 * @return the longest duration in ms
+	 */
+	public synchronized long getMax() {
+		return max;
+	}
+
+	/**
+	 * @return the mean duration in ms, NaN if none has been recorded
+	 */
+	public synchronized double getMean() {
+		return count == 0 ? Double.NaN : (double) sum / count;
+	}
+
+	/**
+	 * Estimates a percentile as the upper bound of the bucket it falls into.
+	 *
+	 * @param percentile
+	 *            the percentile, e.g. 95
+	 * @return the estimated duration in ms, -1 if none has been recorded
+	 */
+	public synchronized long getPercentile(double percentile) {
+		if (count == 0) {
+			return -1;
+		}
+		long rank = (long) Math.ceil(count * percentile / 100);
+		long seen = 0;
+		for (int bucket = 0; bucket < BOUNDS.length; bucket++) {
+			seen += counts[bucket];
+			if (seen >= rank) {
+				return Math.min(BOUNDS[bucket], max);
+			}
+		}
+		return max;
+	}
+}
@@ -8,23 +8,41 @@
 package org.openhab.binding.max.internal.handler;
 
 
+import static org.openhab.binding.max.MaxBinding.CHANNEL_ACK_LATENCY;
+import static org.openhab.binding.max.MaxBinding.CHANNEL_DUTY_CYCLE_REMAINING;
 import static org.openhab.binding.max.MaxBinding.CHANNEL_MODE;
+import static org.openhab.binding.max.MaxBinding.CHANNEL_POLL_BYTES;
+import static org.openhab.binding.max.MaxBinding.CHANNEL_POLL_LATENCY;
+import static org.openhab.binding.max.MaxBinding.CHANNEL_POLL_LINES;
+import static org.openhab.binding.max.MaxBinding.CHANNEL_QUEUE_DEPTH;
+import static org.openhab.binding.max.MaxBinding.CHANNEL_QUEUE_WAIT;
+import static org.openhab.binding.max.MaxBinding.CHANNEL_RECONNECTS;
 import static org.openhab.binding.max.MaxBinding.CHANNEL_SETTEMP;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.ConnectException;
-import java.net.Socket;
-import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.io.OutputStreamWriter;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.smarthome.config.core.ConfigConstants;
 import org.eclipse.smarthome.config.core.Configuration;
 import org.eclipse.smarthome.core.library.types.DecimalType;
 import org.eclipse.smarthome.core.library.types.OnOffType;
@@ -32,23 +50,32 @@ import org.eclipse.smarthome.core.library.types.StringType;
 import org.eclipse.smarthome.core.thing.Bridge;
 import org.eclipse.smarthome.core.thing.ChannelUID;
 import org.eclipse.smarthome.core.thing.ThingStatus;
+import org.eclipse.smarthome.core.thing.ThingUID;
 import org.eclipse.smarthome.core.thing.binding.BaseBridgeHandler;
 import org.eclipse.smarthome.core.types.Command;
 import org.openhab.binding.max.config.MaxCubeBridgeConfiguration;
 import org.openhab.binding.max.internal.Utils;
+import org.openhab.binding.max.internal.connection.MaxCubeConnection;
+import org.openhab.binding.max.internal.connection.MaxCubeConnectionManager;
+import org.openhab.binding.max.internal.connection.MaxCubeLineListener;
+import org.openhab.binding.max.internal.connection.MaxCubeRequest;
 import org.openhab.binding.max.internal.message.C_Message;
 import org.openhab.binding.max.internal.message.Device;
 import org.openhab.binding.max.internal.message.DeviceConfiguration;
-import org.openhab.binding.max.internal.message.DeviceInformation;
+import org.openhab.binding.max.internal.message.DeviceRegistry;
+import org.openhab.binding.max.internal.message.DeviceRegistrySnapshot;
+import org.openhab.binding.max.internal.message.DeviceType;
 import org.openhab.binding.max.internal.message.H_Message;
 import org.openhab.binding.max.internal.message.HeatingThermostat;
 import org.openhab.binding.max.internal.message.L_Message;
+import org.openhab.binding.max.internal.message.MaxTokenizer;
 import org.openhab.binding.max.internal.message.M_Message;
 import org.openhab.binding.max.internal.message.Message;
 import org.openhab.binding.max.internal.message.MessageType;
 import org.openhab.binding.max.internal.message.S_Command;
 import org.openhab.binding.max.internal.message.S_Message;
 import org.openhab.binding.max.internal.message.SendCommand;
+import org.openhab.binding.max.internal.message.SendCommandQueue;
 import org.openhab.binding.max.internal.message.ThermostatModeType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -77,7 +104,17 @@ public class MaxCubeBridgeHandler extends BaseBridgeHandler  {
 	private long refreshInterval = 10000;
 	ScheduledFuture<?> refreshJob;
 
-	private ArrayList<Device> devices = new ArrayList<Device>();
+	/** decides when the MAX!Cube is polled next, depending on the activity */
+	private volatile PollingScheduler pollingScheduler = new PollingScheduler(refreshInterval);
+	private final Object pollingLock = new Object();
+	private boolean pollingActive = false;
+	private final AtomicBoolean polling = new AtomicBoolean(false);
+
+	/** the devices and configurations of this MAX!Cube, indexed by RF address and serial number */
+	private final DeviceRegistry registry = new DeviceRegistry();
+
+	/** file holding the rooms and device configurations, so they are known immediately after a restart */
+	private File snapshotFile = null;
 	private HashSet<String>  lastActiveDevices = new HashSet<String>();
 
 	/** MAX! Thermostat default off temperature */
@@ -86,34 +123,98 @@ public class MaxCubeBridgeHandler extends BaseBridgeHandler  {
 	/** MAX! Thermostat default on temperature */
 	private static final DecimalType DEFAULT_ON_TEMPERATURE = new DecimalType(30.5);
 
-	private ArrayList<DeviceConfiguration> configurations = new ArrayList<DeviceConfiguration>();
+	/** tokenizer reused to decode the L messages */
+	private final MaxTokenizer tokenizer = new MaxTokenizer();
 
-	/** maximum queue size that we're allowing */
-	private static final int MAX_COMMANDS = 50;
-	private ArrayBlockingQueue<SendCommand> commandQueue = new ArrayBlockingQueue<SendCommand> (MAX_COMMANDS); 
+	/** maximum number of different device channels in the command queue */
+	private static final int MAX_COMMANDS = 200;
+	private final SendCommandQueue commandQueue = new SendCommandQueue(MAX_COMMANDS);
 
-	private boolean connectionEstablished = false;
+	/** delay before sending queued commands, so commands queued together are sent in one burst */
+	private static final long COMMAND_BURST_DELAY = 200;
+	private final AtomicBoolean commandBurstScheduled = new AtomicBoolean(false);
+	private volatile ScheduledFuture<?> commandBurstJob;
+	private final Object sendCommandLock = new Object();
+
+	/** number of times a command not accepted by the MAX!Cube is sent again */
+	private static final int MAX_COMMAND_RETRIES = 5;
+
+	/** number of polls a command waits for the state of its device before it is dropped */
+	private static final int MAX_STATE_WAIT_POLLS = 5;
+	private final DutyCycleController dutyCycleController = new DutyCycleController();
 
-	private SendCommand lastCommandId = null;
+	private boolean connectionEstablished = false;
 
 	private String ipAddress;
 	private int port = 62910;
 	private boolean exclusive = false;
 	private int maxRequestsPerConnection = 1000;
-	private int requestCount = 0;
+	private boolean session = false;
+	private long idleTimeout = 60000;
 
 	/**
-	 * connection socket and reader/writer for execute method
+	 * connection to the MAX! Cube, served by the shared {@link MaxCubeConnectionManager}
 	 */
-	private Socket socket = null;
-	private BufferedReader reader = null;
-	private OutputStreamWriter writer = null;
+	private MaxCubeConnection connection = null;
+
+	/** maximum time in ms to wait for a request to the MAX! Cube to complete */
+	private static final long REQUEST_TIMEOUT = 30000;
 
 
 	private boolean previousOnline = false;
 
 	private List<DeviceStatusListener> deviceStatusListeners = new CopyOnWriteArrayList<>();
 
+	/** listeners for a single device, by normalized serial number */
+	private ConcurrentMap<String, DeviceStatusListener> deviceListeners = new ConcurrentHashMap<String, DeviceStatusListener>();
+
+	/** devices whose listener has to receive the current state with the next refresh */
+	private Set<String> fullUpdateRequests = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/** devices whose L message record has changed since the last notification */
+	private final Set<Device> changedDevices = new LinkedHashSet<Device>();
+
+	/** devices whose record has changed in the L message being processed */
+	private final Set<Device> messageChangedDevices = new LinkedHashSet<Device>();
+
+	/** passes the device events to the listeners without blocking the polling */
+	private volatile DeviceEventDispatcher eventDispatcher = null;
+
+	/** decides which devices are online, checked after each poll and by the liveness job */
+	private final DeviceLivenessTracker livenessTracker = new DeviceLivenessTracker(
+			DeviceLivenessTracker.MISSED_POLLS * pollingScheduler.getMaxInterval());
+	private ScheduledFuture<?> livenessJob;
+	private Runnable livenessRunnable = new Runnable() {
+		@Override
+		public void run() {
+			checkDeviceLiveness(); }
+	};
+
+	/** heating state of the rooms, updated from the changed devices */
+	private final RoomAggregates roomAggregates = new RoomAggregates();
+
+	/** room handlers, by room ID */
+	private final ConcurrentMap<Integer, MaxRoomHandler> roomHandlers = new ConcurrentHashMap<Integer, MaxRoomHandler>();
+
+	/** rooms whose handler has to be updated */
+	private final Set<Integer> changedRooms = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+	private final AtomicBoolean roomUpdateScheduled = new AtomicBoolean(false);
+	private volatile Future<?> roomUpdateJob;
+	private Runnable roomUpdateRunnable = new Runnable() {
+		@Override
+		public void run() {
+			notifyRoomHandlers(); }
+	};
+
+	/** performance of the communication with the MAX!Cube */
+	private final MaxCubeMetrics metrics = new MaxCubeMetrics();
+
+	/** number of samples kept in the history of each thermostat */
+	private static final int HISTORY_CAPACITY = 720;
+
+	/** history of the thermostats, by normalized serial number */
+	private final ConcurrentMap<String, DeviceHistory> histories = new ConcurrentHashMap<String, DeviceHistory>();
+
 	private ScheduledFuture<?> pollingJob;
 	private Runnable pollingRunnable = new Runnable() {
 		@Override
@@ -127,24 +228,84 @@ public class MaxCubeBridgeHandler extends BaseBridgeHandler  {
 		public void run() {
 			sendCommands(); }
 	};
+
+	/** lines sent by the MAX!Cube on its own, waiting to be processed */
+	private final Queue<String> pushedLines = new ConcurrentLinkedQueue<String>();
+	private final AtomicBoolean pushedLinesScheduled = new AtomicBoolean(false);
+	private MaxCubeLineListener lineListener = new MaxCubeLineListener() {
+		@Override
+		public void onUnsolicitedLine(MaxCubeConnection connection, String line) {
+			pushedLines.add(line);
+			if (pushedLinesScheduled.compareAndSet(false, true)) {
+				scheduler.execute(pushedLinesRunnable);
+			}
+		}
+	};
+	private Runnable pushedLinesRunnable = new Runnable() {
+		@Override
+		public void run() {
+			processPushedLines(); }
+	};
+	/**
+	 * Sets the temperature or mode of all thermostats. The thermostats of a room are
+	 * set with a single group command, only thermostats without room are set one by one.
+	 */
 	@Override
 	public void handleCommand(ChannelUID channelUID, Command command) {
-		logger.warn("No bridge commands defined.");
+		if (channelUID.getId().equals(CHANNEL_SETTEMP) || channelUID.getId().equals(CHANNEL_MODE)) {
+			Set<Integer> roomIds = new HashSet<Integer>();
+			for (Device device : registry.getDevices()) {
+				if (!(device instanceof HeatingThermostat)) {
+					continue;
+				}
+				if (device.getRoomId() > 0) {
+					if (roomIds.add(device.getRoomId())) {
+						queueCommand(new SendCommand(device.getRoomId(), channelUID, command));
+					}
+				} else {
+					queueCommand(new SendCommand(device.getSerialNumber(), channelUID, command));
+				}
+			}
+			logger.debug("Command {} for all thermostats queued for {} rooms.", command, roomIds.size());
+		} else {
+			logger.warn("Setting of channel {} not possible. Read-only", channelUID);
+		}
 	}
 
 	@Override
 	public void dispose() {
 		logger.debug("Handler disposed.");
-		if(pollingJob!=null && !pollingJob.isCancelled()) {
-			pollingJob.cancel(true);
-			pollingJob = null;
+		synchronized (pollingLock) {
+			pollingActive = false;
+			if(pollingJob!=null && !pollingJob.isCancelled()) {
+				pollingJob.cancel(true);
+				pollingJob = null;
+			}
 		}
 		if(sendCommandJob!=null && !sendCommandJob.isCancelled()) {
 			sendCommandJob.cancel(true);
 			sendCommandJob = null;
 		}
+		if(livenessJob!=null && !livenessJob.isCancelled()) {
+			livenessJob.cancel(true);
+			livenessJob = null;
+		}
+		ScheduledFuture<?> commandBurstJob = this.commandBurstJob;
+		if (commandBurstJob != null) {
+			commandBurstJob.cancel(true);
+			this.commandBurstJob = null;
+		}
+		Future<?> roomUpdateJob = this.roomUpdateJob;
+		if (roomUpdateJob != null) {
+			roomUpdateJob.cancel(true);
+			this.roomUpdateJob = null;
+		}
 
-		socketClose(); 
+		closeConnection();
+		if (eventDispatcher != null) {
+			eventDispatcher.shutdown();
+			eventDispatcher = null;
+		}
 		super.dispose();
 	}
 
@@ -180,90 +341,581 @@ public class MaxCubeBridgeHandler extends BaseBridgeHandler  {
 		} catch (Exception e) {
 			// ;
 		}
+		try {
+			configuration.session = Boolean.parseBoolean((String)config.get("session"));
+		} catch (Exception e) {
+			// ;
+		}
+		try {
+			configuration.idleTimeout = Long.parseLong((String)config.get("idleTimeout"));
+		} catch (Exception e) {
+			// ;
+		}
 
 		port =configuration.port;
 		ipAddress = configuration.ipAddress;
 		refreshInterval =  configuration.refreshInterval;
 		exclusive = configuration.exclusive;
 		maxRequestsPerConnection = configuration.maxRequestsPerConnection;
+		session = configuration.session;
+		idleTimeout = configuration.idleTimeout;
 		logger.debug("Cube IP         {}.", ipAddress);
 		logger.debug("Port            {}.", port);
 		logger.debug("RefreshInterval {}.", refreshInterval);
 		logger.debug("Exclusive mode  {}.", exclusive);
 		logger.debug("Max Requests    {}.", maxRequestsPerConnection);
+		logger.debug("Session mode    {}.", session);
+		logger.debug("Idle Timeout    {}.", idleTimeout);
 
+		pollingScheduler = new PollingScheduler(refreshInterval);
+		livenessTracker.setTimeout(DeviceLivenessTracker.MISSED_POLLS * pollingScheduler.getMaxInterval());
+		if (eventDispatcher == null) {
+			eventDispatcher = new DeviceEventDispatcher(getThing().getUID().getId());
+		}
+		snapshotFile = new File(getUserDataDir() + File.separator + "max" + File.separator
+				+ getThing().getUID().toString().replace(':', '_') + ".snapshot");
+		loadSnapshot();
+		openConnection();
 		startAutomaticRefresh();
 	}
 
 	private synchronized void startAutomaticRefresh() {
-		if (pollingJob == null || pollingJob.isCancelled()) {
-			pollingJob = scheduler.scheduleAtFixedRate(pollingRunnable, 0, refreshInterval, TimeUnit.MILLISECONDS);
+		synchronized (pollingLock) {
+			pollingActive = true;
 		}
+		scheduleNextPoll(0, false);
 		if (sendCommandJob == null || sendCommandJob.isCancelled()) {
 			sendCommandJob = scheduler.scheduleAtFixedRate(sendCommandRunnable, 0, sendCommandInterval, TimeUnit.MILLISECONDS);
 
 		}
+		if (livenessJob == null || livenessJob.isCancelled()) {
+			livenessJob = scheduler.scheduleWithFixedDelay(livenessRunnable, DeviceLivenessTracker.CHECK_INTERVAL,
+					DeviceLivenessTracker.CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+		}
 	}
 
 
 	/**
-	 * Takes a command from the command queue and send it to
-	 * {@link executeCommand} for execution.
-	 * 
+	 * Takes commands from the command queue and sends them to the MAX!Cube in bursts, as long
+	 * as the duty cycle of the MAX!Cube allows. The commands of a burst are all handed to the
+	 * connection before waiting for the responses, so a connection in session mode sends them
+	 * without waiting for each acknowledgement. Commands discarded by the MAX!Cube are queued
+	 * again, unless a newer command for the same channel has been queued in the meantime.
+	 * Without a connection to the MAX!Cube the commands stay queued.
+	 * Commands for devices whose state has not been received yet, e.g. after a warm start
+	 * from the snapshot, stay queued until the state has been received, for at most
+	 * {@link #MAX_STATE_WAIT_POLLS} polls.
+	 */
+	private void sendCommands() {
+		commandBurstScheduled.set(false);
+		synchronized (sendCommandLock) {
+			int sent = 0;
+			List<SendCommand> burst = new ArrayList<SendCommand>();
+			List<MaxCubeRequest> requests = new ArrayList<MaxCubeRequest>();
+			List<SendCommand> awaitingState = new ArrayList<SendCommand>();
+			while (true) {
+				if (connection == null) {
+					logger.debug("No connection to MAX! Cube at IP: {}, {} commands stay queued.", ipAddress,
+							commandQueue.size());
+					break;
+				}
+				int window = dutyCycleController.getSendWindow(System.currentTimeMillis());
+				if (window == 0) {
+					long delay = dutyCycleController.getResumeDelay(System.currentTimeMillis());
+					if (commandQueue.size() > 0) {
+						logger.debug("Sending to MAX! Cube at IP: {} suspended, {} queued commands are sent in {}ms.", ipAddress,
+								commandQueue.size(), delay);
+						scheduleCommandBurst(delay);
+					}
+					break;
+				}
+				burst.clear();
+				requests.clear();
+				if (commandQueue.drainTo(burst, window) == 0) {
+					break;
+				}
+				for (SendCommand sendCommand : burst) {
+					if (isAwaitingState(sendCommand)) {
+						awaitingState.add(sendCommand);
+						requests.add(null);
+					} else {
+						MaxCubeRequest request = submitCommand(sendCommand);
+						if (request == null && connection == null) {
+							// the connection has been closed meanwhile, keep the command until connected again
+							commandQueue.requeue(sendCommand);
+						}
+						requests.add(request);
+					}
+				}
+				for (int i = 0; i < burst.size(); i++) {
+					SendCommand sendCommand = burst.get(i);
+					if (requests.get(i) == null) {
+						continue;
+					}
+					S_Message response = awaitCommandResponse(sendCommand, requests.get(i));
+					long now = System.currentTimeMillis();
+					if (response == null) {
+						dutyCycleController.onFailure(now);
+						retryCommand(sendCommand);
+					} else {
+						dutyCycleController.update(response, now);
+						if (response.isCommandDiscarded()) {
+							retryCommand(sendCommand);
+						} else {
+							sent++;
+						}
+					}
+				}
+			}
+			long maxWaitTime = MAX_STATE_WAIT_POLLS * refreshInterval;
+			for (SendCommand sendCommand : awaitingState) {
+				if (System.currentTimeMillis() - sendCommand.getQueueTime() > maxWaitTime) {
+					logger.warn("Command {} ({}) dropped, no state received for the device within {}ms.",
+							sendCommand.getId(), sendCommand.getKey(), maxWaitTime);
+				} else if (commandQueue.requeue(sendCommand)) {
+					logger.debug("Command {} ({}) waits for the state of the device.", sendCommand.getId(),
+							sendCommand.getKey());
+				}
+			}
+			if (sent > 0) {
+				onCommandSent();
+				updateMetricChannels();
+				logger.debug("Sent {} commands to MAX! Cube at IP: {}. Duty cycle: {}%, free slots: {}, queued: {}, coalesced: {}, dropped: {}.",
+						sent, ipAddress, dutyCycleController.getDutyCycle(), dutyCycleController.getFreeMemorySlots(),
+						commandQueue.size(), commandQueue.getCoalescedCount(), commandQueue.getDroppedCount());
+			}
+		}
+	}
+
+	/**
+	 * @return true if the device or room of the command is known, but the state of its
+	 *         thermostats has not been received yet
+	 */
+	private boolean isAwaitingState(SendCommand sendCommand) {
+		if (sendCommand.getRoomId() >= 0) {
+			boolean known = false;
+			for (Device device : registry.getDevices()) {
+				if (device instanceof HeatingThermostat && device.getRoomId() == sendCommand.getRoomId()) {
+					if (device.hasRecord()) {
+						return false;
+					}
+					known = true;
+				}
+			}
+			return known;
+		}
+		Device device = getDevice(sendCommand.getDeviceSerial());
+		return device != null && !device.hasRecord();
+	}
+
+	private void retryCommand(SendCommand sendCommand) {
+		if (sendCommand.retry() > MAX_COMMAND_RETRIES) {
+			logger.warn("Command {} ({}) not accepted by MAX! Cube at IP: {} after {} retries, dropping it.",
+					sendCommand.getId(), sendCommand.getKey(), ipAddress, MAX_COMMAND_RETRIES);
+		} else if (commandQueue.requeue(sendCommand)) {
+			logger.debug("Command {} ({}) queued again, retry {}.", sendCommand.getId(), sendCommand.getKey(),
+					sendCommand.getRetries());
+		}
+	}
+
+	private void scheduleCommandBurst(long delay) {
+		if (commandBurstScheduled.compareAndSet(false, true)) {
+			commandBurstJob = scheduler.schedule(sendCommandRunnable, delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * @return the number of commands waiting to be sent
+	 */
+	public int getCommandQueueSize() {
+		return commandQueue.size();
+	}
+
+	/**
+	 * @return the number of queued commands that replaced a command for the same device channel
 	 */
-	private synchronized void sendCommands() {
+	public long getCoalescedCommandCount() {
+		return commandQueue.getCoalescedCount();
+	}
 
-		SendCommand sendCommand = commandQueue.poll();
-		if (sendCommand!=null){
-			executeCommand (sendCommand);
+	/**
+	 * @return the number of commands dropped because the command queue was full
+	 */
+	public long getDroppedCommandCount() {
+		return commandQueue.getDroppedCount();
+	}
+
+	/**
+	 * @return the performance metrics of the communication with the MAX!Cube
+	 */
+	public MaxCubeMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return the number of times the connection to the MAX!Cube has been established again after an error
+	 */
+	public int getReconnectCount() {
+		MaxCubeConnection connection = this.connection;
+		return connection == null ? 0 : connection.getReconnectCount();
+	}
+
+	/**
+	 * @return the number of times the connection to the MAX!Cube has been lost because of an error
+	 */
+	public int getConnectionErrorCount() {
+		MaxCubeConnection connection = this.connection;
+		return connection == null ? 0 : connection.getErrorCount();
+	}
+
+	/**
+	 * @return the duty cycle left to the MAX!Cube in percent, -1 if not reported yet
+	 */
+	public int getDutyCycleRemaining() {
+		int dutyCycle = dutyCycleController.getDutyCycle();
+		return dutyCycle < 0 ? -1 : Math.max(0, 100 - dutyCycle);
+	}
+
+	/**
+	 * Updates the bridge channels showing the performance of the communication with the MAX!Cube.
+	 */
+	private void updateMetricChannels() {
+		ThingUID uid = getThing().getUID();
+		long pollLatency = metrics.getPollLatency().getLast();
+		if (pollLatency >= 0) {
+			updateState(new ChannelUID(uid, CHANNEL_POLL_LATENCY), new DecimalType(pollLatency));
+			updateState(new ChannelUID(uid, CHANNEL_POLL_BYTES), new DecimalType(metrics.getLastPollBytes()));
+			updateState(new ChannelUID(uid, CHANNEL_POLL_LINES), new DecimalType(metrics.getLastPollLines()));
+		}
+		updateState(new ChannelUID(uid, CHANNEL_RECONNECTS), new DecimalType(getReconnectCount()));
+		updateState(new ChannelUID(uid, CHANNEL_QUEUE_DEPTH), new DecimalType(commandQueue.size()));
+		long queueWait = metrics.getQueueWait().getLast();
+		if (queueWait >= 0) {
+			updateState(new ChannelUID(uid, CHANNEL_QUEUE_WAIT), new DecimalType(queueWait));
+		}
+		long acknowledgeLatency = metrics.getAcknowledgeLatency().getLast();
+		if (acknowledgeLatency >= 0) {
+			updateState(new ChannelUID(uid, CHANNEL_ACK_LATENCY), new DecimalType(acknowledgeLatency));
+		}
+		int dutyCycleRemaining = getDutyCycleRemaining();
+		if (dutyCycleRemaining >= 0) {
+			updateState(new ChannelUID(uid, CHANNEL_DUTY_CYCLE_REMAINING), new DecimalType(dutyCycleRemaining));
 		}
 	}
 
 	/**
-	 * initiates read data from the maxCube bridge
+	 * Schedules the next poll of the MAX!Cube, replacing the poll scheduled before.
+	 *
+	 * @param delay
+	 *            the time in ms until the next poll
+	 * @param onlyIfEarlier
+	 *            true to keep the scheduled poll if it is due before the given delay
+	 *            or a poll is currently running
 	 */
-	private synchronized void refreshData() {
+	private void scheduleNextPoll(long delay, boolean onlyIfEarlier) {
+		synchronized (pollingLock) {
+			if (!pollingActive) {
+				return;
+			}
+			if (onlyIfEarlier && (polling.get() || pollingJob != null && !pollingJob.isDone()
+					&& pollingJob.getDelay(TimeUnit.MILLISECONDS) <= delay)) {
+				return;
+			}
+			if (pollingJob != null) {
+				pollingJob.cancel(false);
+			}
+			pollingJob = scheduler.schedule(pollingRunnable, delay, TimeUnit.MILLISECONDS);
+		}
+	}
 
-		if (!connectionEstablished){
-			initialize() ;
+	/**
+	 * Polls the MAX!Cube faster for a while, so the effect of the commands is confirmed quickly.
+	 */
+	private void onCommandSent() {
+		PollingScheduler pollingScheduler = this.pollingScheduler;
+		long now = System.currentTimeMillis();
+		pollingScheduler.onCommandSent(now);
+		scheduleNextPoll(pollingScheduler.getNextDelay(now), true);
+	}
+
+	/**
+	 * initiates read data from the maxCube bridge and schedules the next poll
+	 */
+	private void refreshData() {
+		if (!polling.compareAndSet(false, true)) {
+			return;
 		}
+		PollingScheduler pollingScheduler = this.pollingScheduler;
 		try {
+			if (connection == null) {
+				openConnection();
+			}
 			refreshDeviceData();
-			if (connectionEstablished){
-				updateStatus(ThingStatus.ONLINE);
-				previousOnline = true;
-				for (Device di : devices){
-					if (lastActiveDevices !=null && lastActiveDevices.contains(di.getSerialNumber())) {
-						for (DeviceStatusListener deviceStatusListener : deviceStatusListeners) {
-							try {
-								deviceStatusListener.onDeviceStateChanged(getThing().getUID(), di);
-							} catch (Exception e) {
-								logger.error(
-										"An exception occurred while calling the DeviceStatusListener", e);
-							}
-						} }
-					//New device, not seen before, pass to Discovery
-					else {
-						for (DeviceStatusListener deviceStatusListener : deviceStatusListeners) {
-							try {
-								deviceStatusListener.onDeviceAdded(getThing(), di);
-							} catch (Exception e) {
-								logger.error(
-										"An exception occurred while calling the DeviceStatusListener", e);
-							}
-							lastActiveDevices.add (di.getSerialNumber());
-						}
+			synchronized (this) {
+				if (connectionEstablished) {
+					pollingScheduler.onPoll(!changedDevices.isEmpty());
+				} else {
+					pollingScheduler.onFailure();
+				}
+				notifyDeviceStatusListeners();
+			}
+			saveSnapshot();
+			updateMetricChannels();
+		} catch(Exception e) {
+			logger.debug("Exception occurred during execution: {}", e.getMessage(), e);
+		} finally {
+			polling.set(false);
+			long delay = pollingScheduler.getNextDelay(System.currentTimeMillis());
+			if (pollingScheduler.getFailures() > 0) {
+				logger.debug("MAX! Cube at IP: {} not reachable {} times, polling again in {}ms.", ipAddress,
+						pollingScheduler.getFailures(), delay);
+			} else {
+				logger.trace("Polling MAX! Cube at IP: {} again in {}ms.", ipAddress, delay);
+			}
+			scheduleNextPoll(delay, false);
+		}
+	}
+
+	private String getUserDataDir() {
+		String progArg = System.getProperty(ConfigConstants.USERDATA_DIR_PROG_ARGUMENT);
+		if (progArg != null) {
+			return progArg;
+		} else {
+			return "userdata";
+		}
+	}
+
+	/**
+	 * Reads the rooms and device configurations stored by a previous run, so the devices
+	 * are known before the MAX!Cube has been reached. Their state is only passed to the
+	 * {@link DeviceStatusListener}s once it has been received from the MAX!Cube.
+	 */
+	private void loadSnapshot() {
+		if (!registry.getConfigurations().isEmpty()) {
+			return;
+		}
+		try {
+			List<DeviceConfiguration> configurations = DeviceRegistrySnapshot.read(snapshotFile, registry);
+			if (configurations.isEmpty()) {
+				return;
+			}
+			for (DeviceConfiguration c : configurations) {
+				if (registry.getDevice(c.getSerialNumber()) == null) {
+					registry.putDevice(Device.create(c));
+				}
+			}
+			logger.debug("Read {} devices of MAX! Cube at IP: {} from {}", configurations.size(), ipAddress, snapshotFile);
+			synchronized (this) {
+				notifyDevicesAdded();
+			}
+		} catch (IOException e) {
+			logger.warn("Cannot read the MAX! Cube configuration from {}: {}", snapshotFile, e.getMessage());
+		}
+	}
+
+	/**
+	 * Stores the rooms and device configurations if they have changed.
+	 */
+	private void saveSnapshot() {
+		if (snapshotFile == null || !registry.resetModified()) {
+			return;
+		}
+		try {
+			DeviceRegistrySnapshot.write(registry, snapshotFile);
+			logger.debug("Stored configuration of MAX! Cube at IP: {} in {}", ipAddress, snapshotFile);
+		} catch (IOException e) {
+			logger.warn("Cannot store the MAX! Cube configuration in {}: {}", snapshotFile, e.getMessage());
+		}
+	}
+
+	/**
+	 * Processes the lines sent by the MAX!Cube on its own as soon as they are read,
+	 * so e.g. an opened window is reported without waiting for the next poll.
+	 * The lines are taken from the queue while holding the lock, so they are
+	 * processed in the order the MAX!Cube sent them.
+	 */
+	private void processPushedLines() {
+		pushedLinesScheduled.set(false);
+		synchronized (this) {
+			List<String> lines = new ArrayList<String>();
+			String line;
+			while ((line = pushedLines.poll()) != null) {
+				if (line.startsWith("L:")) {
+					pollingScheduler.onPushedUpdate(System.currentTimeMillis());
+				}
+				lines.add(line);
+			}
+			if (lines.isEmpty()) {
+				return;
+			}
+			logger.debug("Processing {} lines pushed by MAX! Cube at IP: {}", lines.size(), ipAddress);
+			try {
+				processRawMessages(lines);
+				notifyDeviceStatusListeners();
+			} catch(Exception e) {
+				logger.debug("Exception occurred during execution: {}", e.getMessage(), e);
+			}
+		}
+	}
+
+	/**
+	 * Passes the devices changed during the last refresh to the {@link DeviceStatusListener}s.
+	 * Device specific listeners are only notified about their own device.
+	 */
+	private void notifyDeviceStatusListeners() {
+		if (connectionEstablished){
+			updateStatus(ThingStatus.ONLINE);
+			previousOnline = true;
+
+			notifyDevicesAdded();
+
+			for (Device di : changedDevices) {
+				fullUpdateRequests.remove(DeviceRegistry.normalizeSerialNumber(di.getSerialNumber()));
+				notifyDeviceStateChanged(di);
+			}
+			for (String serialNumber : fullUpdateRequests) {
+				Device di = registry.getDevice(serialNumber);
+				if (di != null && di.hasRecord()) {
+					fullUpdateRequests.remove(serialNumber);
+					notifyDeviceStateChanged(di);
+				}
+			}
+		}else if (previousOnline) onConnectionLost ();
+		if (!changedDevices.isEmpty() && commandQueue.size() > 0) {
+			// commands may have been waiting for the state of the changed devices
+			scheduleCommandBurst(COMMAND_BURST_DELAY);
+		}
+		changedDevices.clear();
+		checkDeviceLiveness();
+		scheduleRoomUpdate();
+	}
+
+	private void scheduleRoomUpdate() {
+		if (!changedRooms.isEmpty() && roomUpdateScheduled.compareAndSet(false, true)) {
+			roomUpdateJob = scheduler.submit(roomUpdateRunnable);
+		}
+	}
+
+	/**
+	 * Passes the aggregates of the changed rooms to their {@link MaxRoomHandler}s. The
+	 * handlers are updated by one thread at a time, so they always end with the latest state.
+	 */
+	private void notifyRoomHandlers() {
+		roomUpdateScheduled.set(false);
+		synchronized (roomHandlers) {
+			for (Integer roomId : changedRooms) {
+				changedRooms.remove(roomId);
+				MaxRoomHandler roomHandler = roomHandlers.get(roomId);
+				if (roomHandler != null && roomAggregates.hasRoom(roomId)) {
+					try {
+						roomHandler.onRoomStateChanged(roomAggregates);
+					} catch (Exception e) {
+						logger.error("An exception occurred while updating the MAX! room {}", roomId, e);
 					}
 				}
-			}else if (previousOnline) onConnectionLost ();
+			}
+		}
+	}
 
+	/**
+	 * Registers the handler of a room, which receives the current aggregates of the room
+	 * immediately if the room is known, and whenever they change.
+	 */
+	void registerRoomHandler(int roomId, MaxRoomHandler roomHandler) {
+		roomHandlers.put(roomId, roomHandler);
+		changedRooms.add(roomId);
+		scheduleRoomUpdate();
+	}
 
-		} catch(Exception e) {
-			logger.debug("Exception occurred during execution: {}", e.getMessage(), e);
+	void unregisterRoomHandler(int roomId, MaxRoomHandler roomHandler) {
+		roomHandlers.remove(roomId, roomHandler);
+	}
+
+	/**
+	 * Passes the devices that went online or offline since the last check to their
+	 * {@link DeviceStatusListener}s. A device is offline when it has not been listed by
+	 * the MAX!Cube for a few polls, e.g. because the MAX!Cube cannot be reached.
+	 */
+	private synchronized void checkDeviceLiveness() {
+		DeviceEventDispatcher eventDispatcher = this.eventDispatcher;
+		if (eventDispatcher == null) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		for (Map.Entry<String, DeviceStatusListener> entry : deviceListeners.entrySet()) {
+			Device device = registry.getDevice(entry.getKey());
+			Boolean online = livenessTracker.update(entry.getKey(), device == null ? 0 : device.getLastSeen(), now);
+			if (online != null) {
+				logger.debug("MAX! device {} is {}.", entry.getKey(), online ? "online" : "offline");
+				eventDispatcher.dispatchOnlineChanged(entry.getValue(), getThing().getUID(), entry.getKey(), online);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of devices with a registered listener that are online
+	 */
+	public int getOnlineDeviceCount() {
+		return livenessTracker.getOnlineCount();
+	}
+
+	/**
+	 * Passes the devices not seen before to the {@link DeviceStatusListener}s, e.g. to the discovery.
+	 */
+	private void notifyDevicesAdded() {
+		for (Device di : registry.getDevices()) {
+			if (!lastActiveDevices.contains(di.getSerialNumber())) {
+				lastActiveDevices.add(di.getSerialNumber());
+				String key = DeviceRegistry.normalizeSerialNumber(di.getSerialNumber());
+				DeviceStatusListener deviceListener = deviceListeners.get(key);
+				if (deviceListener != null) {
+					notifyDeviceAdded(deviceListener, di);
+					fullUpdateRequests.add(key);
+				}
+				for (DeviceStatusListener deviceStatusListener : deviceStatusListeners) {
+					notifyDeviceAdded(deviceStatusListener, di);
+				}
+			}
+		}
+	}
+
+	private void notifyDeviceStateChanged(Device device) {
+		DeviceEventDispatcher eventDispatcher = this.eventDispatcher;
+		if (eventDispatcher == null) {
+			return;
+		}
+		DeviceStatusListener deviceListener = deviceListeners.get(DeviceRegistry.normalizeSerialNumber(device.getSerialNumber()));
+		if (deviceListener != null) {
+			eventDispatcher.dispatchStateChanged(deviceListener, getThing().getUID(), device);
+		}
+		for (DeviceStatusListener deviceStatusListener : deviceStatusListeners) {
+			eventDispatcher.dispatchStateChanged(deviceStatusListener, getThing().getUID(), device);
 		}
 	}
 
+	private void notifyDeviceAdded(DeviceStatusListener deviceStatusListener, Device device) {
+		DeviceEventDispatcher eventDispatcher = this.eventDispatcher;
+		if (eventDispatcher != null) {
+			eventDispatcher.dispatchAdded(deviceStatusListener, getThing(), device);
+		}
+	}
 
+	/**
+	 * @return the number of device events waiting to be passed to the {@link DeviceStatusListener}s
+	 */
+	public int getPendingDeviceEvents() {
+		DeviceEventDispatcher eventDispatcher = this.eventDispatcher;
+		return eventDispatcher == null ? 0 : eventDispatcher.getPendingEvents();
+	}
+
+	/**
+	 * @return the number of device state changes passed with an already queued state change because the
+	 *         {@link DeviceStatusListener}s were too slow
+	 */
+	public long getCoalescedDeviceEvents() {
+		DeviceEventDispatcher eventDispatcher = this.eventDispatcher;
+		return eventDispatcher == null ? 0 : eventDispatcher.getCoalescedEvents();
+	}
 
 	public void onConnectionLost() {
 		logger.info("Bridge connection lost. Updating thing status to OFFLINE.");
@@ -289,12 +941,51 @@ public class MaxCubeBridgeHandler extends BaseBridgeHandler  {
 
 	public boolean unregisterDeviceStatusListener(DeviceStatusListener deviceStatusListener) {
 		boolean result = deviceStatusListeners.remove(deviceStatusListener);
+		DeviceEventDispatcher eventDispatcher = this.eventDispatcher;
+		if (result && eventDispatcher != null) {
+			eventDispatcher.remove(deviceStatusListener);
+		}
 		if (result) {
 			//   onUpdate();
 		}
 		return result;
 	}
 
+	/**
+	 * Registers a listener for a single device. The listener is only notified about
+	 * changes of this device. It receives the current state of the device with the
+	 * next refresh, even if the device has not changed.
+	 * 
+	 * @param serialNumber
+	 *            the serial number of the device
+	 * @param deviceStatusListener
+	 *            the listener
+	 */
+	public void registerDeviceStatusListener(String serialNumber, DeviceStatusListener deviceStatusListener) {
+		if (deviceStatusListener == null) {
+			throw new NullPointerException("It's not allowed to pass a null deviceStatusListener.");
+		}
+		String key = DeviceRegistry.normalizeSerialNumber(serialNumber);
+		deviceListeners.put(key, deviceStatusListener);
+		fullUpdateRequests.add(key);
+		// report the current state to the new listener without waiting for the next check
+		livenessTracker.forget(key);
+		scheduler.execute(livenessRunnable);
+	}
+
+	public boolean unregisterDeviceStatusListener(String serialNumber, DeviceStatusListener deviceStatusListener) {
+		String key = DeviceRegistry.normalizeSerialNumber(serialNumber);
+		boolean result = deviceListeners.remove(key, deviceStatusListener);
+		if (result) {
+			livenessTracker.forget(key);
+		}
+		DeviceEventDispatcher eventDispatcher = this.eventDispatcher;
+		if (result && eventDispatcher != null) {
+			eventDispatcher.remove(deviceStatusListener);
+		}
+		return result;
+	}
+
 	public void clearDeviceList(){
 		lastActiveDevices=new HashSet<String>();
 	}
@@ -316,16 +1007,30 @@ public class MaxCubeBridgeHandler extends BaseBridgeHandler  {
 	 * this updates device information for each connected Max!Cube device
 	 */
 	public void refreshDeviceData() {
+		// the bridge is not locked while waiting for the MAX! Cube, so commands can be sent in the meantime
+		List<String> rawMessage = getRawMessage();
+		synchronized (this) {
+			processRawMessages(rawMessage);
+		}
+	}
+
+	private void processRawMessages(List<String> rawMessage) {
 		Message message;
 
-		for (String raw : getRawMessage()){
+		for (String raw : rawMessage){
 
 			try {
 				logger.trace("message block: '{}'",raw);
+				if (raw.startsWith("M:") && registry.isMetadataCurrent(raw)
+						|| raw.startsWith("C:") && registry.isConfigurationCurrent(raw)) {
+					// already known, e.g. from the snapshot
+					continue;
+				}
+				long start = System.nanoTime();
 				message = processRawMessage(raw);
 				if (message !=null){
-					message.debug(logger);
 					processMessage (message);
+					metrics.recordParse(message.getType(), System.nanoTime() - start);
 				}
 			} catch (Exception e) {
 				logger.info("Failed to process message received by MAX! protocol.");
@@ -341,67 +1046,42 @@ public class MaxCubeBridgeHandler extends BaseBridgeHandler  {
 	 * Connects to the Max!Cube Lan gateway and returns the read data 
 	 * corresponding Message.
 	 * 
-	 * @return the raw message text as ArrayList of String 
+	 * @return the raw message text as List of String 
 	 */
-	private ArrayList<String> getRawMessage() {
-		synchronized (MaxCubeBridgeHandler.class){
-			ArrayList<String> rawMessage = new ArrayList<String> () ;
-
-			try {
-				String raw = null;
-				if(socket == null) 	{
-					this.socketConnect();
-				}else{
-					if(maxRequestsPerConnection > 0 && requestCount >= maxRequestsPerConnection ) {
-						logger.debug("maxRequestsPerConnection reached, reconnecting.");
-						socket.close();
-						this.socketConnect();
-						requestCount = 0;
-					}else {
-
-						/* if the connection is already open (this happens in exclusive mode), just send a "l:\r\n" to get the latest live informations
-						 * note that "L:\r\n" or "l:\n" would not work.
-						 */
-						logger.debug("Sending state request #{} to MAX! Cube",this.requestCount );
-						if (writer == null) {
-							logger.warn("Can't write to MAX! Cube");
-							this.socketConnect();
-						}
-						writer.write("l:"+'\r'+'\n');
-						writer.flush();
-						requestCount++;
-					}}
-
-				boolean cont = true;
-				while (cont) {
-					raw = reader.readLine();
-					if (raw == null) {
-						cont = false;
-						continue;
-					}
-					rawMessage.add(raw);
-					if (raw.startsWith("L:")) {								
-						cont = false;
-						connectionEstablished = true;
-					}
-				}
+	private List<String> getRawMessage() {
+		List<String> rawMessage = new ArrayList<String>();
+		if (connection == null) {
+			connectionEstablished = false;
+			return rawMessage;
+		}
 
-				if(!exclusive) {
-					socketClose();
-				}
-			} catch (ConnectException  e) {
-				logger.debug("Connection timed out on {} port {}",ipAddress, port );
-				connectionEstablished = false;
-				socketClose(); //reconnect on next execution
-			} catch(Exception e) {
-				logger.debug("Exception occurred during execution: {}", e.getMessage(), e);
-				connectionEstablished = false;
-				socketClose(); //reconnect on next execution
+		MaxCubeRequest request = connection.poll();
+		try {
+			long start = System.currentTimeMillis();
+			rawMessage = request.get(REQUEST_TIMEOUT, TimeUnit.MILLISECONDS);
+			int bytes = 0;
+			for (String raw : rawMessage) {
+				bytes += raw.length() + 2;
+			}
+			metrics.recordPoll(System.currentTimeMillis() - start, rawMessage.size(), bytes);
+			connectionEstablished = true;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof ConnectException) {
+				logger.debug("Connection timed out on {} port {}", ipAddress, port);
+			} else {
+				logger.debug("Exception occurred during execution: {}", e.getCause().getMessage(), e.getCause());
 			}
+			connectionEstablished = false;
+		} catch (Exception e) {
+			logger.debug("Exception occurred during execution: {}", e.getMessage(), e);
+			// a poll which timed out must not be sent later
+			request.cancel(false);
+			connectionEstablished = false;
+		}
 
+		return rawMessage;
+	}
 
-			return rawMessage;
-		}}
 	/**
 	 * Processes the raw TCP data read from the MAX protocol, returning the
 	 * corresponding Message.
@@ -437,57 +1117,65 @@ public class MaxCubeBridgeHandler extends BaseBridgeHandler  {
 	private void processMessage (Message message){
 
 		if (message != null) {
-			message.debug(logger);
+			if (logger.isTraceEnabled()) {
+				message.debug(logger);
+			}
 			if (message.getType() == MessageType.M) {
-				M_Message msg = (M_Message) message;
-				for (DeviceInformation di : msg.devices) {
-					DeviceConfiguration c = null;
-					for (DeviceConfiguration conf : configurations) {
-						if (conf.getSerialNumber().equalsIgnoreCase(di.getSerialNumber())) {
-							c = conf;
-							break;
-						}
-					}
-
-					if (c != null) {
-						configurations.remove(c);
-					}
-
-					c = DeviceConfiguration.create(di);
-					configurations.add(c);
-
-					c.setRoomId(di.getRoomId());
-				}
+				registry.updateMetadata((M_Message) message);
 			} else if (message.getType() == MessageType.C) {
-				DeviceConfiguration c = null;
-				for (DeviceConfiguration conf : configurations) {
-					if (conf.getSerialNumber().equalsIgnoreCase(((C_Message) message).getSerialNumber())) {
-						c = conf;
-						break;
-					}
-				}
-
-				if (c == null) {
-					configurations.add(DeviceConfiguration.create(message));
-				} else {
-					c.setValues((C_Message) message);
-				}
+				registry.updateConfiguration((C_Message) message);
+			} else if (message.getType() == MessageType.S) {
+				dutyCycleController.update((S_Message) message, System.currentTimeMillis());
 			} else if (message.getType() == MessageType.L) {
-				((L_Message) message).updateDevices(devices, configurations);
-				logger.trace("{} devices found.", devices.size());
+				((L_Message) message).updateDevices(registry, tokenizer, messageChangedDevices);
+				long now = System.currentTimeMillis();
+				for (Device device : messageChangedDevices) {
+					addHistorySample(device, now);
+					roomAggregates.update(device, changedRooms);
+				}
+				changedDevices.addAll(messageChangedDevices);
+				messageChangedDevices.clear();
+				logger.trace("{} devices found.", registry.getDeviceCount());
 			}
 		}
 	}
 
-	private Device getDevice(String serialNumber, ArrayList<Device> devices) {
-		for (Device device : devices) {
-			if (device.getSerialNumber().toUpperCase().equals(serialNumber)) {
-				return device;
-			}
+	/**
+	 * Adds the current state of a thermostat to its history.
+	 */
+	private void addHistorySample(Device device, long now) {
+		if (!(device instanceof HeatingThermostat)) {
+			return;
 		}
-		return null;
+		HeatingThermostat thermostat = (HeatingThermostat) device;
+		String key = DeviceRegistry.normalizeSerialNumber(device.getSerialNumber());
+		DeviceHistory history = histories.get(key);
+		if (history == null) {
+			histories.putIfAbsent(key, new DeviceHistory(HISTORY_CAPACITY));
+			history = histories.get(key);
+		}
+		history.add(now, thermostat.getTemperatureActualValue(), thermostat.getTemperatureSetpointValue(),
+				thermostat.getValvePositionValue());
+	}
+
+	/**
+	 * Returns the history of the actual temperature, setpoint temperature and valve position
+	 * of a thermostat, recorded whenever its state changed.
+	 *
+	 * @param serialNumber
+	 *            the serial number of the thermostat
+	 * @return the history, or null if no state of the thermostat has been received yet
+	 */
+	public DeviceHistory getDeviceHistory(String serialNumber) {
+		return histories.get(DeviceRegistry.normalizeSerialNumber(serialNumber));
 	}
 
+	/**
+	 * @return the devices of this MAX!Cube
+	 */
+	public Collection<Device> getDevices() {
+		return registry.getDevices();
+	}
 
 	/**
 	 * Returns the MAX!  Device decoded during the last refreshData
@@ -499,7 +1187,7 @@ public class MaxCubeBridgeHandler extends BaseBridgeHandler  {
 	 */
 
 	public Device getDevice(String serialNumber) {
-		return getDevice (serialNumber,devices);
+		return registry.getDevice(serialNumber);
 	}
 
 
@@ -512,43 +1200,118 @@ public class MaxCubeBridgeHandler extends BaseBridgeHandler  {
 	 *       	the SendCommand containing the serial number of the device as String
 	 * 			the channelUID used to send the command and the the command data
 	 */
-	public synchronized void queueCommand(SendCommand sendCommand) {
+	public void queueCommand(SendCommand sendCommand) {
 
-		if (commandQueue.offer(sendCommand)){
-			if (lastCommandId != null){	
-				if (lastCommandId.getKey().equals (sendCommand.getKey())){
-					if (commandQueue.remove (lastCommandId)) 
-						logger.debug("Removed Command id {} ({}) from queue. Superceeded by {}", lastCommandId.getId(),lastCommandId.getKey(),sendCommand.getId());
-				}}
-			lastCommandId = sendCommand;
+		SendCommand replaced = commandQueue.offer(sendCommand);
+		if (replaced == null) {
 			logger.debug("Command queued id {} ({}).", sendCommand.getId(),sendCommand.getKey());
-
-		} else{
-			logger.debug("Command queued full dropping command id {} ({}).", sendCommand.getId(),sendCommand.getKey());
+		} else if (replaced != sendCommand) {
+			logger.debug("Removed Command id {} ({}) from queue. Superceeded by {}", replaced.getId(),replaced.getKey(),sendCommand.getId());
+		} else {
+			logger.debug("Command queue full dropping command id {} ({}).", sendCommand.getId(),sendCommand.getKey());
+			return;
 		}
 
+		scheduleCommandBurst(COMMAND_BURST_DELAY);
 	}
 
 
 	/**
-	 * Processes device command and sends it to the MAX!Cube Lan Gateway.
+	 * Hands the device command to the connection to the MAX!Cube Lan Gateway.
+	 * 
+	 * @param SendCommand 
+	 *       	the SendCommand to be sent
+	 * @return the request sending the command, or null if the command cannot be sent
+	 */
+	private MaxCubeRequest submitCommand(SendCommand sendCommand) {
+
+		String commandString = getCommandString(sendCommand);
+		MaxCubeConnection connection = this.connection;
+
+		if (commandString != null && connection != null) {
+			logger.trace("Command {} content: '{}'",sendCommand.getId(), commandString);
+			long now = System.currentTimeMillis();
+			if (sendCommand.getRetries() == 0) {
+				metrics.recordQueueWait(now - sendCommand.getQueueTime());
+			}
+			sendCommand.setSendTime(now);
+			return connection.send(commandString);
+		} else {
+			logger.debug("Null Command not sent to {}", ipAddress);
+			return null;
+		}
+	}
+
+	/**
+	 * Waits for the acknowledgement of the command by the MAX!Cube Lan Gateway.
+	 * 
+	 * @param SendCommand 
+	 *       	the SendCommand that has been sent
+	 * @param request
+	 * 			the request sending the command
+	 * @return the acknowledgement, or null if the command could not be sent
+	 */
+	private S_Message awaitCommandResponse(SendCommand sendCommand, MaxCubeRequest request) {
+		try {
+			List<String> response = request.get(REQUEST_TIMEOUT, TimeUnit.MILLISECONDS);
+			logger.debug("Command {} ({}) sent to MAX! Cube at IP: {}", sendCommand.getId(),sendCommand.getKey(),ipAddress);
+			for (String raw : response) {
+				if (raw.startsWith("S:")) {
+					metrics.recordAcknowledge(System.currentTimeMillis() - sendCommand.getSendTime());
+					sendCommand.setResponse(new S_Message(raw));
+					logger.debug("Command {} ({}) acknowledged by MAX! Cube: '{}'", sendCommand.getId(), sendCommand.getKey(), raw);
+				}
+			}
+			return sendCommand.getResponse();
+		} catch (ExecutionException e) {
+			logger.warn("Cannot write data from MAX! Cube lan gateway while connecting to '{}'", ipAddress);
+			logger.debug(Utils.getStackTrace(e));
+		} catch (TimeoutException e) {
+			logger.warn("Timeout while sending command to MAX! Cube lan gateway '{}'", ipAddress);
+			// the command is retried, it must not be sent by this request as well
+			request.cancel(false);
+		} catch (InterruptedException e) {
+			logger.debug("Interrupted while sending command to MAX! Cube lan gateway '{}'", ipAddress);
+			request.cancel(false);
+			Thread.currentThread().interrupt();
+		}
+		return null;
+	}
+
+	/**
+	 * Creates the command string to be sent to the MAX!Cube Lan Gateway for the device command.
 	 * 
 	 * @param SendCommand 
 	 *       	the SendCommand containing the serial number of the device as String
 	 * 			the channelUID used to send the command and the the command data
+	 * @return the command string or null if the command cannot be sent
 	 */
-	public void executeCommand(SendCommand sendCommand) {
+	private synchronized String getCommandString(SendCommand sendCommand) {
 
 		String serialNumber = sendCommand.getDeviceSerial();
 		ChannelUID channelUID= sendCommand.getChannelUID();
 		Command command = sendCommand.getCommand();
 
 		// send command to MAX!Cube LAN Gateway
-		HeatingThermostat device = (HeatingThermostat) getDevice(serialNumber, devices);
-
-		if (device == null) {
-			logger.debug("Cannot send command to device with serial number {}, device not listed.", serialNumber);
-			return;
+		HeatingThermostat device;
+		if (sendCommand.getRoomId() >= 0) {
+			// the group command for the room is addressed to one of its thermostats
+			device = getRoomThermostat(sendCommand.getRoomId());
+			if (device == null) {
+				logger.debug("Cannot send command to room {}, no thermostat listed in the room.", sendCommand.getRoomId());
+				return null;
+			}
+		} else {
+			device = (HeatingThermostat) getDevice(serialNumber);
+			if (device == null) {
+				logger.debug("Cannot send command to device with serial number {}, device not listed.", serialNumber);
+				return null;
+			}
+		}
+		if (!device.hasRecord()) {
+			logger.debug("Cannot send command to device with serial number {}, state not received yet.",
+					device.getSerialNumber());
+			return null;
 		}
 
 		String rfAddress = device.getRFAddress();
@@ -566,6 +1329,9 @@ public class MaxCubeBridgeHandler extends BaseBridgeHandler  {
 				}
 
 				S_Command cmd = new S_Command(rfAddress, device.getRoomId(), device.getMode(), decimalType.doubleValue());
+				if (sendCommand.getRoomId() >= 0) {
+					cmd.setGroupCommand(true);
+				}
 				commandString = cmd.getCommandString();
 			} 
 			//Mode setting
@@ -587,55 +1353,63 @@ public class MaxCubeBridgeHandler extends BaseBridgeHandler  {
 					logger.debug("updates to MANUAL mode with temperature '{}'", setTemp);
 				} else {
 					logger.debug("Only updates to AUTOMATIC & BOOST & MANUAL supported, received value :'{}'", commandContent);
-					return;
+					return null;
+				}
+				if (sendCommand.getRoomId() >= 0) {
+					cmd.setGroupCommand(true);
 				}
 				commandString = cmd.getCommandString();
 			}	
 		}
-		//Actual sending of the data to the Max!Cube Lan Gateway
-		synchronized (MaxCubeBridgeHandler.class){
-			if (commandString != null) {
-				try {
-					if(socket == null) {
-						this.socketConnect();
-					}
-					writer.write(commandString);
-					writer.flush();
-					if(!exclusive) {
-						socketClose();
-					}
+		return commandString;
+	}
 
-				} catch (UnknownHostException e) {
-					logger.warn("Cannot establish connection with MAX! Cube lan gateway while sending command to '{}'", ipAddress);
-					logger.debug(Utils.getStackTrace(e));
-					socketClose(); //reconnect on next execution
-				} catch (IOException e) {
-					logger.warn("Cannot write data from MAX! Cube lan gateway while connecting to '{}'", ipAddress);
-					logger.debug(Utils.getStackTrace(e));
-					socketClose(); //reconnect on next execution
+	/**
+	 * @return a thermostat of the room whose state has been received, preferably a
+	 *         wall thermostat, or null if there is none
+	 */
+	private HeatingThermostat getRoomThermostat(int roomId) {
+		HeatingThermostat thermostat = null;
+		for (Device device : registry.getDevices()) {
+			if (device instanceof HeatingThermostat && device.getRoomId() == roomId && device.hasRecord()) {
+				thermostat = (HeatingThermostat) device;
+				if (device.getType() == DeviceType.WallMountedThermostat) {
+					break;
 				}
-				logger.debug("Command {} ({}) sent to MAX! Cube at IP: {}", sendCommand.getId(),sendCommand.getKey(),ipAddress);
-				logger.trace("Command {} content: '{}'",sendCommand.getId(), commandString);
-			} else {
-				logger.debug("Null Command not sent to {}", ipAddress);
 			}
-		}}
-
-
-	private boolean socketConnect() throws UnknownHostException, IOException {
-		socket = new Socket(ipAddress, port);
-		logger.debug("Open new connection... to {} port {}" ,ipAddress ,port);
-		reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-		writer = new OutputStreamWriter(socket.getOutputStream());
-		return true;
+		}
+		return thermostat;
 	}
 
-	private void socketClose(){
+	/**
+	 * Opens the connection to the MAX! Cube with the current configuration,
+	 * replacing a previously opened connection.
+	 */
+	private void openConnection() {
+		closeConnection();
 		try {
-			socket.close();
-		} catch (Exception e) {
+			MaxCubeConnection newConnection = MaxCubeConnectionManager.getInstance().open(ipAddress, port);
+			newConnection.setExclusive(exclusive);
+			newConnection.setMaxRequestsPerConnection(maxRequestsPerConnection);
+			newConnection.setSession(session, idleTimeout);
+			if (exclusive || session) {
+				// only a connection kept open receives lines pushed by the Cube, any other
+				// connection just receives the data sent after connecting
+				newConnection.setLineListener(lineListener);
+			}
+			connection = newConnection;
+		} catch (IOException e) {
+			logger.warn("Cannot open connection to MAX! Cube lan gateway '{}'", ipAddress);
+			logger.debug(Utils.getStackTrace(e));
+		}
+	}
+
+	private void closeConnection() {
+		if (connection != null) {
+			connection.setLineListener(null);
+			connection.close();
+			connection = null;
 		}
-		socket = null;
 	}
 
-}
\ No newline at end of file
+}
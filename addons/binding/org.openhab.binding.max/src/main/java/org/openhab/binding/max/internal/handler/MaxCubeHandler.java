@@ -45,8 +45,9 @@ import org.slf4j.LoggerFactory;
 public class MaxCubeHandler extends BaseThingHandler implements DeviceStatusListener {
 
 	private Logger logger = LoggerFactory.getLogger(MaxCubeHandler.class);
-	private int refresh = 60; // refresh every minute as default 
-	ScheduledFuture<?> refreshJob;
+	/** delay in seconds before trying again to register with the bridge */
+	private static final int REGISTER_RETRY_DELAY = 10;
+	ScheduledFuture<?> registerJob;
 	private MaxCubeBridgeHandler bridgeHandler;
 
 	private String maxCubeDeviceSerial;
@@ -73,9 +74,9 @@ public class MaxCubeHandler extends BaseThingHandler implements DeviceStatusList
 		else {
 			logger.debug("Initialized maxcube device missing serialNumber configuration... troubles ahead");
 		}
-		//until we get an update put the Thing offline
+		//until the bridge reports the device online put the Thing offline
 		updateStatus(ThingStatus.OFFLINE);
-		deviceOnlineWatchdog();
+		registerWithBridge();
 	}
 
 	/* (non-Javadoc)
@@ -85,40 +86,40 @@ public class MaxCubeHandler extends BaseThingHandler implements DeviceStatusList
 	public void dispose() {
 		logger.debug("Thing {} {} disposed.", getThing().getUID(), maxCubeDeviceSerial);
 		if(bridgeHandler!=null) bridgeHandler.clearDeviceList();
-		if(refreshJob!=null && !refreshJob.isCancelled()) {
-			refreshJob.cancel(true);
-			refreshJob = null;
+		if(registerJob!=null && !registerJob.isCancelled()) {
+			registerJob.cancel(true);
+			registerJob = null;
 		}
 		updateStatus(ThingStatus.OFFLINE);
-		if (bridgeHandler !=null) bridgeHandler.unregisterDeviceStatusListener(this);
+		if (bridgeHandler !=null) {
+			if (maxCubeDeviceSerial != null) {
+				bridgeHandler.unregisterDeviceStatusListener(maxCubeDeviceSerial, this);
+			} else {
+				bridgeHandler.unregisterDeviceStatusListener(this);
+			}
+		}
 		super.dispose();
 	}
 
-	private void deviceOnlineWatchdog() {
+	/**
+	 * Registers this handler with the bridge, which reports whether the device is online.
+	 * Tries again later while the bridge handler is not available yet.
+	 */
+	private void registerWithBridge() {
 		Runnable runnable = new Runnable() {
 			public void run() {
 				try {
-					MaxCubeBridgeHandler bridgeHandler = getMaxCubeBridgeHandler();
-					if(bridgeHandler!=null) {
-						if ( bridgeHandler.getDevice(maxCubeDeviceSerial) == null) 	{
-							updateStatus(ThingStatus.OFFLINE);
-						} else {
-							updateStatus(ThingStatus.ONLINE);
-						}
-
-					} else {
+					if (getMaxCubeBridgeHandler() == null) {
 						logger.debug("Bridge for maxcube device {} not found.", maxCubeDeviceSerial);
-						updateStatus(ThingStatus.OFFLINE);
+						registerJob = scheduler.schedule(this, REGISTER_RETRY_DELAY, TimeUnit.SECONDS);
 					}
-
 				} catch(Exception e) {
 					logger.debug("Exception occurred during execution: {}", e.getMessage(), e);
 				}
-
 			}
 		};
 
-		refreshJob = scheduler.scheduleAtFixedRate(runnable, 0, refresh, TimeUnit.SECONDS);
+		registerJob = scheduler.schedule(runnable, 0, TimeUnit.SECONDS);
 	}
 
 
@@ -132,7 +133,11 @@ public class MaxCubeHandler extends BaseThingHandler implements DeviceStatusList
 			ThingHandler handler = bridge.getHandler();
 			if (handler instanceof MaxCubeBridgeHandler) {
 				this.bridgeHandler = (MaxCubeBridgeHandler) handler;
-				this.bridgeHandler.registerDeviceStatusListener(this);
+				if (maxCubeDeviceSerial != null) {
+					this.bridgeHandler.registerDeviceStatusListener(maxCubeDeviceSerial, this);
+				} else {
+					this.bridgeHandler.registerDeviceStatusListener(this);
+				}
 			} else {
 				return null;
 			}
@@ -167,7 +172,6 @@ public class MaxCubeHandler extends BaseThingHandler implements DeviceStatusList
 	@Override
 	public void onDeviceStateChanged(ThingUID bridge, Device device) {
 		if (device.getSerialNumber().equals (maxCubeDeviceSerial) ){
-			updateStatus(ThingStatus.ONLINE);
 			if (device.isUpdated() || newDevice){
 				newDevice = false;
 				logger.debug("Updating states of {} {} ({}) id: {}", device.getType(), device.getName(), device.getSerialNumber(), getThing().getUID()  );
@@ -208,4 +212,10 @@ public class MaxCubeHandler extends BaseThingHandler implements DeviceStatusList
 		newDevice = true;
 	}
 
+	@Override
+	public void onDeviceOnlineChanged(ThingUID bridge, String serialNumber, boolean online) {
+		logger.debug("MAX! device {} ({}) is {}.", maxCubeDeviceSerial, getThing().getUID(), online ? "online" : "offline");
+		updateStatus(online ? ThingStatus.ONLINE : ThingStatus.OFFLINE);
+	}
+
 }
@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2014 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.max.internal.handler;
+
+import org.openhab.binding.max.internal.message.MessageType;
+
+/**
+ * The {@link MaxCubeMetrics} records how the communication with a MAX! Cube performs:
+ * the latency of the polls and the data they return, the time spent parsing each message
+ * type, and how long commands wait in the queue and for their acknowledgement.
+ */
+public final class MaxCubeMetrics {
+
+	private final LatencyHistogram pollLatency = new LatencyHistogram();
+	private final LatencyHistogram queueWait = new LatencyHistogram();
+	private final LatencyHistogram acknowledgeLatency = new LatencyHistogram();
+
+	private long polls = 0;
+	private long bytesRead = 0;
+	private long linesRead = 0;
+	private int lastPollBytes = -1;
+	private int lastPollLines = -1;
+
+	private final long[] parseCounts = new long[MessageType.values().length];
+	private final long[] parseNanos = new long[MessageType.values().length];
+
+	/**
+	 * Records a completed poll.
+	 *
+	 * @param latency
+	 *            the time in ms from sending the request to receiving the last line
+	 * @param lines
+	 *            the number of lines received
+	 * @param bytes
+	 *            the number of bytes received
+	 */
+	public synchronized void recordPoll(long latency, int lines, int bytes) {
+		pollLatency.record(latency);
+		polls++;
+		linesRead += lines;
+		bytesRead += bytes;
+		lastPollLines = lines;
+		lastPollBytes = bytes;
+	}
+
+	/**
+	 * Records the time spent decoding and processing a message.
+	 */
+	public synchronized void recordParse(MessageType type, long nanos) {
+		parseCounts[type.ordinal()]++;
+		parseNanos[type.ordinal()] += nanos;
+	}
+
+	/**
+	 * Records the time a command waited in the queue before being sent.
+	 */
+	public void recordQueueWait(long millis) {
+		queueWait.record(millis);
+	}
+
+	/**
+	 * Records the time from sending a command to its acknowledgement by the Cube.
+	 */
+	public void recordAcknowledge(long millis) {
+		acknowledgeLatency.record(millis);
+	}
+
+	public LatencyHistogram getPollLatency() {
+		return pollLatency;
+	}
+
+	public LatencyHistogram getQueueWait() {
+		return queueWait;
+	}
+
+	public LatencyHistogram getAcknowledgeLatency() {
+		return acknowledgeLatency;
+	}
+
+	public synchronized long getPolls() {
+		return polls;
+	}
+
+	public synchronized long getBytesRead() {
+		return bytesRead;
+	}
+
+	public synchronized long getLinesRead() {
+		return linesRead;
+	}
+
+	/**
+	 * @return the number of bytes received by the last poll, -1 if not polled yet
+	 */
+	public synchronized int getLastPollBytes() {
+		return lastPollBytes;
+	}
+
+	/**
+	 * @return the number of lines received by the last poll, -1 if not polled yet
+	 */
+	public synchronized int getLastPollLines() {
+		return lastPollLines;
+	}
+
+	/**
+	 * @return the number of messages of the type processed
+	 */
+	public synchronized long getParseCount(MessageType type) {
+		return parseCounts[type.ordinal()];
+	}
+
+	/**
+	 * @return the mean time in µs spent processing a message of the type, NaN if none has been processed
+	 */
+	public synchronized double getMeanParseTime(MessageType type) {
+		long count = parseCounts[type.ordinal()];
+		return count == 0 ? Double.NaN : parseNanos[type.ordinal()] / 1000.0 / count;
+	}
+}
@@ -0,0 +1,170 @@
+/**
+ * Copyright (c) 2014 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.max.internal.handler;
+
+import static org.openhab.binding.max.MaxBinding.CHANNEL_AVG_VALVE;
+import static org.openhab.binding.max.MaxBinding.CHANNEL_MAX_VALVE;
+import static org.openhab.binding.max.MaxBinding.CHANNEL_MIN_ACTUALTEMP;
+import static org.openhab.binding.max.MaxBinding.CHANNEL_MODE;
+import static org.openhab.binding.max.MaxBinding.CHANNEL_SETTEMP;
+import static org.openhab.binding.max.MaxBinding.CHANNEL_WINDOW_OPEN;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.smarthome.core.library.types.DecimalType;
+import org.eclipse.smarthome.core.library.types.OpenClosedType;
+import org.eclipse.smarthome.core.thing.Bridge;
+import org.eclipse.smarthome.core.thing.ChannelUID;
+import org.eclipse.smarthome.core.thing.Thing;
+import org.eclipse.smarthome.core.thing.ThingStatus;
+import org.eclipse.smarthome.core.thing.binding.BaseThingHandler;
+import org.eclipse.smarthome.core.thing.binding.ThingHandler;
+import org.eclipse.smarthome.core.types.Command;
+import org.openhab.binding.max.MaxBinding;
+import org.openhab.binding.max.internal.message.SendCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link MaxRoomHandler} exposes the heating state of a room, aggregated by the
+ * {@link MaxCubeBridgeHandler} from the devices in the room, as channels. Setpoint and
+ * mode commands are sent to all thermostats of the room as one group command.
+ */
+public class MaxRoomHandler extends BaseThingHandler {
+
+	private Logger logger = LoggerFactory.getLogger(MaxRoomHandler.class);
+
+	/** delay in seconds before trying again to register with the bridge */
+	private static final int REGISTER_RETRY_DELAY = 10;
+	private ScheduledFuture<?> registerJob;
+	private MaxCubeBridgeHandler bridgeHandler;
+
+	private int roomId = -1;
+
+	public MaxRoomHandler(Thing thing) {
+		super(thing);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void initialize() {
+		try {
+			roomId = Integer.parseInt(String.valueOf(getThing().getConfiguration().get(MaxBinding.ROOM_ID)));
+			logger.debug("Initialized MAX! room handler for room {}.", roomId);
+		} catch (NumberFormatException e) {
+			logger.warn("Initialized MAX! room handler without valid roomId configuration.");
+		}
+		//until the bridge reports the room put the Thing offline
+		updateStatus(ThingStatus.OFFLINE);
+		if (roomId >= 0) {
+			registerWithBridge();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void dispose() {
+		if (registerJob != null && !registerJob.isCancelled()) {
+			registerJob.cancel(true);
+			registerJob = null;
+		}
+		updateStatus(ThingStatus.OFFLINE);
+		if (bridgeHandler != null) {
+			bridgeHandler.unregisterRoomHandler(roomId, this);
+		}
+		super.dispose();
+	}
+
+	/**
+	 * Registers this handler with the bridge, trying again later while the bridge
+	 * handler is not available yet.
+	 */
+	private void registerWithBridge() {
+		Runnable runnable = new Runnable() {
+			public void run() {
+				try {
+					if (getMaxCubeBridgeHandler() == null) {
+						logger.debug("Bridge for MAX! room {} not found.", roomId);
+						registerJob = scheduler.schedule(this, REGISTER_RETRY_DELAY, TimeUnit.SECONDS);
+					}
+				} catch (Exception e) {
+					logger.debug("Exception occurred during execution: {}", e.getMessage(), e);
+				}
+			}
+		};
+
+		registerJob = scheduler.schedule(runnable, 0, TimeUnit.SECONDS);
+	}
+
+	synchronized MaxCubeBridgeHandler getMaxCubeBridgeHandler() {
+		if (this.bridgeHandler == null) {
+			Bridge bridge = getBridge();
+			if (bridge == null) {
+				return null;
+			}
+			ThingHandler handler = bridge.getHandler();
+			if (handler instanceof MaxCubeBridgeHandler) {
+				this.bridgeHandler = (MaxCubeBridgeHandler) handler;
+				this.bridgeHandler.registerRoomHandler(roomId, this);
+			} else {
+				return null;
+			}
+		}
+		return this.bridgeHandler;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void handleCommand(ChannelUID channelUID, Command command) {
+		MaxCubeBridgeHandler maxCubeBridge = getMaxCubeBridgeHandler();
+		if (maxCubeBridge == null) {
+			logger.warn("maxCube LAN gateway bridge handler not found. Cannot handle command without bridge.");
+			return;
+		}
+		if (roomId <= 0) {
+			logger.warn("Room ID missing. Can't send command to room '{}'", getThing());
+			return;
+		}
+
+		if (channelUID.getId().equals(CHANNEL_SETTEMP) || channelUID.getId().equals(CHANNEL_MODE)) {
+			// a single group command sets all thermostats of the room
+			maxCubeBridge.queueCommand(new SendCommand(roomId, channelUID, command));
+		} else {
+			logger.warn("Setting of channel {} not possible. Read-only", channelUID);
+		}
+	}
+
+	/**
+	 * Updates the channels with the current aggregates of the room.
+	 */
+	void onRoomStateChanged(RoomAggregates aggregates) {
+		updateStatus(ThingStatus.ONLINE);
+		double averageValvePosition = aggregates.getAverageValvePosition(roomId);
+		if (!Double.isNaN(averageValvePosition)) {
+			updateState(new ChannelUID(getThing().getUID(), CHANNEL_AVG_VALVE),
+					new DecimalType(Math.round(averageValvePosition)));
+		}
+		int maxValvePosition = aggregates.getMaxValvePosition(roomId);
+		if (maxValvePosition >= 0) {
+			updateState(new ChannelUID(getThing().getUID(), CHANNEL_MAX_VALVE), new DecimalType(maxValvePosition));
+		}
+		double minActualTemperature = aggregates.getMinActualTemperature(roomId);
+		if (!Double.isNaN(minActualTemperature)) {
+			updateState(new ChannelUID(getThing().getUID(), CHANNEL_MIN_ACTUALTEMP), new DecimalType(minActualTemperature));
+		}
+		updateState(new ChannelUID(getThing().getUID(), CHANNEL_WINDOW_OPEN),
+				aggregates.isWindowOpen(roomId) ? OpenClosedType.OPEN : OpenClosedType.CLOSED);
+	}
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2014 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.max.internal.handler;
+
+/**
+ * The {@link PollingScheduler} decides when a MAX! Cube is polled next.
+ *
+ * The configured refresh interval is the base interval. For a short time after a
+ * command has been sent, the Cube is polled faster, so the new setpoint or mode is
+ * confirmed quickly. While the polls do not return any changes, the interval is
+ * increased step by step. While the Cube pushes its updates, it is only polled as
+ * a heartbeat. When the Cube cannot be reached, the interval grows exponentially.
+ */
+final class PollingScheduler {
+
+	/** interval in ms used after a command has been sent */
+	static final long FAST_INTERVAL = 2000;
+
+	/** time in ms after a command during which the fast interval is used */
+	static final long FAST_WINDOW = 30000;
+
+	/** number of polls without changes after which the interval is increased by the refresh interval */
+	static final int QUIET_POLLS = 6;
+
+	/** maximum multiple of the refresh interval used while the polls do not return any changes */
+	static final int MAX_QUIET_FACTOR = 4;
+
+	/** interval in ms used while the Cube pushes its updates */
+	static final long PUSH_HEARTBEAT_INTERVAL = 60000;
+
+	/** maximum interval in ms used while the Cube cannot be reached */
+	static final long MAX_OFFLINE_INTERVAL = 300000;
+
+	private final long interval;
+
+	private long fastUntil = 0;
+	private int unchangedPolls = 0;
+	private int failures = 0;
+	private long lastPushedUpdate = 0;
+
+	/**
+	 * @param interval
+	 *            the configured refresh interval in ms
+	 */
+	PollingScheduler(long interval) {
+		this.interval = Math.max(interval, 1000);
+	}
+
+	/**
+	 * Switches to the fast interval after a command has been sent to the Cube.
+	 *
+	 * @param now
+	 *            the current time
+	 */
+	synchronized void onCommandSent(long now) {
+		fastUntil = now + FAST_WINDOW;
+	}
+
+	/**
+	 * Updates the state after a successful poll.
+	 *
+	 * @param changed
+	 *            true if the poll returned changed devices
+	 */
+	synchronized void onPoll(boolean changed) {
+		failures = 0;
+		unchangedPolls = changed ? 0 : unchangedPolls + 1;
+	}
+
+	/**
+	 * Updates the state after a failed poll.
+	 */
+	synchronized void onFailure() {
+		failures++;
+	}
+
+	/**
+	 * Updates the state after the Cube has pushed an L: line on its own.
+	 *
+	 * @param now
+	 *            the current time
+	 */
+	synchronized void onPushedUpdate(long now) {
+		lastPushedUpdate = now;
+		failures = 0;
+	}
+
+	/**
+	 * @param now
+	 *            the current time
+	 * @return the time in ms until the next poll
+	 */
+	synchronized long getNextDelay(long now) {
+		if (failures > 0) {
+			long delay = interval;
+			for (int i = 1; i < failures && delay < MAX_OFFLINE_INTERVAL; i++) {
+				delay *= 2;
+			}
+			return Math.min(delay, Math.max(interval, MAX_OFFLINE_INTERVAL));
+		}
+		if (now < fastUntil) {
+			return Math.min(interval, FAST_INTERVAL);
+		}
+		if (now - lastPushedUpdate < interval) {
+			return Math.max(interval, PUSH_HEARTBEAT_INTERVAL);
+		}
+		return interval * Math.min(1 + unchangedPolls / QUIET_POLLS, MAX_QUIET_FACTOR);
+	}
+
+	/**
+	 * @return the longest time in ms between two polls while the Cube can be reached
+	 */
+	long getMaxInterval() {
+		return Math.max(interval * MAX_QUIET_FACTOR, PUSH_HEARTBEAT_INTERVAL);
+	}
+
+	/**
+	 * @return the number of polls failed in a row
+	 */
+	synchronized int getFailures() {
+		return failures;
+	}
+}
@@ -0,0 +1,204 @@
+/**
+ * Copyright (c) 2014 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.max.internal.handler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.eclipse.smarthome.core.library.types.OpenClosedType;
+import org.openhab.binding.max.internal.message.Device;
+import org.openhab.binding.max.internal.message.DeviceType;
+import org.openhab.binding.max.internal.message.HeatingThermostat;
+import org.openhab.binding.max.internal.message.ShutterContact;
+
+/**
+ * The {@link RoomAggregates} keeps the heating state of each room of a MAX! Cube: the
+ * average and maximum valve position of the radiator thermostats, the lowest actual
+ * temperature of all thermostats and whether a window is open.
+ *
+ * The aggregates are updated incrementally: each device contributes to the aggregates
+ * of its room, and when the state of a device changes only its old contribution is
+ * replaced by the new one. The rooms of the other devices are not visited.
+ */
+final class RoomAggregates {
+
+	private static final int UNKNOWN_TEMPERATURE = Integer.MIN_VALUE;
+
+	private static final class Room {
+		int valves = 0;
+		long valveSum = 0;
+		final int[] valveCounts = new int[101];
+		int openWindows = 0;
+		/** number of thermostats by actual temperature in tenths of °C */
+		final TreeMap<Integer, Integer> actualTemperatures = new TreeMap<Integer, Integer>();
+	}
+
+	/** the part of a single device in the aggregates of its room */
+	private static final class Contribution {
+		final int roomId;
+		final int valvePosition;
+		final int actualTemperature;
+		final boolean windowOpen;
+
+		Contribution(int roomId, int valvePosition, int actualTemperature, boolean windowOpen) {
+			this.roomId = roomId;
+			this.valvePosition = valvePosition;
+			this.actualTemperature = actualTemperature;
+			this.windowOpen = windowOpen;
+		}
+
+		boolean sameAs(Contribution other) {
+			return other != null && roomId == other.roomId && valvePosition == other.valvePosition
+					&& actualTemperature == other.actualTemperature && windowOpen == other.windowOpen;
+		}
+	}
+
+	private final Map<Integer, Room> rooms = new HashMap<Integer, Room>();
+
+	/** contributions by RF address */
+	private final Map<Integer, Contribution> contributions = new HashMap<Integer, Contribution>();
+
+	/**
+	 * Replaces the contribution of a device with its current state.
+	 *
+	 * @param device
+	 *            the device whose state has changed
+	 * @param changedRooms
+	 *            the IDs of the rooms whose aggregates have changed are added to this collection
+	 */
+	synchronized void update(Device device, Collection<Integer> changedRooms) {
+		Contribution previous = contributions.get(device.getRFAddressValue());
+		Contribution contribution = getContribution(device, previous);
+		if (contribution.sameAs(previous)) {
+			return;
+		}
+		if (previous != null) {
+			apply(previous, -1);
+			addRoomId(changedRooms, previous.roomId);
+		}
+		apply(contribution, 1);
+		addRoomId(changedRooms, contribution.roomId);
+		contributions.put(device.getRFAddressValue(), contribution);
+	}
+
+	private static void addRoomId(Collection<Integer> roomIds, int roomId) {
+		if (!roomIds.contains(roomId)) {
+			roomIds.add(roomId);
+		}
+	}
+
+	private static Contribution getContribution(Device device, Contribution previous) {
+		int valvePosition = -1;
+		int actualTemperature = UNKNOWN_TEMPERATURE;
+		boolean windowOpen = false;
+		if (device.getType() == DeviceType.HeatingThermostat || device.getType() == DeviceType.HeatingThermostatPlus) {
+			valvePosition = Math.max(0, Math.min(100, ((HeatingThermostat) device).getValvePositionValue()));
+		}
+		if (device instanceof HeatingThermostat) {
+			double temperature = ((HeatingThermostat) device).getTemperatureActualValue();
+			if (temperature != 0 && !Double.isNaN(temperature)) {
+				actualTemperature = (int) Math.round(temperature * 10);
+			} else if (previous != null && previous.roomId == device.getRoomId()) {
+				// the thermostats only measure while the valve moves, keep the last measurement
+				actualTemperature = previous.actualTemperature;
+			}
+		}
+		if (device instanceof ShutterContact) {
+			windowOpen = OpenClosedType.OPEN.equals(((ShutterContact) device).getShutterState());
+		}
+		return new Contribution(device.getRoomId(), valvePosition, actualTemperature, windowOpen);
+	}
+
+	private void apply(Contribution contribution, int sign) {
+		Room room = rooms.get(contribution.roomId);
+		if (room == null) {
+			room = new Room();
+			rooms.put(contribution.roomId, room);
+		}
+		if (contribution.valvePosition >= 0) {
+			room.valves += sign;
+			room.valveSum += sign * contribution.valvePosition;
+			room.valveCounts[contribution.valvePosition] += sign;
+		}
+		if (contribution.actualTemperature != UNKNOWN_TEMPERATURE) {
+			Integer count = room.actualTemperatures.get(contribution.actualTemperature);
+			int newCount = (count == null ? 0 : count) + sign;
+			if (newCount > 0) {
+				room.actualTemperatures.put(contribution.actualTemperature, newCount);
+			} else {
+				room.actualTemperatures.remove(contribution.actualTemperature);
+			}
+		}
+		if (contribution.windowOpen) {
+			room.openWindows += sign;
+		}
+	}
+
+	/**
+	 * @return the IDs of the rooms with at least one device
+	 */
+	synchronized Collection<Integer> getRoomIds() {
+		return new ArrayList<Integer>(rooms.keySet());
+	}
+
+	/**
+	 * @return true if at least one device of the room is known
+	 */
+	synchronized boolean hasRoom(int roomId) {
+		return rooms.containsKey(roomId);
+	}
+
+	/**
+	 * @return the average valve position in percent, NaN if the room has no radiator thermostat
+	 */
+	synchronized double getAverageValvePosition(int roomId) {
+		Room room = rooms.get(roomId);
+		if (room == null || room.valves == 0) {
+			return Double.NaN;
+		}
+		return (double) room.valveSum / room.valves;
+	}
+
+	/**
+	 * @return the highest valve position in percent, -1 if the room has no radiator thermostat
+	 */
+	synchronized int getMaxValvePosition(int roomId) {
+		Room room = rooms.get(roomId);
+		if (room == null) {
+			return -1;
+		}
+		for (int valvePosition = 100; valvePosition >= 0; valvePosition--) {
+			if (room.valveCounts[valvePosition] > 0) {
+				return valvePosition;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the lowest actual temperature in °C, NaN if no thermostat of the room has measured yet
+	 */
+	synchronized double getMinActualTemperature(int roomId) {
+		Room room = rooms.get(roomId);
+		if (room == null || room.actualTemperatures.isEmpty()) {
+			return Double.NaN;
+		}
+		return room.actualTemperatures.firstKey() / 10.0;
+	}
+
+	/**
+	 * @return true if a window of the room is open
+	 */
+	synchronized boolean isWindowOpen(int roomId) {
+		Room room = rooms.get(roomId);
+		return room != null && room.openWindows > 0;
+	}
+}
@@ -9,16 +9,13 @@
 package org.openhab.binding.max.internal.message;
 
 import java.io.UnsupportedEncodingException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 import org.apache.commons.net.util.Base64;
 import org.openhab.binding.max.internal.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.base.Strings;
-
 /**
  * The C message contains configuration about a MAX! device.
  * 
@@ -30,54 +27,65 @@ public final class C_Message extends Message {
 
 	private static final Logger logger = LoggerFactory.getLogger(C_Message.class);
 
+	/** offset of the device specific data */
+	private static final int DATA_START = 18;
+
+	/** offset of the weekly program within the device specific data of a radiator thermostat */
+	private static final int PROGRAM_START = 11;
+
+	/** offset of the weekly program within the device specific data of a wall thermostat */
+	private static final int WALL_THERMOSTAT_PROGRAM_START = 4;
+
+	/** number of days of the weekly program, starting with Saturday */
+	public static final int PROGRAM_DAYS = 7;
+
+	/** number of switch points per day of the weekly program */
+	public static final int PROGRAM_SWITCH_POINTS = 13;
+
 	private String rfAddress = null;
 	private int length = 0;
 	private DeviceType deviceType = null;
 	private String serialNumber = null;
-	private String tempComfort= null;
-	private String tempEco = null;
-	private String tempSetpointMax= null;
-	private String tempSetpointMin= null;
-	private String tempOffset = null;
-	private String tempOpenWindow = null;
-	private String durationOpenWindow = null;
-	private String decalcification = null;
-	private String valveMaximum = null;
-	private String valveOffset = null;
-	private String programData = null;
-	private String boostDuration = null;
-	private String boostValve = null;
-	private Map<String, Object> properties = new HashMap<>();
-	
+
+	/** the decoded payload, the settings and the program are only decoded from it when asked for */
+	private byte[] bytes = null;
+
+	private boolean settingsDecoded = false;
+	private double comfortTemperature = Double.NaN;
+	private double ecoTemperature = Double.NaN;
+	private double maxSetpointTemperature = Double.NaN;
+	private double minSetpointTemperature = Double.NaN;
+	private double temperatureOffset = Double.NaN;
+	private double windowOpenTemperature = Double.NaN;
+	private int windowOpenDuration = -1;
+	private int boostDuration = -1;
+	private int boostValvePosition = -1;
+	private int decalcificationDay = -1;
+	private int decalcificationHour = -1;
+	private double maxValvePosition = Double.NaN;
+	private double valveOffset = Double.NaN;
+
 	public C_Message(String raw) {
 		super(raw);
 		String[] tokens = this.getPayload().split(Message.DELIMETER);
 
 		rfAddress = tokens[0];
 
-		byte[] bytes = Base64.decodeBase64(tokens[1].getBytes());
+		bytes = Base64.decodeBase64(tokens[1].getBytes());
 
-		int[] data = new int[bytes.length];
-
-		for (int i = 0; i < bytes.length; i++) {
-			data[i] = bytes[i] & 0xFF;
-		}
-
-		length = data[0];
-		if (length != data.length - 1) {
-			logger.debug("C_Message malformed: wrong data length. Expected bytes {}, actual bytes {}", length, data.length - 1);
+		length = bytes[0] & 0xFF;
+		if (length != bytes.length - 1) {
+			logger.debug("C_Message malformed: wrong data length. Expected bytes {}, actual bytes {}", length, bytes.length - 1);
 		}
 
-		String rfAddress2 = Utils.toHex(data[1], data[2], data[3]);
-		if (!rfAddress.toUpperCase().equals(rfAddress2.toUpperCase())) {
+		String rfAddress2 = Utils.toHex(bytes[1] & 0xFF, bytes[2] & 0xFF, bytes[3] & 0xFF);
+		if (!rfAddress.equalsIgnoreCase(rfAddress2)) {
 			logger.debug("C_Message malformed: wrong RF address. Expected address {}, actual address {}", rfAddress.toUpperCase(), rfAddress2.toUpperCase());
 		}
 
-		deviceType = DeviceType.create(data[4]);
+		deviceType = DeviceType.create(bytes[4] & 0xFF);
 
 		serialNumber = getSerialNumber(bytes);
-		if (deviceType == DeviceType.HeatingThermostatPlus || deviceType == DeviceType.HeatingThermostat || deviceType == DeviceType.WallMountedThermostat)  parseHeatingThermostatData (bytes);
-		if (deviceType == DeviceType.EcoSwitch || deviceType == DeviceType.ShutterContact)  logger.trace("Device {} type {} Data:",  rfAddress, deviceType.toString() , parseData (bytes));
 	}
 
 	private String getSerialNumber(byte[] bytes) {
@@ -96,90 +104,199 @@ public final class C_Message extends Message {
 		return "";
 	}
 
-	private String parseData(byte[] bytes) {
-		if (bytes.length <= 18) return "";
-		try{
-			int DataStart = 18;
-			byte[] sn = new byte[bytes.length - DataStart];
+	private boolean isThermostat() {
+		return deviceType == DeviceType.HeatingThermostatPlus || deviceType == DeviceType.HeatingThermostat
+				|| deviceType == DeviceType.WallMountedThermostat;
+	}
 
-			for (int i = 0; i < sn.length; i++) {
-				sn[i] = (byte) bytes[i + DataStart];
-			}
-			logger.trace("DataBytes: " + Utils.getHex(sn));
-			try {
-				return new String(sn, "UTF-8");
-			} catch (UnsupportedEncodingException e) {
-				logger.debug("Cannot encode device string from C message due to encoding issues.");
-			}
+	private boolean isWallThermostatData() {
+		return bytes.length < 211;
+	}
 
-		}  catch (Exception e) {
-			logger.debug(e.getMessage());
-			logger.debug(Utils.getStackTrace(e));
+	private int getByte(int offset) {
+		return bytes[DATA_START + offset] & 0xFF;
+	}
+
+	/**
+	 * Decodes the settings of a thermostat into the typed fields the first time one of them is asked for.
+	 */
+	private synchronized void decodeSettings() {
+		if (settingsDecoded) {
+			return;
+		}
+		settingsDecoded = true;
+		if (!isThermostat() || bytes.length < DATA_START + 4) {
+			return;
 		}
+		comfortTemperature = getByte(0) / 2.0;
+		ecoTemperature = getByte(1) / 2.0;
+		maxSetpointTemperature = getByte(2) / 2.0;
+		minSetpointTemperature = getByte(3) / 2.0;
+		if (isWallThermostatData() || bytes.length < DATA_START + PROGRAM_START) {
+			return;
+		}
+		temperatureOffset = getByte(4) / 2.0 - 3.5;
+		windowOpenTemperature = getByte(5) / 2.0;
+		windowOpenDuration = getByte(6) * 5;
+		int boost = getByte(7);
+		boostDuration = (boost >> 5) == 7 ? 60 : (boost >> 5) * 5;
+		boostValvePosition = (boost & 0x1F) * 5;
+		decalcificationDay = getByte(8) >> 5;
+		decalcificationHour = getByte(8) & 0x1F;
+		maxValvePosition = getByte(9) * 100 / 255.0;
+		valveOffset = getByte(10) * 100 / 255.0;
+	}
 
-		return "";
+	/**
+	 * @return the comfort temperature in °C, NaN if not configured for this device
+	 */
+	public double getComfortTemperature() {
+		decodeSettings();
+		return comfortTemperature;
 	}
 
-	private void parseHeatingThermostatData(byte[] bytes) {
-		try{
-
-			int plusDataStart = 18;
-			int programDataStart = 11;
-			tempComfort= Float.toString( bytes[plusDataStart ]/2);
-			tempEco = Float.toString( bytes[plusDataStart + 1]/2);
-			tempSetpointMax=  Float.toString( bytes[plusDataStart + 2]/2);
-			tempSetpointMin=  Float.toString( bytes[plusDataStart + 3]/2);
-			properties.put("Temp Comfort",tempComfort);
-			properties.put("Temp Eco",tempEco);
-			properties.put("Temp Setpoint Max",tempSetpointMax);
-			properties.put("Temp Setpoint Min",tempSetpointMin);
-			if (bytes.length < 211) {
-				// Device is a WallMountedThermostat
-				programDataStart = 4;
-				logger.trace("WallThermostat byte {}: {}", bytes.length -3, Float.toString( bytes[bytes.length -3]&0xFF));
-				logger.trace("WallThermostat byte {}: {}", bytes.length -2, Float.toString( bytes[bytes.length -2]&0xFF));
-				logger.trace("WallThermostat byte {}: {}", bytes.length -1, Float.toString( bytes[bytes.length -1]&0xFF));
-			} else
-			{
-				// Device is a HeatingThermostat(+)
-				tempOffset =  Double.toString( (bytes[plusDataStart +4 ]/2) - 3.5);
-				tempOpenWindow =  Float.toString( bytes[plusDataStart + 5]/2);
-				durationOpenWindow =  Float.toString( bytes[plusDataStart + 6]);
-				boostDuration =  Float.toString( bytes[plusDataStart + 7]&0xFF >> 5 );
-				boostValve =  Float.toString( (bytes[plusDataStart + 7]&0x1F)*5);
-				decalcification =  Float.toString( bytes[plusDataStart + 8]);
-				valveMaximum = Float.toString( bytes[plusDataStart + 9]&0xFF * 100 / 255);
-				valveOffset = Float.toString( bytes[plusDataStart+ 10]&0xFF * 100 / 255 );
-				properties.put("Temp Offset",tempOffset);
-				properties.put("Temp Open Window",tempOpenWindow);
-				properties.put("Duration Open Windoww",durationOpenWindow);
-				properties.put("Duration Boost",boostDuration);
-				properties.put("Duration Boost",boostValve);
-				properties.put("Decalcification",decalcification);
-				properties.put("ValveMaximum",valveMaximum);
-				properties.put("ValveOffset",valveOffset);
-			}
-			programData = "";
-			int ln = 13 * 6; //first day = Sat 
-			String startTime = "00:00h";
-			for (int char_idx = plusDataStart + programDataStart; char_idx < (plusDataStart + programDataStart +  26*7); char_idx++) {
-				if (ln % 13 == 0 ) { programData += "\r\n Day " + Integer.toString((ln / 13) % 7 ) + ": "; startTime = "00:00h"; }
-				int progTime =  (bytes[char_idx+1]&0xFF ) * 5 + (bytes[char_idx]&0x01 ) * 1280 ;
-				int progMinutes = progTime % 60;
-				int progHours = (progTime - progMinutes ) / 60;
-				String endTime = Integer.toString(progHours) + ":" + String.format("%02d", progMinutes) + "h";
-				programData += startTime + "-" + endTime + " " + Double.toString(bytes[char_idx] /4) + "C  ";
-				startTime = endTime;
-				char_idx++;
-				ln++;
-			}
+	/**
+	 * @return the eco temperature in °C, NaN if not configured for this device
+	 */
+	public double getEcoTemperature() {
+		decodeSettings();
+		return ecoTemperature;
+	}
+
+	/**
+	 * @return the maximum setpoint temperature in °C, NaN if not configured for this device
+	 */
+	public double getMaxSetpointTemperature() {
+		decodeSettings();
+		return maxSetpointTemperature;
+	}
+
+	/**
+	 * @return the minimum setpoint temperature in °C, NaN if not configured for this device
+	 */
+	public double getMinSetpointTemperature() {
+		decodeSettings();
+		return minSetpointTemperature;
+	}
+
+	/**
+	 * @return the offset added to the measured temperature in °C, NaN if not configured for this device
+	 */
+	public double getTemperatureOffset() {
+		decodeSettings();
+		return temperatureOffset;
+	}
+
+	/**
+	 * @return the temperature used while a window is open in °C, NaN if not configured for this device
+	 */
+	public double getWindowOpenTemperature() {
+		decodeSettings();
+		return windowOpenTemperature;
+	}
 
+	/**
+	 * @return the time the window open temperature is kept in minutes, -1 if not configured for this device
+	 */
+	public int getWindowOpenDuration() {
+		decodeSettings();
+		return windowOpenDuration;
+	}
 
-		}  catch (Exception e) {
-			logger.debug(e.getMessage());
-			logger.debug(Utils.getStackTrace(e));
+	/**
+	 * @return the duration of a boost in minutes, -1 if not configured for this device
+	 */
+	public int getBoostDuration() {
+		decodeSettings();
+		return boostDuration;
+	}
+
+	/**
+	 * @return the valve position during a boost in percent, -1 if not configured for this device
+	 */
+	public int getBoostValvePosition() {
+		decodeSettings();
+		return boostValvePosition;
+	}
+
+	/**
+	 * @return the day of the decalcification, 0 for Saturday, -1 if not configured for this device
+	 */
+	public int getDecalcificationDay() {
+		decodeSettings();
+		return decalcificationDay;
+	}
+
+	/**
+	 * @return the hour of the decalcification, -1 if not configured for this device
+	 */
+	public int getDecalcificationHour() {
+		decodeSettings();
+		return decalcificationHour;
+	}
+
+	/**
+	 * @return the maximum valve position in percent, NaN if not configured for this device
+	 */
+	public double getMaxValvePosition() {
+		decodeSettings();
+		return maxValvePosition;
+	}
+
+	/**
+	 * @return the valve offset in percent, NaN if not configured for this device
+	 */
+	public double getValveOffset() {
+		decodeSettings();
+		return valveOffset;
+	}
+
+	/**
+	 * @return true if the message contains the weekly program of a thermostat
+	 */
+	public boolean hasProgram() {
+		return isThermostat() && bytes.length >= getProgramOffset(PROGRAM_DAYS, 0);
+	}
+
+	private int getProgramOffset(int day, int switchPoint) {
+		int programStart = DATA_START + (isWallThermostatData() ? WALL_THERMOSTAT_PROGRAM_START : PROGRAM_START);
+		return programStart + (day * PROGRAM_SWITCH_POINTS + switchPoint) * 2;
+	}
+
+	private int getProgramWord(int day, int switchPoint) {
+		if (!hasProgram() || day < 0 || day >= PROGRAM_DAYS || switchPoint < 0 || switchPoint >= PROGRAM_SWITCH_POINTS) {
+			throw new IndexOutOfBoundsException("No program for day " + day + ", switch point " + switchPoint);
 		}
-		return ;
+		int offset = getProgramOffset(day, switchPoint);
+		return (bytes[offset] & 0xFF) << 8 | bytes[offset + 1] & 0xFF;
+	}
+
+	/**
+	 * Returns the temperature of the weekly program up to a switch point. The program is
+	 * read directly from the message, without decoding the complete program.
+	 *
+	 * @param day
+	 *            the day, 0 for Saturday
+	 * @param switchPoint
+	 *            the switch point of the day, 0 to {@link #PROGRAM_SWITCH_POINTS} - 1
+	 * @return the temperature in °C
+	 */
+	public double getProgramTemperature(int day, int switchPoint) {
+		return (getProgramWord(day, switchPoint) >> 9) / 2.0;
+	}
+
+	/**
+	 * Returns the time of a switch point of the weekly program. The temperature of the
+	 * switch point is kept until this time, the last switch point of a day ends at 24:00.
+	 *
+	 * @param day
+	 *            the day, 0 for Saturday
+	 * @param switchPoint
+	 *            the switch point of the day, 0 to {@link #PROGRAM_SWITCH_POINTS} - 1
+	 * @return the time in minutes after midnight
+	 */
+	public int getProgramEndTime(int day, int switchPoint) {
+		return (getProgramWord(day, switchPoint) & 0x1FF) * 5;
 	}
 
 	public String getSerialNumber() {
@@ -201,14 +318,53 @@ public final class C_Message extends Message {
 
 	@Override
 	public void debug(Logger logger) {
+		if (!logger.isTraceEnabled()) {
+			return;
+		}
 		logger.trace("=== C_Message === ");
 		logger.trace("\tRAW:                    {}", this.getPayload());
 		logger.trace("DeviceType:               {}" , deviceType.toString());
 		logger.trace("SerialNumber:             {}" , serialNumber);
 		logger.trace("RFAddress:                {}" , rfAddress);
-        for(String key: properties.keySet()){
-    		logger.trace("{}:{}{}", key , Strings.repeat(" ",25 - key.length() ), properties.get(key));
-        }
-        logger.trace("ProgramData:          {}", programData);
+		if (isThermostat()) {
+			logger.trace("Temp Comfort:             {}", getComfortTemperature());
+			logger.trace("Temp Eco:                 {}", getEcoTemperature());
+			logger.trace("Temp Setpoint Max:        {}", getMaxSetpointTemperature());
+			logger.trace("Temp Setpoint Min:        {}", getMinSetpointTemperature());
+			if (!Double.isNaN(getTemperatureOffset())) {
+				logger.trace("Temp Offset:              {}", getTemperatureOffset());
+				logger.trace("Temp Open Window:         {}", getWindowOpenTemperature());
+				logger.trace("Duration Open Window:     {}", getWindowOpenDuration());
+				logger.trace("Duration Boost:           {}", getBoostDuration());
+				logger.trace("Valve Boost:              {}", getBoostValvePosition());
+				logger.trace("Decalcification:          day {} hour {}", getDecalcificationDay(), getDecalcificationHour());
+				logger.trace("ValveMaximum:             {}", getMaxValvePosition());
+				logger.trace("ValveOffset:              {}", getValveOffset());
+			}
+			if (hasProgram()) {
+				logger.trace("ProgramData:          {}", formatProgram());
+			}
+		} else if (bytes.length > DATA_START) {
+			logger.trace("DataBytes: {}", Utils.getHex(Arrays.copyOfRange(bytes, DATA_START, bytes.length)));
+		}
+	}
+
+	private String formatProgram() {
+		StringBuilder programData = new StringBuilder();
+		for (int day = 0; day < PROGRAM_DAYS; day++) {
+			programData.append("\r\n Day ").append(day).append(": ");
+			int startTime = 0;
+			for (int switchPoint = 0; switchPoint < PROGRAM_SWITCH_POINTS && startTime < 24 * 60; switchPoint++) {
+				int endTime = getProgramEndTime(day, switchPoint);
+				programData.append(formatTime(startTime)).append('-').append(formatTime(endTime)).append(' ')
+						.append(getProgramTemperature(day, switchPoint)).append("C  ");
+				startTime = endTime;
+			}
+		}
+		return programData.toString();
+	}
+
+	private static String formatTime(int minutes) {
+		return (minutes / 60) + ":" + (minutes % 60 < 10 ? "0" : "") + (minutes % 60) + "h";
 	}
 }
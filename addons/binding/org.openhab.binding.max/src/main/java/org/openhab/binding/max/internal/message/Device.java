@@ -8,7 +8,6 @@
  */
 package org.openhab.binding.max.internal.message;
 
-import java.util.Date;
 import java.util.List;
 
 import org.eclipse.smarthome.core.library.types.OnOffType;
@@ -30,9 +29,13 @@ public abstract class Device {
 
 	private String serialNumber = "";
 	private String rfAddress = "";
+	private int rfAddressValue = -1;
 	private int roomId = -1;
 	private DeviceConfiguration config;
 
+	/** the last L message record of this device */
+	private byte[] record = null;
+
 	private boolean updated;
 	private boolean batteryLow;
 
@@ -45,49 +48,120 @@ public abstract class Device {
 	private boolean panelLocked;
 	private boolean linkStatusError;
 
+	/** time the device has last been reported by the MAX!Cube, 0 if not reported yet */
+	private volatile long lastSeen = 0;
+
 	public Device(DeviceConfiguration c) {
 		this.serialNumber = c.getSerialNumber();
 		this.rfAddress = c.getRFAddress();
+		this.rfAddressValue = c.getRFAddressValue();
 		this.roomId= c.getRoomId();
 		this.config = c;
 	}
 
 	public abstract DeviceType getType();
 
+	/**
+	 * @return true if the state of the device has been received from the MAX!Cube
+	 */
+	public boolean hasRecord() {
+		return record != null;
+	}
+
+	/**
+	 * @return the time the device has last been listed in a L message, 0 if it has not been listed yet
+	 */
+	public long getLastSeen() {
+		return lastSeen;
+	}
+
+	final void setLastSeen(long lastSeen) {
+		this.lastSeen = lastSeen;
+	}
+
 	public String getName(){
 		return config.getName();	
 	}
 
-	private static Device create(String rfAddress, List<DeviceConfiguration> configurations) {
-		Device returnValue = null;
+	private static Device create(int rfAddress, List<DeviceConfiguration> configurations) {
 		for (DeviceConfiguration c : configurations) {
-			if (c.getRFAddress().toUpperCase().equals(rfAddress.toUpperCase())) {
-				switch (c.getDeviceType()) {
-				case HeatingThermostatPlus:
-				case HeatingThermostat:
-					HeatingThermostat thermostat = new HeatingThermostat(c);
-					thermostat.setType(c.getDeviceType());
-					return thermostat;
-				case EcoSwitch:
-					return new EcoSwitch(c);
-				case ShutterContact:
-					return new ShutterContact(c);
-				case WallMountedThermostat:
-					return new WallMountedThermostat(c);
-				default:
-					return new UnsupportedDevice(c);
-				}
+			if (c.getRFAddressValue() == rfAddress) {
+				return create(c);
 			}
 		}
-		return returnValue;
+		return null;
+	}
+
+	/**
+	 * Creates a device based on the type specified in its configuration.
+	 * 
+	 * @param c
+	 *            the device configuration
+	 * @return the device
+	 */
+	public static Device create(DeviceConfiguration c) {
+		switch (c.getDeviceType()) {
+		case HeatingThermostatPlus:
+		case HeatingThermostat:
+			HeatingThermostat thermostat = new HeatingThermostat(c);
+			thermostat.setType(c.getDeviceType());
+			return thermostat;
+		case EcoSwitch:
+			return new EcoSwitch(c);
+		case ShutterContact:
+			return new ShutterContact(c);
+		case WallMountedThermostat:
+			return new WallMountedThermostat(c);
+		default:
+			return new UnsupportedDevice(c);
+		}
+	}
+
+	/**
+	 * Creates a copy of the device holding its current state, which is not
+	 * changed by later updates of the device. All state but the update flag is
+	 * decoded from the last L message record, so the copy decodes its own copy
+	 * of the record.
+	 * 
+	 * @return the copy of the device
+	 */
+	public final Device snapshot() {
+		Device copy = create(config);
+		copy.rfAddress = rfAddress;
+		copy.rfAddressValue = rfAddressValue;
+		copy.roomId = roomId;
+		copy.lastSeen = lastSeen;
+		if (record != null) {
+			copy.record = record.clone();
+			update(copy.record, null, copy);
+		}
+		copy.updated = updated;
+		return copy;
 	}
 
 	public static Device create(byte[] raw, List<DeviceConfiguration> configurations) {
-		if (raw.length == 0) {
+		return create(raw, 0, raw.length, configurations);
+	}
+
+	/**
+	 * Creates a device from a L message token without copying it.
+	 * 
+	 * @param data
+	 *            the array holding the token
+	 * @param offset
+	 *            the offset of the token within the array
+	 * @param length
+	 *            the length of the token
+	 * @param configurations
+	 *            the known device configurations
+	 * @return the device, or null if there is no configuration for the device
+	 */
+	public static Device create(byte[] data, int offset, int length, List<DeviceConfiguration> configurations) {
+		if (length < 3) {
 			return null;
 		}
 
-		String rfAddress = Utils.toHex(raw[0] & 0xFF, raw[1] & 0xFF, raw[2] & 0xFF);
+		int rfAddress = ((data[offset] & 0xFF) << 16) | ((data[offset + 1] & 0xFF) << 8) | (data[offset + 2] & 0xFF);
 
 		// Based on the RF address and the corresponding configuration,
 		// create the device based on the type specified in it's configuration
@@ -98,87 +172,123 @@ public abstract class Device {
 			return null;
 		}
 		
-		return Device.update(raw,configurations, device);
+		return Device.update(data, offset, length, configurations, device);
 	}
 	
 	public static Device update(byte[] raw, List<DeviceConfiguration> configurations, Device device) {
+		return update(raw, 0, raw.length, configurations, device);
+	}
+
+	/**
+	 * Updates a device from a L message token without copying it.
+	 * 
+	 * @param data
+	 *            the array holding the token
+	 * @param offset
+	 *            the offset of the token within the array
+	 * @param length
+	 *            the length of the token
+	 * @param configurations
+	 *            the known device configurations
+	 * @param device
+	 *            the device to be updated
+	 * @return the updated device
+	 */
+	public static Device update(byte[] data, int offset, int length, List<DeviceConfiguration> configurations, Device device) {
 
 		String rfAddress = device.getRFAddress();
 
+		if (length < 6) {
+			logger.debug("Device {}: L Message too short ({} bytes)", rfAddress, length);
+			return device;
+		}
+
 		// byte 4 is skipped
 
 		// multiple device information are encoded in those particular bytes
-		boolean[] bits1 = Utils.getBits(Utils.fromByte(raw[4]));
-		boolean[] bits2 = Utils.getBits(Utils.fromByte(raw[5]));
-
-		device.setInitialized(bits1[1]);
-		device.setAnswer(bits1[2]);
-		device.setError(bits1[3]);
-		device.setValid(bits1[4]);
-
-		device.setDstSettingActive(bits2[3]);
-		device.setGatewayKnown(bits2[4]);
-		device.setPanelLocked(bits2[5]);
-		device.setLinkStatusError(bits2[6]);
-		device.setBatteryLow(bits2[7]);
-
-		logger.trace ("Device {} type {} L Message length: {} content: {}", rfAddress,device.getType().toString(), raw.length,Utils.getHex(raw));
+		int bits1 = data[offset + 4] & 0xFF;
+		int bits2 = data[offset + 5] & 0xFF;
+
+		device.setInitialized((bits1 & 0x02) != 0);
+		device.setAnswer((bits1 & 0x04) != 0);
+		device.setError((bits1 & 0x08) != 0);
+		device.setValid((bits1 & 0x10) != 0);
+
+		device.setDstSettingActive((bits2 & 0x08) != 0);
+		device.setGatewayKnown((bits2 & 0x10) != 0);
+		device.setPanelLocked((bits2 & 0x20) != 0);
+		device.setLinkStatusError((bits2 & 0x40) != 0);
+		device.setBatteryLow((bits2 & 0x80) != 0);
+
+		if (logger.isTraceEnabled()) {
+			logger.trace("Device {} type {} L Message length: {} content: {}", rfAddress, device.getType().toString(),
+					length, Utils.getHex(data, offset, length));
+		}
 
 		// TODO move the device specific readings into the sub classes
 		switch (device.getType()) {
 		case WallMountedThermostat:
 		case HeatingThermostat:
 		case HeatingThermostatPlus:
+			if (length < 11) {
+				logger.debug("Device {}: L Message too short for a thermostat ({} bytes)", rfAddress, length);
+				break;
+			}
 			HeatingThermostat heatingThermostat = (HeatingThermostat) device;
 			// "xxxx xx00 = automatic, xxxx xx01 = manual, xxxx xx10 = vacation, xxxx xx11 = boost":
-			if (bits2[1] == false && bits2[0] == false) {
+			switch (bits2 & 0x03) {
+			case 0:
 				heatingThermostat.setMode(ThermostatModeType.AUTOMATIC);
-			} else if (bits2[1] == false && bits2[0] == true) {
+				break;
+			case 1:
 				heatingThermostat.setMode(ThermostatModeType.MANUAL);
-			} else if (bits2[1] == true && bits2[0] == false) {
+				break;
+			case 2:
 				heatingThermostat.setMode(ThermostatModeType.VACATION);
-			} else if (bits2[1] == true && bits2[0] == true) {
+				break;
+			default:
 				heatingThermostat.setMode(ThermostatModeType.BOOST);
-			} else {
-				logger.debug ("Device {}: Unknown mode",rfAddress) ;
+				break;
 			}
 
-			heatingThermostat.setValvePosition(raw[6] & 0xFF);
-			heatingThermostat.setTemperatureSetpoint(raw[7] & 0x7F);
+			heatingThermostat.setValvePosition(data[offset + 6] & 0xFF);
+			heatingThermostat.setTemperatureSetpoint(data[offset + 7] & 0x7F);
 
 			// 9 2 858B Date until (05-09-2011) (see Encoding/Decoding
 			// date/time)
 			// B 1 2E Time until (23:00) (see Encoding/Decoding date/time)
-			String hexDate = Utils.toHex(raw[8] & 0xFF, raw[9] & 0xFF);
-			int dateValue = Utils.fromHex(hexDate);
-			int timeValue = raw[10] & 0xFF;
-			Date date = Utils.resolveDateTime(dateValue, timeValue);
-			heatingThermostat.setDateSetpoint(date);
+			int dateValue = ((data[offset + 8] & 0xFF) << 8) | (data[offset + 9] & 0xFF);
+			int timeValue = data[offset + 10] & 0xFF;
+			heatingThermostat.setDateSetpoint(dateValue, timeValue);
 
 			int actualTemp = 0;
 			if (device.getType() == DeviceType.WallMountedThermostat) {
-				actualTemp = (raw[11] & 0xFF) + (raw[7] & 0x80) * 2 ;
-				
+				if (length > 11) {
+					actualTemp = (data[offset + 11] & 0xFF) + (data[offset + 7] & 0x80) * 2;
+				}
 			} else {
 				if ( heatingThermostat.getMode() != ThermostatModeType.VACATION && 
 						heatingThermostat.getMode() != ThermostatModeType.BOOST){
-					actualTemp = (raw[8] & 0xFF ) * 256  + ( raw[9] & 0xFF );
+					actualTemp = (data[offset + 8] & 0xFF) * 256 + (data[offset + 9] & 0xFF);
 				} else{
 					logger.debug ("Device {}: No temperature reading in {} mode",rfAddress, heatingThermostat.getMode()) ;
 				}
 			}
-			logger.trace ("Device {}: Actual Temperature : {}",rfAddress,  (double)actualTemp / 10);
+			if (logger.isTraceEnabled()) {
+				logger.trace("Device {}: Actual Temperature : {}", rfAddress, (double) actualTemp / 10);
+			}
 			heatingThermostat.setTemperatureActual((double)actualTemp / 10);
 			break;
 		case EcoSwitch:
-			String eCoSwitchData = Utils.toHex(raw[3] & 0xFF, raw[4] & 0xFF, raw[5] & 0xFF);
-			logger.trace ("EcoSwitch Device {} status bytes : {}", rfAddress, eCoSwitchData);
+			if (logger.isTraceEnabled()) {
+				logger.trace("EcoSwitch Device {} status bytes : {}", rfAddress, Utils.getHex(data, offset + 3, 3));
+			}
 			EcoSwitch ecoswitch = (EcoSwitch) device;
 			// xxxx xx10 = shutter open, xxxx xx00 = shutter closed
-			if (bits2[1] == true && bits2[0] == false) {
+			if ((bits2 & 0x03) == 2) {
 				ecoswitch.setEcoMode(OnOffType.ON);
 				logger.trace ("Device {} status: ON", rfAddress);
-			} else if (bits2[1] == false && bits2[0] == false) {
+			} else if ((bits2 & 0x03) == 0) {
 				ecoswitch.setEcoMode(OnOffType.OFF);
 				logger.trace ("Device {} status: OFF", rfAddress);
 			} else {
@@ -188,10 +298,10 @@ public abstract class Device {
 		case ShutterContact:
 			ShutterContact shutterContact = (ShutterContact) device;
 			// xxxx xx10 = shutter open, xxxx xx00 = shutter closed
-			if (bits2[1] == true && bits2[0] == false) {
+			if ((bits2 & 0x03) == 2) {
 				shutterContact.setShutterState(OpenClosedType.OPEN);
 				logger.trace ("Device {} status: Open", rfAddress);
-			} else if (bits2[1] == false && bits2[0] == false) {
+			} else if ((bits2 & 0x03) == 0) {
 				shutterContact.setShutterState(OpenClosedType.CLOSED);
 				logger.trace ("Device {} status: Closed", rfAddress);
 			} else {
@@ -200,13 +310,46 @@ public abstract class Device {
 
 			break;
 		default:
-			logger.debug("Unhandled Device. DataBytes: " + Utils.getHex(raw));
+			if (logger.isDebugEnabled()) {
+				logger.debug("Unhandled Device. DataBytes: {}", Utils.getHex(data, offset, length));
+			}
 			break;
 
 		}
 		return device;
 	}
 
+	/**
+	 * Compares a L message record with the last record of this device and keeps
+	 * a copy of it if it has changed.
+	 * 
+	 * @param data
+	 *            the array holding the record
+	 * @param offset
+	 *            the offset of the record within the array
+	 * @param length
+	 *            the length of the record
+	 * @return true if the record differs from the last record
+	 */
+	final boolean updateRecord(byte[] data, int offset, int length) {
+		if (record != null && record.length == length) {
+			boolean changed = false;
+			for (int i = 0; i < length; i++) {
+				if (record[i] != data[offset + i]) {
+					changed = true;
+					break;
+				}
+			}
+			if (!changed) {
+				return false;
+			}
+		} else {
+			record = new byte[length];
+		}
+		System.arraycopy(data, offset, record, 0, length);
+		return true;
+	}
+
 	private final void setBatteryLow(boolean batteryLow) {
 		if(this.batteryLow != batteryLow) {
 			this.updated = true;
@@ -226,6 +369,14 @@ public abstract class Device {
 
 	public final void setRFAddress(String rfAddress) {
 		this.rfAddress = rfAddress;
+		this.rfAddressValue = Utils.rfAddressFromHex(rfAddress);
+	}
+
+	/**
+	 * @return the RF address as integer, -1 if unknown
+	 */
+	public final int getRFAddressValue() {
+		return this.rfAddressValue;
 	}
 
 	public final int getRoomId() {
@@ -8,6 +8,7 @@
  */
 package org.openhab.binding.max.internal.message;
 
+import org.openhab.binding.max.internal.Utils;
 
 /**
 * Base class for configuration provided by the MAX!Cube C_Message. 
@@ -19,9 +20,13 @@ public final class DeviceConfiguration {
 	
 	private DeviceType deviceType = null;
 	private String rfAddress = null;
+	private int rfAddressValue = -1;
 	private String serialNumber = null;
 	private String name = null;
 	private int roomId = -1;
+
+	/** the latest C message of the device, its settings and program are only decoded when asked for */
+	private C_Message configurationMessage = null;
 	
 	private DeviceConfiguration() {
 	}
@@ -33,6 +38,13 @@ public final class DeviceConfiguration {
 		return configuration;
 	}
 	
+	public static DeviceConfiguration create(String rfAddress, DeviceType deviceType, String serialNumber, String name, int roomId) {
+		DeviceConfiguration configuration = new DeviceConfiguration();
+		configuration.setValues(rfAddress, deviceType, serialNumber, name);
+		configuration.setRoomId(roomId);
+		return configuration;
+	}
+
 	public static DeviceConfiguration create(DeviceInformation di) {
 		DeviceConfiguration configuration = new DeviceConfiguration();
 		configuration.setValues(di.getRFAddress(), di.getDeviceType(), di.getSerialNumber(), di.getName());
@@ -42,6 +54,7 @@ public final class DeviceConfiguration {
 
 	public void setValues(C_Message message) {
 		setValues(message.getRFAddress(), message.getDeviceType(), message.getSerialNumber());
+		this.configurationMessage = message;
 	}
 	
 	private void setValues(String rfAddress, DeviceType deviceType, String serialNumber, String name) {
@@ -51,6 +64,7 @@ public final class DeviceConfiguration {
 	
 	private void setValues(String rfAddress, DeviceType deviceType, String serialNumber) {
 		this.rfAddress = rfAddress;
+		this.rfAddressValue = Utils.rfAddressFromHex(rfAddress);
 		this.deviceType = deviceType;
 		this.serialNumber = serialNumber;
 	}
@@ -59,6 +73,13 @@ public final class DeviceConfiguration {
 		return rfAddress;
 	}
 
+	/**
+	 * @return the RF address as integer, -1 if unknown
+	 */
+	public int getRFAddressValue() {
+		return rfAddressValue;
+	}
+
 	public DeviceType getDeviceType() {
 		return deviceType;
 	}
@@ -77,5 +98,130 @@ public final class DeviceConfiguration {
 	
 	public void setRoomId(int roomId) {
 		this.roomId = roomId;
-	}	
+	}
+
+	/**
+	 * @return true if the C message of the device has been received
+	 */
+	public boolean hasConfigurationMessage() {
+		return configurationMessage != null;
+	}
+
+	/**
+	 * @return the comfort temperature in °C, NaN if not configured for this device
+	 */
+	public double getComfortTemperature() {
+		return configurationMessage == null ? Double.NaN : configurationMessage.getComfortTemperature();
+	}
+
+	/**
+	 * @return the eco temperature in °C, NaN if not configured for this device
+	 */
+	public double getEcoTemperature() {
+		return configurationMessage == null ? Double.NaN : configurationMessage.getEcoTemperature();
+	}
+
+	/**
+	 * @return the maximum setpoint temperature in °C, NaN if not configured for this device
+	 */
+	public double getMaxSetpointTemperature() {
+		return configurationMessage == null ? Double.NaN : configurationMessage.getMaxSetpointTemperature();
+	}
+
+	/**
+	 * @return the minimum setpoint temperature in °C, NaN if not configured for this device
+	 */
+	public double getMinSetpointTemperature() {
+		return configurationMessage == null ? Double.NaN : configurationMessage.getMinSetpointTemperature();
+	}
+
+	/**
+	 * @return the offset added to the measured temperature in °C, NaN if not configured for this device
+	 */
+	public double getTemperatureOffset() {
+		return configurationMessage == null ? Double.NaN : configurationMessage.getTemperatureOffset();
+	}
+
+	/**
+	 * @return the temperature used while a window is open in °C, NaN if not configured for this device
+	 */
+	public double getWindowOpenTemperature() {
+		return configurationMessage == null ? Double.NaN : configurationMessage.getWindowOpenTemperature();
+	}
+
+	/**
+	 * @return the time the window open temperature is kept in minutes, -1 if not configured for this device
+	 */
+	public int getWindowOpenDuration() {
+		return configurationMessage == null ? -1 : configurationMessage.getWindowOpenDuration();
+	}
+
+	/**
+	 * @return the duration of a boost in minutes, -1 if not configured for this device
+	 */
+	public int getBoostDuration() {
+		return configurationMessage == null ? -1 : configurationMessage.getBoostDuration();
+	}
+
+	/**
+	 * @return the valve position during a boost in percent, -1 if not configured for this device
+	 */
+	public int getBoostValvePosition() {
+		return configurationMessage == null ? -1 : configurationMessage.getBoostValvePosition();
+	}
+
+	/**
+	 * @return the day of the decalcification, 0 for Saturday, -1 if not configured for this device
+	 */
+	public int getDecalcificationDay() {
+		return configurationMessage == null ? -1 : configurationMessage.getDecalcificationDay();
+	}
+
+	/**
+	 * @return the hour of the decalcification, -1 if not configured for this device
+	 */
+	public int getDecalcificationHour() {
+		return configurationMessage == null ? -1 : configurationMessage.getDecalcificationHour();
+	}
+
+	/**
+	 * @return the maximum valve position in percent, NaN if not configured for this device
+	 */
+	public double getMaxValvePosition() {
+		return configurationMessage == null ? Double.NaN : configurationMessage.getMaxValvePosition();
+	}
+
+	/**
+	 * @return the valve offset in percent, NaN if not configured for this device
+	 */
+	public double getValveOffset() {
+		return configurationMessage == null ? Double.NaN : configurationMessage.getValveOffset();
+	}
+
+	/**
+	 * @return true if the weekly program of the thermostat has been received
+	 */
+	public boolean hasProgram() {
+		return configurationMessage != null && configurationMessage.hasProgram();
+	}
+
+	/**
+	 * @see C_Message#getProgramTemperature(int, int)
+	 */
+	public double getProgramTemperature(int day, int switchPoint) {
+		if (configurationMessage == null) {
+			throw new IndexOutOfBoundsException("No program received for device " + serialNumber);
+		}
+		return configurationMessage.getProgramTemperature(day, switchPoint);
+	}
+
+	/**
+	 * @see C_Message#getProgramEndTime(int, int)
+	 */
+	public int getProgramEndTime(int day, int switchPoint) {
+		if (configurationMessage == null) {
+			throw new IndexOutOfBoundsException("No program received for device " + serialNumber);
+		}
+		return configurationMessage.getProgramEndTime(day, switchPoint);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,243 @@
+/**
+ * Copyright (c) 2014 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.max.internal.message;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.openhab.binding.max.internal.Utils;
+
+/**
+ * The {@link DeviceRegistry} holds the device configurations and devices known
+ * to a MAX! Cube. Both are indexed by their integer RF address and by their
+ * normalized serial number, so the messages received from the Cube as well as
+ * the thing handlers can look them up without scanning all devices.
+ *
+ * The registry also keeps the rooms and a fingerprint of the M: and C: lines it
+ * has been updated from. Lines with a known fingerprint do not need to be parsed
+ * again, see {@link #isMetadataCurrent(String)} and {@link #isConfigurationCurrent(String)}.
+ *
+ * Lookups may be done from any thread.
+ */
+public final class DeviceRegistry {
+
+	private final Map<Integer, DeviceConfiguration> configurationsByRFAddress = new ConcurrentHashMap<Integer, DeviceConfiguration>();
+	private final Map<String, DeviceConfiguration> configurationsBySerialNumber = new ConcurrentHashMap<String, DeviceConfiguration>();
+
+	private final Map<Integer, Device> devicesByRFAddress = new ConcurrentHashMap<Integer, Device>();
+	private final Map<String, Device> devicesBySerialNumber = new ConcurrentHashMap<String, Device>();
+
+	private final Map<Integer, RoomInformation> rooms = new ConcurrentHashMap<Integer, RoomInformation>();
+
+	private final Map<Integer, Long> configurationFingerprints = new ConcurrentHashMap<Integer, Long>();
+	private volatile long metadataFingerprint = 0;
+
+	private final AtomicBoolean modified = new AtomicBoolean(false);
+
+	/**
+	 * Normalizes a serial number to be used as key.
+	 *
+	 * @param serialNumber
+	 *            the serial number
+	 * @return the upper case serial number without surrounding whitespace
+	 */
+	public static String normalizeSerialNumber(String serialNumber) {
+		return serialNumber == null ? "" : serialNumber.trim().toUpperCase(Locale.ENGLISH);
+	}
+
+	/**
+	 * Computes the fingerprint of a raw M: or C: line.
+	 *
+	 * @param raw
+	 *            the raw line
+	 * @return the fingerprint
+	 */
+	public static long fingerprint(String raw) {
+		return ((long) raw.length() << 32) | (raw.hashCode() & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * @param raw
+	 *            a raw M: line
+	 * @return true if the registry has already been updated from this line
+	 */
+	public boolean isMetadataCurrent(String raw) {
+		return metadataFingerprint != 0 && metadataFingerprint == fingerprint(raw);
+	}
+
+	/**
+	 * @param raw
+	 *            a raw C: line
+	 * @return true if the registry has already been updated from this line
+	 */
+	public boolean isConfigurationCurrent(String raw) {
+		int separator = raw.indexOf(Message.DELIMETER);
+		if (separator < 2) {
+			return false;
+		}
+		int rfAddress = Utils.rfAddressFromHex(raw.substring(2, separator));
+		Long fingerprint = configurationFingerprints.get(rfAddress);
+		return fingerprint != null && fingerprint == fingerprint(raw) && configurationsByRFAddress.containsKey(rfAddress);
+	}
+
+	/**
+	 * Updates the rooms and the device configurations from a M message.
+	 *
+	 * @param message
+	 *            the M message
+	 */
+	public synchronized void updateMetadata(M_Message message) {
+		if (message.rooms != null) {
+			for (RoomInformation room : message.rooms) {
+				putRoom(room);
+			}
+		}
+		if (message.devices != null) {
+			for (DeviceInformation di : message.devices) {
+				DeviceConfiguration c = DeviceConfiguration.create(di);
+				c.setRoomId(di.getRoomId());
+				putConfiguration(c);
+			}
+		}
+		metadataFingerprint = fingerprint(message.getRaw());
+		modified.set(true);
+	}
+
+	long getMetadataFingerprint() {
+		return metadataFingerprint;
+	}
+
+	void setMetadataFingerprint(long metadataFingerprint) {
+		this.metadataFingerprint = metadataFingerprint;
+	}
+
+	long getConfigurationFingerprint(int rfAddress) {
+		Long fingerprint = configurationFingerprints.get(rfAddress);
+		return fingerprint == null ? 0 : fingerprint;
+	}
+
+	void setConfigurationFingerprint(int rfAddress, long fingerprint) {
+		configurationFingerprints.put(rfAddress, fingerprint);
+	}
+
+	/**
+	 * Adds a room or replaces the room at the same position.
+	 *
+	 * @param room
+	 *            the room
+	 */
+	public void putRoom(RoomInformation room) {
+		rooms.put(room.getPosition(), room);
+		modified.set(true);
+	}
+
+	public RoomInformation getRoom(int position) {
+		return rooms.get(position);
+	}
+
+	public Collection<RoomInformation> getRooms() {
+		return Collections.unmodifiableCollection(rooms.values());
+	}
+
+	/**
+	 * @return true if rooms or configurations have changed since the last call
+	 */
+	public boolean resetModified() {
+		return modified.getAndSet(false);
+	}
+
+	/**
+	 * Adds the configuration of a device or replaces the configuration with
+	 * the same serial number.
+	 *
+	 * @param configuration
+	 *            the device configuration
+	 */
+	public synchronized void putConfiguration(DeviceConfiguration configuration) {
+		String serialNumber = normalizeSerialNumber(configuration.getSerialNumber());
+		DeviceConfiguration previous = configurationsBySerialNumber.put(serialNumber, configuration);
+		if (previous != null && previous != configuration) {
+			configurationsByRFAddress.remove(previous.getRFAddressValue());
+		}
+		if (configuration.getRFAddressValue() >= 0) {
+			configurationsByRFAddress.put(configuration.getRFAddressValue(), configuration);
+		}
+		modified.set(true);
+	}
+
+	/**
+	 * Updates the configuration of a device from a C message, adding a new
+	 * configuration if the device is not known yet.
+	 *
+	 * @param message
+	 *            the C message
+	 * @return the updated configuration
+	 */
+	public synchronized DeviceConfiguration updateConfiguration(C_Message message) {
+		DeviceConfiguration configuration = getConfiguration(message.getSerialNumber());
+		if (configuration == null) {
+			configuration = DeviceConfiguration.create(message);
+		} else {
+			configurationsByRFAddress.remove(configuration.getRFAddressValue());
+			configuration.setValues(message);
+		}
+		putConfiguration(configuration);
+		if (configuration.getRFAddressValue() >= 0) {
+			configurationFingerprints.put(configuration.getRFAddressValue(), fingerprint(message.getRaw()));
+		}
+		return configuration;
+	}
+
+	public DeviceConfiguration getConfiguration(int rfAddress) {
+		return configurationsByRFAddress.get(rfAddress);
+	}
+
+	public DeviceConfiguration getConfiguration(String serialNumber) {
+		return configurationsBySerialNumber.get(normalizeSerialNumber(serialNumber));
+	}
+
+	public Collection<DeviceConfiguration> getConfigurations() {
+		return Collections.unmodifiableCollection(configurationsBySerialNumber.values());
+	}
+
+	/**
+	 * Adds a device, replacing the device with the same serial number.
+	 *
+	 * @param device
+	 *            the device
+	 */
+	public synchronized void putDevice(Device device) {
+		Device previous = devicesBySerialNumber.put(normalizeSerialNumber(device.getSerialNumber()), device);
+		if (previous != null && previous != device) {
+			devicesByRFAddress.remove(previous.getRFAddressValue());
+		}
+		if (device.getRFAddressValue() >= 0) {
+			devicesByRFAddress.put(device.getRFAddressValue(), device);
+		}
+	}
+
+	public Device getDevice(int rfAddress) {
+		return devicesByRFAddress.get(rfAddress);
+	}
+
+	public Device getDevice(String serialNumber) {
+		return devicesBySerialNumber.get(normalizeSerialNumber(serialNumber));
+	}
+
+	public Collection<Device> getDevices() {
+		return Collections.unmodifiableCollection(devicesBySerialNumber.values());
+	}
+
+	public int getDeviceCount() {
+		return devicesBySerialNumber.size();
+	}
+}
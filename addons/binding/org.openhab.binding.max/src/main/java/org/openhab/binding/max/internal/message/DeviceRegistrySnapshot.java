@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2014 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.max.internal.message;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The {@link DeviceRegistrySnapshot} stores the rooms and device configurations of a
+ * {@link DeviceRegistry} in a compact binary file, together with the fingerprints of the
+ * M: and C: lines they have been decoded from.
+ *
+ * Reading the snapshot at startup makes the devices known before the MAX! Cube has been
+ * reached. Afterwards only the M: and C: lines that differ from the snapshot are parsed.
+ */
+public final class DeviceRegistrySnapshot {
+
+	private static final int MAGIC = 0x4D415853; // "MAXS"
+	private static final int VERSION = 1;
+
+	private DeviceRegistrySnapshot() {
+	}
+
+	/**
+	 * Writes the rooms and device configurations of a registry to a file. The file is
+	 * replaced only after the snapshot has been written completely.
+	 *
+	 * @param registry
+	 *            the registry
+	 * @param file
+	 *            the snapshot file
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public static void write(DeviceRegistry registry, File file) throws IOException {
+		File directory = file.getAbsoluteFile().getParentFile();
+		if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create directory " + directory);
+		}
+		File tempFile = new File(file.getPath() + ".tmp");
+
+		Collection<RoomInformation> rooms = new ArrayList<RoomInformation>(registry.getRooms());
+		Collection<DeviceConfiguration> configurations = new ArrayList<DeviceConfiguration>(registry.getConfigurations());
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(registry.getMetadataFingerprint());
+			out.writeInt(rooms.size());
+			for (RoomInformation room : rooms) {
+				out.writeInt(room.getPosition());
+				writeString(out, room.getName());
+				writeString(out, room.getRFAddress());
+			}
+			out.writeInt(configurations.size());
+			for (DeviceConfiguration c : configurations) {
+				writeString(out, c.getRFAddress());
+				out.writeInt(c.getDeviceType() == null ? DeviceType.Invalid.getValue() : c.getDeviceType().getValue());
+				writeString(out, c.getSerialNumber());
+				writeString(out, c.getName());
+				out.writeInt(c.getRoomId());
+				out.writeLong(registry.getConfigurationFingerprint(c.getRFAddressValue()));
+			}
+		} finally {
+			out.close();
+		}
+
+		if (file.exists() && !file.delete() || !tempFile.renameTo(file)) {
+			throw new IOException("Cannot replace " + file);
+		}
+	}
+
+	/**
+	 * Reads the rooms and device configurations from a file into a registry.
+	 *
+	 * @param file
+	 *            the snapshot file
+	 * @param registry
+	 *            the registry
+	 * @return the device configurations read, an empty list if there is no snapshot
+	 * @throws IOException
+	 *             if the file cannot be read or is no valid snapshot
+	 */
+	public static List<DeviceConfiguration> read(File file, DeviceRegistry registry) throws IOException {
+		List<DeviceConfiguration> configurations = new ArrayList<DeviceConfiguration>();
+		if (!file.isFile()) {
+			return configurations;
+		}
+
+		List<RoomInformation> rooms = new ArrayList<RoomInformation>();
+		List<Long> fingerprints = new ArrayList<Long>();
+		long metadataFingerprint;
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Unsupported snapshot " + file);
+			}
+			metadataFingerprint = in.readLong();
+			int roomCount = in.readInt();
+			for (int i = 0; i < roomCount; i++) {
+				int position = in.readInt();
+				String name = readString(in);
+				String rfAddress = readString(in);
+				rooms.add(new RoomInformation(position, name, rfAddress));
+			}
+			int configurationCount = in.readInt();
+			for (int i = 0; i < configurationCount; i++) {
+				String rfAddress = readString(in);
+				DeviceType deviceType = DeviceType.create(in.readInt());
+				String serialNumber = readString(in);
+				String name = readString(in);
+				int roomId = in.readInt();
+				fingerprints.add(in.readLong());
+				configurations.add(DeviceConfiguration.create(rfAddress, deviceType, serialNumber, name, roomId));
+			}
+		} finally {
+			in.close();
+		}
+
+		// only update the registry once the complete snapshot has been read
+		for (RoomInformation room : rooms) {
+			registry.putRoom(room);
+		}
+		for (int i = 0; i < configurations.size(); i++) {
+			DeviceConfiguration c = configurations.get(i);
+			registry.putConfiguration(c);
+			if (c.getRFAddressValue() >= 0 && fingerprints.get(i) != 0) {
+				registry.setConfigurationFingerprint(c.getRFAddressValue(), fingerprints.get(i));
+			}
+		}
+		registry.setMetadataFingerprint(metadataFingerprint);
+		registry.resetModified();
+		return configurations;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+}
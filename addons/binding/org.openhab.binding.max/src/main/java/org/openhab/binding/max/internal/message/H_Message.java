@@ -28,7 +28,7 @@ import com.google.common.base.Strings;
 public final class H_Message extends Message {
 	
 	private Calendar cal = Calendar.getInstance();
-	private Map<String, Object> properties = new HashMap<>();
+	private Map<String, Object> properties = null;
 
 	
 	private String rawSerialNumber = null;
@@ -65,15 +65,6 @@ public final class H_Message extends Message {
 		
 		rawCubeTimeState  = tokens[9];
 		rawNTPCounter  = Integer.toString(Utils.fromHex(tokens[10]) ) ;
-		properties.put("Serial number", rawSerialNumber);
-		properties.put("RF address (HEX)", rawRfHexAddress);
-		properties.put("Firmware version", rawFirmwareVersion);
-		properties.put("Connection ID", rawConnectionId);
-		properties.put("Unknown", rawUnknownfield4);
-		properties.put("Duty Cycle", rawDutyCycle);
-		properties.put("FreeMemorySlots", rawFreeMemorySlots);
-		properties.put("CubeTimeState", rawCubeTimeState);
-		properties.put("NTPCounter", rawNTPCounter);
 	}
 
 	private final void setDateTime(String hexDate, String hexTime) {
@@ -93,6 +84,18 @@ public final class H_Message extends Message {
 		logger.trace("=== H_Message === ");
 		logger.trace("\tRAW:            : {}", this.getPayload());
 		logger.trace("\tReading Time    : {}", cal.getTime());
+		if (properties == null) {
+			properties = new HashMap<>();
+			properties.put("Serial number", rawSerialNumber);
+			properties.put("RF address (HEX)", rawRfHexAddress);
+			properties.put("Firmware version", rawFirmwareVersion);
+			properties.put("Connection ID", rawConnectionId);
+			properties.put("Unknown", rawUnknownfield4);
+			properties.put("Duty Cycle", rawDutyCycle);
+			properties.put("FreeMemorySlots", rawFreeMemorySlots);
+			properties.put("CubeTimeState", rawCubeTimeState);
+			properties.put("NTPCounter", rawNTPCounter);
+		}
 		for(String key: properties.keySet()){
     		logger.trace("\t{}:{}{}", key , Strings.repeat(" ",25 - key.length() ), properties.get(key));
         }
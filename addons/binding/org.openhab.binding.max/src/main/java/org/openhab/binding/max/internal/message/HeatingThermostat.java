@@ -13,6 +13,7 @@ import java.util.Date;
 import org.eclipse.smarthome.core.library.types.DecimalType;
 import org.eclipse.smarthome.core.library.types.StringType;
 import org.eclipse.smarthome.core.types.State;
+import org.openhab.binding.max.internal.Utils;
 
 /**
  * MAX!Cube heating thermostat.
@@ -35,6 +36,8 @@ public class HeatingThermostat extends Device {
 
 	/** Date setpoint until the termperature setpoint is valid */
 	private Date dateSetpoint;
+	private int dateSetpointRaw = -1;
+	private int timeSetpointRaw = -1;
 
 	/** Device type for this thermostat **/
 	private DeviceType deviceType = DeviceType.HeatingThermostat;
@@ -95,10 +98,31 @@ public class HeatingThermostat extends Device {
 		return new DecimalType(this.valvePosition);
 	}
 
+	/**
+	 * @return the valve position in percent
+	 */
+	public int getValvePositionValue() {
+		return valvePosition;
+	}
+
 	public void setDateSetpoint(Date date) {
 		this.dateSetpoint = date;
 	}
 
+	/**
+	 * Sets the date setpoint from the raw values provided by the L message.
+	 * The date is only resolved if the raw values have changed.
+	 * @param date the raw date value
+	 * @param time the raw time value
+	 */
+	void setDateSetpoint(int date, int time) {
+		if (date != dateSetpointRaw || time != timeSetpointRaw || dateSetpoint == null) {
+			this.dateSetpoint = Utils.resolveDateTime(date, time);
+			this.dateSetpointRaw = date;
+			this.timeSetpointRaw = time;
+		}
+	}
+
 	public Date getDateSetpoint() {
 		return dateSetpoint;
 	}
@@ -123,6 +147,13 @@ public class HeatingThermostat extends Device {
 		return new DecimalType(this.temperatureActual);
 	}
 
+	/**
+	 * @return the measured temperature in °C, 0 if no actual is measured
+	 */
+	public double getTemperatureActualValue() {
+		return temperatureActual;
+	}
+
 	/**
 	 * Sets the setpoint temperature for this thermostat. 
 	 * @param value the setpoint temperature raw value as provided by the L message
@@ -142,4 +173,11 @@ public class HeatingThermostat extends Device {
 	public State getTemperatureSetpoint() {
 		return new DecimalType(this.temperatureSetpoint);
 	}
+
+	/**
+	 * @return the setpoint temperature in °C
+	 */
+	public double getTemperatureSetpointValue() {
+		return temperatureSetpoint;
+	}
 }
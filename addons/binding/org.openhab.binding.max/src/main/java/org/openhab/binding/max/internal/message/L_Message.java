@@ -12,10 +12,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
-import org.openhab.binding.max.internal.Utils;
 import org.openhab.binding.max.internal.message.MaxTokenizer;
 import org.apache.commons.net.util.Base64;
+import org.openhab.binding.max.internal.Utils;
 import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 
 /**
@@ -28,6 +29,8 @@ import org.slf4j.Logger;
  */
 public final class L_Message extends Message {
 
+	private static final Logger logger = LoggerFactory.getLogger(L_Message.class);
+
 	public L_Message(String raw) {
 		super(raw);
 	}
@@ -51,38 +54,51 @@ public final class L_Message extends Message {
 		return devices;
 	}
 	
-	public Collection<? extends Device> updateDevices(List<Device> devices, List<DeviceConfiguration> configurations) {
-
-		byte[] decodedRawMessage = Base64.decodeBase64(getPayload().getBytes());
-
-		MaxTokenizer tokenizer = new MaxTokenizer(decodedRawMessage);
+	/**
+	 * Updates the devices with the real time information of this message. The payload
+	 * is decoded into the buffer of the given tokenizer and the devices are updated directly
+	 * from that buffer, so the tokenizer should be kept and reused for subsequent messages.
+	 * Devices not known yet are created from their configuration and added to the registry.
+	 * Devices whose record is unchanged since the last message are skipped, but are
+	 * marked as seen like all devices listed in the message.
+	 * 
+	 * @param registry
+	 *            the registry holding the known devices and configurations
+	 * @param tokenizer
+	 *            the reusable tokenizer
+	 * @param changedDevices
+	 *            the new devices and the devices whose record has changed are added to this collection,
+	 *            which should be a set if a device may not be added twice
+	 */
+	public void updateDevices(DeviceRegistry registry, MaxTokenizer tokenizer, Collection<Device> changedDevices) {
+
+		tokenizer.decode(getRaw(), 2);
+		byte[] buffer = tokenizer.getBuffer();
+		long now = System.currentTimeMillis();
+
+		while (tokenizer.nextToken()) {
+			int rfAddress = tokenizer.getTokenRFAddress();
+			if (rfAddress < 0) {
+				continue;
+			}
 
-		while (tokenizer.hasMoreElements()) {
-			byte[] token = tokenizer.nextElement();
-			String rfAddress = Utils.toHex(token[0] & 0xFF, token[1] & 0xFF, token[2] & 0xFF);
-			//logger.debug("token: "+token+" rfaddress: "+rfAddress);
-			
-			Device foundDevice = null;
-			for (Device device : devices) {
-				//logger.debug(device.getRFAddress().toUpperCase()+ " vs "+rfAddress);
-				if (device.getRFAddress().toUpperCase().equals(rfAddress)) {
-					//logger.debug("Updating device..."+rfAddress);
-					foundDevice = device;
+			Device device = registry.getDevice(rfAddress);
+			if (device == null) {
+				DeviceConfiguration configuration = registry.getConfiguration(rfAddress);
+				if (configuration == null) {
+					logger.warn("Can't create device from received message, no configuration for RF address {}.",
+							Utils.toHex(rfAddress >> 16, (rfAddress >> 8) & 0xFF, rfAddress & 0xFF));
+					continue;
 				}
+				device = Device.create(configuration);
+				registry.putDevice(device);
 			}
-			if(foundDevice!= null) {
-				foundDevice = Device.update(token, configurations, foundDevice);
-				//devices.remove(token);
-				//devices.add(foundDevice);
-			}else{
-				Device tempDevice = Device.create(token, configurations);
-				if (tempDevice != null) {
-					devices.add(tempDevice);
-				}
+			device.setLastSeen(now);
+			if (device.updateRecord(buffer, tokenizer.getTokenOffset(), tokenizer.getTokenLength())) {
+				Device.update(buffer, tokenizer.getTokenOffset(), tokenizer.getTokenLength(), null, device);
+				changedDevices.add(device);
 			}
 		}
-
-		return devices;
 	}
 	
 	@Override
@@ -28,7 +28,7 @@ public final class M_Message extends Message {
 	public ArrayList<RoomInformation> rooms;
 	public ArrayList<DeviceInformation> devices;
 	private Boolean hasConfiguration ;
-	Logger logger = LoggerFactory.getLogger(MaxBinding.class);
+	private static final Logger logger = LoggerFactory.getLogger(MaxBinding.class);
 	
 
 	public M_Message(String raw) {
@@ -41,16 +41,18 @@ public final class M_Message extends Message {
 			byte[] bytes = Base64.decodeBase64(tokens[2].getBytes());
 			
 			hasConfiguration = true;
-			logger.trace("*** M_Message trace**** ");
-			logger.trace ("\tMagic? (expect 86) : {}", (int) bytes[0]);
-			logger.trace ("\tVersion? (expect 2): {}", (int) bytes[1]);
-			logger.trace ("\t#defined rooms in M: {}", (int) bytes[2]);
+			if (logger.isTraceEnabled()) {
+				logger.trace("*** M_Message trace**** ");
+				logger.trace ("\tMagic? (expect 86) : {}", (int) bytes[0]);
+				logger.trace ("\tVersion? (expect 2): {}", (int) bytes[1]);
+				logger.trace ("\t#defined rooms in M: {}", (int) bytes[2]);
+			}
 			
 			
 			rooms = new ArrayList<RoomInformation>();
 			devices = new ArrayList<DeviceInformation>();
 
-			int roomCount = bytes[2];
+			int roomCount = bytes[2] & 0xff;
 
 			int byteOffset = 3; // start of rooms
 
@@ -58,7 +60,7 @@ public final class M_Message extends Message {
 
 			for (int i = 0; i < roomCount; i++) {
 
-				int position = bytes[byteOffset++];
+				int position = bytes[byteOffset++] & 0xff;
 				String name = "";
 
 				int nameLength = (int) bytes[byteOffset++] & 0xff; 
@@ -74,7 +76,7 @@ public final class M_Message extends Message {
 
 			/* process devices */
 
-			int deviceCount = bytes[byteOffset++];
+			int deviceCount = bytes[byteOffset++] & 0xff;
 
 			for (int deviceId = 0; deviceId < deviceCount; deviceId++) {
 				DeviceType deviceType = DeviceType.create(bytes[byteOffset++]);
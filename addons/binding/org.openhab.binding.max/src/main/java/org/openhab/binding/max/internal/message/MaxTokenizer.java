@@ -8,25 +8,51 @@
  */
 package org.openhab.binding.max.internal.message;
 
+import java.nio.ByteBuffer;
 import java.util.Enumeration;
 
 /**
-* The MaxTokenizer parses a L message into the MAX!Cube devices encoded within. The L message contains 
-* real time information for multiple devices. Each device starts with the length n bytes. 
-* The MaxTokenzier starts with the first device and chops off one device after another from the byte stream. 
-* 
-* The tokens returned consist of the payload solely, and do not contain the first byte holding the 
+* The MaxTokenizer parses a L message into the MAX!Cube devices encoded within. The L message contains
+* real time information for multiple devices. Each device starts with the length n bytes.
+* The MaxTokenzier starts with the first device and chops off one device after another from the byte stream.
+*
+* The tokens returned consist of the payload solely, and do not contain the first byte holding the
 * tokens length.
-* 
+*
+* Besides the enumeration of tokens as byte arrays, a MaxTokenizer can be reused for
+* multiple L messages. It then decodes the Base64 payload into a buffer which is kept
+* between the messages, and the tokens are accessed by their offset and length within
+* this buffer, see {@link #decode(String, int)} and {@link #nextToken()}.
+*
 * @author Andreas Heil (info@aheil.de)
 * @since 1.4.0
 */
 public final class MaxTokenizer implements Enumeration<byte[]> {
 
+	private static final int[] BASE64_VALUES = new int[128];
+
+	static {
+		for (int i = 0; i < BASE64_VALUES.length; i++) {
+			BASE64_VALUES[i] = -1;
+		}
+		String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+		for (int i = 0; i < alphabet.length(); i++) {
+			BASE64_VALUES[alphabet.charAt(i)] = i;
+		}
+	}
+
 	private int offset = 0;
-	
+
 	private byte[] decodedRawMessage = null;
-	
+
+	private int length = 0;
+
+	private ByteBuffer buffer = null;
+
+	private int tokenOffset = 0;
+
+	private int tokenLength = 0;
+
 	/**
 	 * Creates a new MaxTokenizer.
 	 * @param decodedRawMessage
@@ -34,14 +60,67 @@ public final class MaxTokenizer implements Enumeration<byte[]> {
 	 */
 	public MaxTokenizer(byte[] decodedRawMessage) {
 		this.decodedRawMessage = decodedRawMessage;
+		this.length = decodedRawMessage.length;
 	}
-	
+
+	/**
+	 * Creates a new reusable MaxTokenizer, see {@link #decode(String, int)}.
+	 */
+	public MaxTokenizer() {
+		this.buffer = ByteBuffer.allocate(512);
+		this.decodedRawMessage = buffer.array();
+	}
+
+	/**
+	 * Decodes the Base64 encoded payload of a L message into the buffer of this tokenizer
+	 * and resets the tokenizer to the first token. The buffer is only reallocated if it is
+	 * too small for the message.
+	 *
+	 * @param raw
+	 * 			the raw message
+	 * @param start
+	 * 			the index of the Base64 encoded payload within the raw message
+	 */
+	public void decode(String raw, int start) {
+		int maxLength = (raw.length() - start) * 3 / 4;
+		if (buffer == null || buffer.capacity() < maxLength) {
+			buffer = ByteBuffer.allocate(Math.max(maxLength, 512));
+		}
+		buffer.clear();
+
+		int bits = 0;
+		int bitCount = 0;
+		for (int i = start; i < raw.length(); i++) {
+			char c = raw.charAt(i);
+			if (c == '=') {
+				break;
+			}
+			int value = c < BASE64_VALUES.length ? BASE64_VALUES[c] : -1;
+			if (value < 0) {
+				continue;
+			}
+			bits = (bits << 6) | value;
+			bitCount += 6;
+			if (bitCount >= 8) {
+				bitCount -= 8;
+				buffer.put((byte) (bits >> bitCount));
+			}
+		}
+		buffer.flip();
+
+		decodedRawMessage = buffer.array();
+		length = buffer.limit();
+		offset = 0;
+		tokenOffset = 0;
+		tokenLength = 0;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public boolean hasMoreElements() {
-		return offset < decodedRawMessage.length;
+		return offset < length;
 	}
 
 	/**
@@ -50,14 +129,67 @@ public final class MaxTokenizer implements Enumeration<byte[]> {
 	@Override
 	public byte[] nextElement() {
 		byte length = decodedRawMessage[offset++];
-		
+
 		// make sure to get the correct length in case > 127
-		byte[] token = new byte[length & 0xFF]; 
-		
+		byte[] token = new byte[length & 0xFF];
+
 		for (int i = 0; i < (length & 0xFF); i++) {
 			token[i] = decodedRawMessage[offset++];
 		}
-		
+
 		return token;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Advances to the next token without copying it. The token can be accessed with
+	 * {@link #getBuffer()}, {@link #getTokenOffset()} and {@link #getTokenLength()}.
+	 *
+	 * @return false if there are no more complete tokens
+	 */
+	public boolean nextToken() {
+		if (offset >= length) {
+			return false;
+		}
+		int tokenLength = decodedRawMessage[offset] & 0xFF;
+		if (offset + 1 + tokenLength > length) {
+			offset = length;
+			return false;
+		}
+		this.tokenOffset = offset + 1;
+		this.tokenLength = tokenLength;
+		offset += tokenLength + 1;
+		return true;
+	}
+
+	/**
+	 * @return the array holding the decoded message, valid until the next call of {@link #decode(String, int)}
+	 */
+	public byte[] getBuffer() {
+		return decodedRawMessage;
+	}
+
+	/**
+	 * @return the offset of the current token within {@link #getBuffer()}
+	 */
+	public int getTokenOffset() {
+		return tokenOffset;
+	}
+
+	/**
+	 * @return the length of the current token
+	 */
+	public int getTokenLength() {
+		return tokenLength;
+	}
+
+	/**
+	 * @return the RF address of the device of the current token as integer, -1 if the token is too short
+	 */
+	public int getTokenRFAddress() {
+		if (tokenLength < 3) {
+			return -1;
+		}
+		return ((decodedRawMessage[tokenOffset] & 0xFF) << 16) | ((decodedRawMessage[tokenOffset + 1] & 0xFF) << 8)
+				| (decodedRawMessage[tokenOffset + 2] & 0xFF);
+	}
+}
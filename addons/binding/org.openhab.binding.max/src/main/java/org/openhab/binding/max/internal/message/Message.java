@@ -29,6 +29,10 @@ public abstract class Message {
 	public abstract void debug(Logger logger);
 	public abstract MessageType getType();
 	
+	protected final String getRaw() {
+		return raw;
+	}
+
 	protected final String getPayload() {
 		return raw.substring(2, raw.length());
 	}
@@ -20,7 +20,14 @@ import org.openhab.binding.max.internal.Utils;
  */
 public class S_Command {
 
-	private String baseString = "000440000000";
+	// the 04 flag addresses the command to the group of the room ID, so all
+	// thermostats of the room receive it with a single transmission
+	private static final String GROUP_BASE_STRING = "000440000000";
+
+	// addresses the command to the device with the RF address only
+	private static final String DEVICE_BASE_STRING = "000040000000";
+
+	private boolean groupCommand = true;
 	private boolean[] bits = null;
 
 	private String rfAddress = null;
@@ -99,6 +106,18 @@ public class S_Command {
 	}
 
 
+	/**
+	 * Selects whether the command is sent to all devices of the room, which is the
+	 * default, or to the single device with the RF address only.
+	 * 
+	 * @param groupCommand
+	 *            true to address the room group of the RF address, false to
+	 *            address the device only
+	 */
+	public void setGroupCommand(boolean groupCommand) {
+		this.groupCommand = groupCommand;
+	}
+
 	/**
 	 * Returns the Base64 encoded command string to be sent via the MAX!
 	 * protocol.
@@ -107,6 +126,7 @@ public class S_Command {
 	 */
 	public String getCommandString() {
 
+		String baseString = groupCommand ? GROUP_BASE_STRING : DEVICE_BASE_STRING;
 		String commandString = baseString + rfAddress + Utils.toHex(roomId) + Utils.toHex(bits);
 
 		String encodedString = Base64.encodeBase64String(Utils.hexStringToByteArray(commandString));
@@ -12,7 +12,8 @@ package org.openhab.binding.max.internal.message;
 import org.slf4j.Logger;
 
 /**
-* The S message contains information about Command execution results (guessed) 
+* The S message contains information about Command execution results: the used duty cycle,
+* whether the command has been discarded and the number of free memory slots. 
 * 
 * @author Andreas Heil (info@aheil.de)
 * @author Bernd Michael Helm (bernd.helm at helmundwalter.de)
@@ -20,20 +21,56 @@ import org.slf4j.Logger;
 * @since 1.6.0
 */
 public final class S_Message extends Message {
+
+	private int dutyCycle = -1;
+	private boolean commandDiscarded = false;
+	private int freeMemorySlots = -1;
+
 	public S_Message(String raw) {
 		super(raw);
 
 		String[] tokens = this.getPayload().split(Message.DELIMETER);
 
-		/**
-		 * TODO: Implement S Message
-		 */
+		if (tokens.length >= 3) {
+			try {
+				dutyCycle = Integer.parseInt(tokens[0].trim(), 16);
+				commandDiscarded = !tokens[1].trim().equals("0");
+				freeMemorySlots = Integer.parseInt(tokens[2].trim(), 16);
+			} catch (NumberFormatException e) {
+				dutyCycle = -1;
+				freeMemorySlots = -1;
+			}
+		}
+	}
+
+	/**
+	 * @return the used part of the duty cycle budget of the MAX!Cube in percent, -1 if unknown
+	 */
+	public int getDutyCycle() {
+		return dutyCycle;
+	}
+
+	/**
+	 * @return true if the MAX!Cube did not accept the command
+	 */
+	public boolean isCommandDiscarded() {
+		return commandDiscarded;
+	}
+
+	/**
+	 * @return the number of free command slots of the MAX!Cube, -1 if unknown
+	 */
+	public int getFreeMemorySlots() {
+		return freeMemorySlots;
 	}
 
 	@Override
 	public void debug(Logger logger) {
 		logger.debug("=== S_Message === ");
 		logger.debug("\tRAW : {}", this.getPayload());
+		logger.debug("\tDuty Cycle       : {}", dutyCycle);
+		logger.debug("\tCommand Discarded: {}", commandDiscarded);
+		logger.debug("\tFree Mem Slots   : {}", freeMemorySlots);
 	}
 
 	@Override
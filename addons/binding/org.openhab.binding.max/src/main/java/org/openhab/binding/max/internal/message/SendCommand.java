@@ -26,7 +26,12 @@ public final class SendCommand {
 	private ChannelUID channelUID;
 	private Command command;
 	private String serialNumber;
+	private int roomId = -1;
 	private String key;
+	private S_Message response;
+	private int retries = 0;
+	private final long queueTime = System.currentTimeMillis();
+	private long sendTime = 0;
 
 
 	public SendCommand(String serialNumber,ChannelUID channelUID,Command command) {
@@ -39,11 +44,28 @@ public final class SendCommand {
 	}
 
 	/**
-	 * Sets the key based on the serial and channel
+	 * Creates a command for all thermostats of a room, which is sent to the room
+	 * as a single group command.
+	 */
+	public SendCommand(int roomId,ChannelUID channelUID,Command command) {
+		commandId +=1;
+		id = commandId;
+		this.roomId = roomId;
+		this.channelUID=channelUID;
+		this.command=command;
+		setKey();
+	}
+
+	/**
+	 * Sets the key based on the serial or room and channel
 	 * This is can be used to find duplicated commands in the queue
 	 */
 	private  void setKey() {
-		key = serialNumber+"-"+channelUID.getId() ;
+		if (serialNumber == null && roomId >= 0) {
+			key = "room" + roomId + "-" + channelUID.getId();
+		} else {
+			key = serialNumber+"-"+channelUID.getId() ;
+		}
 	}
 
 	/**
@@ -112,6 +134,15 @@ public final class SendCommand {
 
 
 
+	/**
+	 * @return the room of a room command, -1 for a device command
+	 */
+	public int getRoomId() {
+		return serialNumber == null ? roomId : -1;
+	}
+
+
+
 	/**
 	 * @param device the device to set
 	 */
@@ -121,4 +152,70 @@ public final class SendCommand {
 	}
 
 
+
+	/**
+	 * @return the S message the MAX! Cube acknowledged this command with, 
+	 * null if not (yet) acknowledged
+	 */
+	public S_Message getResponse() {
+		return response;
+	}
+
+
+
+	/**
+	 * @param response the acknowledgement of the MAX! Cube
+	 */
+	public void setResponse(S_Message response) {
+		this.response = response;
+	}
+
+
+
+	/**
+	 * @return the time this command has been created to be queued
+	 */
+	public long getQueueTime() {
+		return queueTime;
+	}
+
+
+
+	/**
+	 * @return the time this command has last been handed to the connection, 0 if not sent yet
+	 */
+	public long getSendTime() {
+		return sendTime;
+	}
+
+
+
+	/**
+	 * @param sendTime the time this command is handed to the connection
+	 */
+	public void setSendTime(long sendTime) {
+		this.sendTime = sendTime;
+	}
+
+
+
+	/**
+	 * @return the number of times sending this command has been retried
+	 */
+	public int getRetries() {
+		return retries;
+	}
+
+
+
+	/**
+	 * Increments the number of retries and clears the previous response
+	 * @return the number of retries
+	 */
+	public int retry() {
+		response = null;
+		return ++retries;
+	}
+
+
 }
\ No newline at end of file
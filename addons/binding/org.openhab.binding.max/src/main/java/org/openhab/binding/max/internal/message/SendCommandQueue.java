@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2014 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.max.internal.message;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Queue of {@link SendCommand}s waiting to be sent to the MAX! Cube.
+ *
+ * The queue holds at most one command per device and channel (see {@link SendCommand#getKey()}).
+ * A new command for a device and channel with a queued command replaces the queued
+ * command, but keeps its position in the queue. Commands are only dropped if the queue
+ * holds the maximum number of different devices and channels.
+ */
+public final class SendCommandQueue {
+
+	private final int capacity;
+
+	private final Map<String, SendCommand> commands = new LinkedHashMap<String, SendCommand>();
+
+	private long queuedCount = 0;
+	private long coalescedCount = 0;
+	private long droppedCount = 0;
+
+	/**
+	 * @param capacity the maximum number of different devices and channels in the queue
+	 */
+	public SendCommandQueue(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Adds a command to the queue, replacing a queued command for the same device and channel.
+	 *
+	 * @param sendCommand the command
+	 * @return the replaced command, or the command itself if it has been dropped because the queue is full,
+	 * null if the command has been added
+	 */
+	public synchronized SendCommand offer(SendCommand sendCommand) {
+		SendCommand queued = commands.get(sendCommand.getKey());
+		if (queued != null) {
+			commands.put(sendCommand.getKey(), sendCommand);
+			coalescedCount++;
+			queuedCount++;
+			return queued;
+		}
+		if (commands.size() >= capacity) {
+			droppedCount++;
+			return sendCommand;
+		}
+		commands.put(sendCommand.getKey(), sendCommand);
+		queuedCount++;
+		return null;
+	}
+
+	/**
+	 * Adds a command that could not be sent to the queue again, unless a newer command for
+	 * the same device and channel has been queued in the meantime.
+	 *
+	 * @param sendCommand the command
+	 * @return true if the command has been queued again
+	 */
+	public synchronized boolean requeue(SendCommand sendCommand) {
+		if (commands.containsKey(sendCommand.getKey())) {
+			return false;
+		}
+		if (commands.size() >= capacity) {
+			droppedCount++;
+			return false;
+		}
+		commands.put(sendCommand.getKey(), sendCommand);
+		return true;
+	}
+
+	/**
+	 * @return the oldest command, or null if the queue is empty
+	 */
+	public synchronized SendCommand poll() {
+		Iterator<SendCommand> iterator = commands.values().iterator();
+		if (!iterator.hasNext()) {
+			return null;
+		}
+		SendCommand sendCommand = iterator.next();
+		iterator.remove();
+		return sendCommand;
+	}
+
+	/**
+	 * Removes up to the given number of commands in queue order.
+	 *
+	 * @param target the collection the commands are added to
+	 * @param maxCommands the maximum number of commands to remove
+	 * @return the number of commands removed
+	 */
+	public synchronized int drainTo(Collection<SendCommand> target, int maxCommands) {
+		int count = 0;
+		Iterator<SendCommand> iterator = commands.values().iterator();
+		while (count < maxCommands && iterator.hasNext()) {
+			target.add(iterator.next());
+			iterator.remove();
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of commands in the queue
+	 */
+	public synchronized int size() {
+		return commands.size();
+	}
+
+	/**
+	 * @return the number of commands added to the queue, including the coalesced commands
+	 */
+	public synchronized long getQueuedCount() {
+		return queuedCount;
+	}
+
+	/**
+	 * @return the number of commands that replaced a queued command
+	 */
+	public synchronized long getCoalescedCount() {
+		return coalescedCount;
+	}
+
+	/**
+	 * @return the number of commands dropped because the queue was full
+	 */
+	public synchronized long getDroppedCount() {
+		return droppedCount;
+	}
+}
@@ -20,6 +20,9 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import org.apache.commons.lang.StringUtils;
@@ -55,6 +58,7 @@ import org.openhab.binding.sonos.internal.SonosEntry;
 import org.openhab.binding.sonos.internal.SonosMetaData;
 import org.openhab.binding.sonos.internal.SonosXMLParser;
 import org.openhab.binding.sonos.internal.SonosZoneGroup;
+import org.openhab.binding.sonos.internal.SonosZoneGroupTopology;
 import org.openhab.binding.sonos.internal.SonosZonePlayerState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -93,6 +97,22 @@ UpnpIOParticipant, DiscoveryListener {
 	private Map<String, String> stateMap = Collections
 			.synchronizedMap(new HashMap<String, String>());
 
+	/**
+	 * The decoded DIDL-Lite metadata of the state variables, together with the
+	 * raw value they were decoded from.
+	 */
+	private Map<String, CachedMetaData> metaDataCache = new ConcurrentHashMap<String, CachedMetaData>();
+
+	private static class CachedMetaData {
+		final String xml;
+		final SonosMetaData metaData;
+
+		CachedMetaData(String xml, SonosMetaData metaData) {
+			this.xml = xml;
+			this.metaData = metaData;
+		}
+	}
+
 	private Runnable pollingRunnable = new Runnable() {
 
 		@Override
@@ -111,10 +131,30 @@ UpnpIOParticipant, DiscoveryListener {
 
 	private String opmlPartnerID;
 
+	private final SonosZoneGroupTopology zoneGroupTopology;
+
+	/**
+	 * The index of the zone groups of the last ZoneGroupState received
+	 */
+	private volatile SonosZoneGroupTopology.Snapshot zoneGroups = null;
+
+	/**
+	 * The handlers of all zone players of the binding by UDN
+	 */
+	private final Map<String, ZonePlayerHandler> zonePlayerHandlers;
+
+	private final ZonePlayerSnapshotEngine snapshotEngine;
+
 	public ZonePlayerHandler(Thing thing, UpnpIOService upnpIOService,
-			DiscoveryServiceRegistry discoveryServiceRegistry, String opmlPartnerID) {
+			DiscoveryServiceRegistry discoveryServiceRegistry, String opmlPartnerID,
+			SonosZoneGroupTopology zoneGroupTopology,
+			Map<String, ZonePlayerHandler> zonePlayerHandlers,
+			ZonePlayerSnapshotEngine snapshotEngine) {
 		super(thing);
 		this.opmlPartnerID = opmlPartnerID;
+		this.zoneGroupTopology = zoneGroupTopology;
+		this.zonePlayerHandlers = zonePlayerHandlers;
+		this.snapshotEngine = snapshotEngine;
 
 		logger.debug("Creating a ZonePlayerHandler for thing '{}'", getThing()
 				.getUID());
@@ -214,10 +254,11 @@ UpnpIOParticipant, DiscoveryListener {
 			snoozeAlarm(command);
 			break;
 		case SAVEALL:
-			saveAllPlayerState();
+			// wait for the snapshots, so a following announcement does not end up in them
+			awaitAllPlayerState(saveAllPlayerState(), "saved");
 			break;
 		case RESTOREALL:
-			restoreAllPlayerState();
+			awaitAllPlayerState(restoreAllPlayerState(), "restored");
 			break;
 		case SAVE:
 			saveState();
@@ -259,25 +300,31 @@ UpnpIOParticipant, DiscoveryListener {
 		}
 	}
 
-	private void restoreAllPlayerState() {
-		Collection<Thing> allThings = thingRegistry.getAll();
-		for (Thing aThing : allThings) {
-			if (aThing.getThingTypeUID().equals(
-					this.getThing().getThingTypeUID())) {
-				ZonePlayerHandler handler = (ZonePlayerHandler) aThing.getHandler();
-				handler.restoreState();
-			}
-		}
+	/**
+	 * Restore the state of all Sonos Zone players concurrently.
+	 * 
+	 * @return a future returning the number of players restored, done when all players are restored or timed out
+	 */
+	public Future<Integer> restoreAllPlayerState() {
+		return snapshotEngine.restoreAll(zonePlayerHandlers.values());
 	}
 
-	private void saveAllPlayerState() {
-		Collection<Thing> allThings = thingRegistry.getAll();
-		for (Thing aThing : allThings) {
-			if (aThing.getThingTypeUID().equals(
-					this.getThing().getThingTypeUID())) {
-				ZonePlayerHandler handler = (ZonePlayerHandler) aThing.getHandler();
-				handler.saveState();
-			}
+	/**
+	 * Save the state of all Sonos Zone players concurrently.
+	 * 
+	 * @return a future returning the number of players saved, done when all players are saved or timed out
+	 */
+	public Future<Integer> saveAllPlayerState() {
+		return snapshotEngine.saveAll(zonePlayerHandlers.values());
+	}
+
+	private void awaitAllPlayerState(Future<Integer> result, String action) {
+		try {
+			logger.debug("{} zone players {} their state", result.get(), action);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			logger.debug("Exception while waiting for the zone players : {}", e.getMessage());
 		}
 	}
 
@@ -287,6 +334,11 @@ UpnpIOParticipant, DiscoveryListener {
 				variable, value, service, this.getThing().getUID() });
 
 		this.stateMap.put(variable, value);
+		metaDataCache.remove(variable);
+
+		if (variable.equals("ZoneGroupState")) {
+			zoneGroups = value != null ? zoneGroupTopology.getSnapshot(value) : null;
+		}
 
 		// pre-process some variables, eg XML processing
 		if (service.equals("AVTransport") && variable.equals("LastChange")) {
@@ -561,20 +613,15 @@ UpnpIOParticipant, DiscoveryListener {
 
 	public String getCoordinator() {
 
-		if (stateMap.get("ZoneGroupState") != null) {
-
-			Collection<SonosZoneGroup> zoneGroups = SonosXMLParser
-					.getZoneGroupFromXML(stateMap.get("ZoneGroupState"));
-
-			for (SonosZoneGroup zg : zoneGroups) {
-				if (zg.getMembers().contains(
-						getThing().getConfiguration().get(UDN))) {
-					return zg.getCoordinator();
-				}
+		SonosZoneGroupTopology.Snapshot snapshot = zoneGroups;
+		if (snapshot != null) {
+			String coordinator = snapshot.getCoordinator(getUDN());
+			if (coordinator != null) {
+				return coordinator;
 			}
 		}
 
-		return (String) getThing().getConfiguration().get(UDN);
+		return getUDN();
 	}
 
 	public boolean isCoordinator() {
@@ -715,31 +762,36 @@ UpnpIOParticipant, DiscoveryListener {
 	}
 
 	public SonosMetaData getCurrentURIMetadata() {
-		if (stateMap.get("CurrentURIMetaData") != null) {
-			return SonosXMLParser.getMetaDataFromXML(stateMap
-					.get("CurrentURIMetaData"));
-		} else {
-			return null;
-		}
+		return getMetaData("CurrentURIMetaData");
 	}
 
 	public SonosMetaData getTrackMetadata() {
-		if (stateMap.get("CurrentTrackMetaData") != null) {
-			return SonosXMLParser.getMetaDataFromXML(stateMap
-					.get("CurrentTrackMetaData"));
-		} else {
-			return null;
-		}
+		return getMetaData("CurrentTrackMetaData");
 	}
 
 	public SonosMetaData getEnqueuedTransportURIMetaData() {
+		return getMetaData("EnqueuedTransportURIMetaData");
+	}
 
-		if (stateMap.get("EnqueuedTransportURIMetaData") != null) {
-			return SonosXMLParser.getMetaDataFromXML(stateMap
-					.get("EnqueuedTransportURIMetaData"));
-		} else {
+	/**
+	 * Returns the decoded metadata of a state variable. The metadata is only
+	 * parsed again when a new value has been received for the variable.
+	 * 
+	 * @param variable
+	 * @return the metadata, or null if no value has been received
+	 */
+	private SonosMetaData getMetaData(String variable) {
+		String xml = stateMap.get(variable);
+		if (xml == null) {
 			return null;
 		}
+		CachedMetaData cached = metaDataCache.get(variable);
+		// a value received while decoding replaces the raw string, so compare the instance
+		if (cached == null || cached.xml != xml) {
+			cached = new CachedMetaData(xml, SonosXMLParser.getMetaDataFromXML(xml));
+			metaDataCache.put(variable, cached);
+		}
+		return cached.metaData;
 	}
 
 	public String getMACAddress() {
@@ -873,7 +925,8 @@ UpnpIOParticipant, DiscoveryListener {
 
 		synchronized (this) {
 
-			savedState = new SonosZonePlayerState();
+			// only publish the state once complete, a restore must never see a partial state
+			SonosZonePlayerState state = new SonosZonePlayerState();
 			String currentURI = getCurrentURI();
 
 			if (currentURI != null) {
@@ -883,25 +936,25 @@ UpnpIOParticipant, DiscoveryListener {
 					SonosMetaData track = getTrackMetadata();
 					SonosMetaData current = getCurrentURIMetadata();
 					if (track != null) {
-						savedState.entry = new SonosEntry("",
+						state.entry = new SonosEntry("",
 								current.getTitle(), "", "",
 								track.getAlbumArtUri(), "",
 								current.getUpnpClass(), currentURI);
 					}
 				} else if (currentURI.contains("x-rincon:")) {
 					// we are a slave to some coordinator
-					savedState.entry = new SonosEntry("", "", "", "", "", "",
+					state.entry = new SonosEntry("", "", "", "", "", "",
 							"", currentURI);
 				} else if (currentURI.contains("x-rincon-stream:")) {
 					// we are streaming from the Line In connection
-					savedState.entry = new SonosEntry("", "", "", "", "", "",
+					state.entry = new SonosEntry("", "", "", "", "", "",
 							"", currentURI);
 				} else if (currentURI.contains("x-rincon-queue:")) {
 					// we are playing something that sits in the queue
 					SonosMetaData queued = getEnqueuedTransportURIMetaData();
 					if (queued != null) {
 
-						savedState.track = getCurrenTrackNr();
+						state.track = getCurrenTrackNr();
 
 						if (queued.getUpnpClass().contains(
 								"object.container.playlistContainer")) {
@@ -910,7 +963,7 @@ UpnpIOParticipant, DiscoveryListener {
 							for (SonosEntry someList : playLists) {
 								if (someList.getTitle().equals(
 										queued.getTitle())) {
-									savedState.entry = new SonosEntry(
+									state.entry = new SonosEntry(
 											someList.getId(),
 											someList.getTitle(),
 											someList.getParentId(), "", "", "",
@@ -948,7 +1001,7 @@ UpnpIOParticipant, DiscoveryListener {
 							for (SonosEntry someList : playLists) {
 								if (someList.getTitle().equals(
 										"openHAB-" + getUDN())) {
-									savedState.entry = new SonosEntry(
+									state.entry = new SonosEntry(
 											someList.getId(),
 											someList.getTitle(),
 											someList.getParentId(), "", "", "",
@@ -960,17 +1013,22 @@ UpnpIOParticipant, DiscoveryListener {
 
 						}
 					} else {
-						savedState.entry = new SonosEntry("", "", "", "", "",
+						state.entry = new SonosEntry("", "", "", "", "",
 								"", "", "x-rincon-queue:" + getUDN() + "#0");
 					}
 				}
 
-				savedState.transportState = getTransportState();
-				savedState.volume = getVolume();
-				savedState.relTime = getPosition();
+				state.transportState = getTransportState();
+				state.volume = getVolume();
+				state.relTime = getPosition();
 			} else {
-				savedState.entry = null;
+				state.entry = null;
 			}
+
+			savedState = state;
+		}
+		if (snapshotEngine != null) {
+			snapshotEngine.stateSaved(this);
 		}
 	}
 
@@ -1231,10 +1289,7 @@ UpnpIOParticipant, DiscoveryListener {
 
 			String remotePlayerName = command.toString();
 
-			Thing coordinatorThing = thingRegistry.getByUID(new ThingUID(
-					ZONEPLAYER_THING_TYPE_UID, getCoordinator()));
-			ZonePlayerHandler coordinatorHandler = (ZonePlayerHandler) coordinatorThing
-					.getHandler();
+			ZonePlayerHandler coordinatorHandler = getHandlerByName(getCoordinator());
 			ZonePlayerHandler remoteHandler = getHandlerByName(remotePlayerName);
 
 			// stop whatever is currently playing
@@ -1254,25 +1309,17 @@ UpnpIOParticipant, DiscoveryListener {
 
 	protected ZonePlayerHandler getHandlerByName(String remotePlayerName) {
 
+		ZonePlayerHandler handler = zonePlayerHandlers.get(remotePlayerName);
+		if (handler != null) {
+			return handler;
+		}
+
+		// the name can also be the id of a thing which does not use the UDN as id
 		if(thingRegistry!=null) {
 			Thing thing = thingRegistry.getByUID(new ThingUID(
 					ZONEPLAYER_THING_TYPE_UID, remotePlayerName));
-	
-			if (thing == null) {
-				Collection<Thing> allThings = thingRegistry.getAll();
-				for (Thing aThing : allThings) {
-					if (aThing.getThingTypeUID().equals(
-							this.getThing().getThingTypeUID())) {
-						if (aThing.getConfiguration().get(UDN)
-								.equals(remotePlayerName)) {
-							thing = aThing;
-							break;
-						}
-					}
-				}
-			}
 
-			if(thing != null) { 
+			if(thing != null && thing.getHandler() instanceof ZonePlayerHandler) { 
 				return (ZonePlayerHandler) thing.getHandler();
 			}
 		}
@@ -1509,11 +1556,10 @@ UpnpIOParticipant, DiscoveryListener {
 			// first remove this player from its own group if any
 			becomeStandAlonePlayer();
 
-			List<SonosZoneGroup> currentSonosZoneGroups = new ArrayList<SonosZoneGroup>();
-			for (SonosZoneGroup grp : SonosXMLParser
-					.getZoneGroupFromXML(stateMap.get("ZoneGroupState"))) {
-				currentSonosZoneGroups.add((SonosZoneGroup) grp.clone());
-			}
+			// the groups of the snapshot are not affected by the changes below
+			SonosZoneGroupTopology.Snapshot snapshot = zoneGroups;
+			List<SonosZoneGroup> currentSonosZoneGroups = snapshot != null ? snapshot
+					.getGroups() : new ArrayList<SonosZoneGroup>();
 
 			// add all other players to this new group
 			for (SonosZoneGroup group : currentSonosZoneGroups) {
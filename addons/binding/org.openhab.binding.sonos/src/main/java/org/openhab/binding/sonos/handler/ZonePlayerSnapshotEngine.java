@@ -0,0 +1,268 @@
+/**
+ * Copyright (c) 2014 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.sonos.handler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link ZonePlayerSnapshotEngine} saves and restores the state of several
+ * Zone Players at once. Each player is handled in its own thread, so the
+ * blocking calls to the players do not add up, and a player which does not
+ * answer in time does not hold up the others.
+ */
+public class ZonePlayerSnapshotEngine {
+
+	private Logger logger = LoggerFactory.getLogger(ZonePlayerSnapshotEngine.class);
+
+	/** the maximum number of players handled at the same time */
+	private static final int MAX_THREADS = 16;
+
+	/** the time in ms, from the request, within which a single player has to save or restore its state */
+	public static final long DEFAULT_PLAYER_TIMEOUT = 10000;
+
+	private final AtomicInteger threadCount = new AtomicInteger();
+
+	private final ThreadPoolExecutor executor;
+	private final ScheduledExecutorService timer;
+	private final long playerTimeout;
+
+	/**
+	 * The players which did not save their state in time. Their saved state
+	 * is incomplete or stale, so they are not restored until they saved
+	 * their state again, by any command.
+	 */
+	private final Set<ZonePlayerHandler> timedOut = Collections
+			.newSetFromMap(new ConcurrentHashMap<ZonePlayerHandler, Boolean>());
+
+	public ZonePlayerSnapshotEngine() {
+		this(DEFAULT_PLAYER_TIMEOUT);
+	}
+
+	/**
+	 * @param playerTimeout
+	 *            the time in ms a single player may take to save or restore its state
+	 */
+	public ZonePlayerSnapshotEngine(long playerTimeout) {
+		this.playerTimeout = playerTimeout;
+		ThreadFactory threadFactory = new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Sonos snapshot " + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), threadFactory);
+		executor.allowCoreThreadTimeOut(true);
+		timer = Executors.newSingleThreadScheduledExecutor(threadFactory);
+	}
+
+	/**
+	 * Saves the state of the players concurrently.
+	 *
+	 * @param players
+	 * @return a future which is done as soon as all players have saved their
+	 *         state or timed out, and returns the number of players which
+	 *         saved their state in time
+	 */
+	public Future<Integer> saveAll(Collection<ZonePlayerHandler> players) {
+		timedOut.removeAll(players);
+		return run(players, new Action() {
+			@Override
+			public void run(ZonePlayerHandler player) {
+				player.saveState();
+			}
+
+			@Override
+			public void timedOut(ZonePlayerHandler player) {
+				timedOut.add(player);
+			}
+
+			@Override
+			public String toString() {
+				return "save";
+			}
+		});
+	}
+
+	/**
+	 * Restores the state of the players concurrently. Players which did not
+	 * save their state in time are skipped.
+	 *
+	 * @param players
+	 * @return a future which is done as soon as all players have restored
+	 *         their state or timed out, and returns the number of players
+	 *         which restored their state in time
+	 */
+	public Future<Integer> restoreAll(Collection<ZonePlayerHandler> players) {
+		List<ZonePlayerHandler> targets = new ArrayList<ZonePlayerHandler>(players.size());
+		for (ZonePlayerHandler player : players) {
+			if (timedOut.contains(player)) {
+				logger.debug("Skipping the restore of zone player '{}', as it did not save its state in time",
+						player.getUDN());
+			} else {
+				targets.add(player);
+			}
+		}
+		return run(targets, new Action() {
+			@Override
+			public void run(ZonePlayerHandler player) {
+				player.restoreState();
+			}
+
+			@Override
+			public void timedOut(ZonePlayerHandler player) {
+			}
+
+			@Override
+			public String toString() {
+				return "restore";
+			}
+		});
+	}
+
+	/**
+	 * Called by a player once it has saved its state, so it is restored again.
+	 */
+	void stateSaved(ZonePlayerHandler player) {
+		timedOut.remove(player);
+	}
+
+	/**
+	 * Forgets a player whose handler has been removed.
+	 */
+	public void remove(ZonePlayerHandler player) {
+		timedOut.remove(player);
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+		timer.shutdownNow();
+	}
+
+	private interface Action {
+		void run(ZonePlayerHandler player);
+
+		void timedOut(ZonePlayerHandler player);
+	}
+
+	private Future<Integer> run(Collection<ZonePlayerHandler> players, final Action action) {
+		List<ZonePlayerHandler> targets = new ArrayList<ZonePlayerHandler>(players);
+		final Completion completion = new Completion(targets.size());
+
+		for (final ZonePlayerHandler player : targets) {
+			final AtomicBoolean finished = new AtomicBoolean(false);
+
+			final Future<?> task = executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					boolean succeeded = false;
+					try {
+						action.run(player);
+						succeeded = true;
+					} catch (Exception e) {
+						logger.warn("Could not {} the state of zone player '{}' : {}",
+								new Object[] { action, player.getUDN(), e.getMessage() });
+					} finally {
+						if (finished.compareAndSet(false, true)) {
+							completion.playerDone(succeeded);
+						}
+					}
+				}
+			});
+
+			timer.schedule(new Runnable() {
+				@Override
+				public void run() {
+					if (finished.compareAndSet(false, true)) {
+						logger.warn("Zone player '{}' did not {} its state within {} ms",
+								new Object[] { player.getUDN(), action, playerTimeout });
+						action.timedOut(player);
+						task.cancel(true);
+						completion.playerDone(false);
+					}
+				}
+			}, playerTimeout, TimeUnit.MILLISECONDS);
+		}
+
+		return completion;
+	}
+
+	/**
+	 * The {@link Completion} is done when every player has either finished or
+	 * timed out.
+	 */
+	private static class Completion implements Future<Integer> {
+
+		private final CountDownLatch remaining;
+		private final AtomicInteger succeeded = new AtomicInteger();
+
+		Completion(int players) {
+			remaining = new CountDownLatch(players);
+		}
+
+		void playerDone(boolean success) {
+			if (success) {
+				succeeded.incrementAndGet();
+			}
+			remaining.countDown();
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return false;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return false;
+		}
+
+		@Override
+		public boolean isDone() {
+			return remaining.getCount() == 0;
+		}
+
+		@Override
+		public Integer get() throws InterruptedException, ExecutionException {
+			remaining.await();
+			return succeeded.get();
+		}
+
+		@Override
+		public Integer get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+				TimeoutException {
+			if (!remaining.await(timeout, unit)) {
+				throw new TimeoutException();
+			}
+			return succeeded.get();
+		}
+	}
+
+}
@@ -10,9 +10,14 @@ package org.openhab.binding.sonos.internal;
 import static org.openhab.binding.sonos.SonosBindingConstants.*;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Dictionary;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.openhab.binding.sonos.handler.ZonePlayerHandler;
+import org.openhab.binding.sonos.handler.ZonePlayerSnapshotEngine;
 import org.osgi.service.component.ComponentContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,6 +50,15 @@ public class SonosHandlerFactory extends BaseThingHandlerFactory {
 
 	// optional OPML partner id that can be configured through configuration admin 
 	private String opmlPartnerID = null;
+
+	// the zone group topology shared by all zone players
+	private final SonosZoneGroupTopology zoneGroupTopology = new SonosZoneGroupTopology();
+
+	// the zone player handlers by UDN, maintained on handler creation and removal
+	private final ConcurrentMap<String, ZonePlayerHandler> zonePlayerHandlers = new ConcurrentHashMap<String, ZonePlayerHandler>();
+
+	// saves and restores the state of all zone players concurrently
+	private ZonePlayerSnapshotEngine snapshotEngine = null;
 	
     private final static Collection<ThingTypeUID> SUPPORTED_THING_TYPES_UIDS = Lists.newArrayList(ZONEPLAYER_THING_TYPE_UID);
     
@@ -52,7 +66,17 @@ public class SonosHandlerFactory extends BaseThingHandlerFactory {
     	super.activate(componentContext);
     	Dictionary<String, Object> properties = componentContext.getProperties();
 		opmlPartnerID = (String) properties.get("opmlPartnerID");
+		snapshotEngine = new ZonePlayerSnapshotEngine();
     };
+
+    @Override
+    protected void deactivate(ComponentContext componentContext) {
+    	if (snapshotEngine != null) {
+    		snapshotEngine.shutdown();
+    		snapshotEngine = null;
+    	}
+    	super.deactivate(componentContext);
+    }
     
     @Override
     public Thing createThing(ThingTypeUID thingTypeUID, Configuration configuration,
@@ -80,11 +104,30 @@ public class SonosHandlerFactory extends BaseThingHandlerFactory {
 
         if (thingTypeUID.equals(ZONEPLAYER_THING_TYPE_UID)) {
         	logger.debug("Creating a ZonePlayerHandler for thing '{}' with UDN '{}'",thing.getUID(),thing.getConfiguration().get(UDN));
-            return new ZonePlayerHandler(thing, upnpIOService, discoveryServiceRegistry, opmlPartnerID);
+            ZonePlayerHandler handler = new ZonePlayerHandler(thing, upnpIOService, discoveryServiceRegistry,
+                    opmlPartnerID, zoneGroupTopology, Collections.unmodifiableMap(zonePlayerHandlers),
+                    snapshotEngine);
+            String udn = (String) thing.getConfiguration().get(UDN);
+            if (udn != null) {
+                zonePlayerHandlers.put(udn, handler);
+            }
+            return handler;
         }
 
         return null;
     }
+
+    @Override
+    protected void removeHandler(ThingHandler thingHandler) {
+        if (thingHandler instanceof ZonePlayerHandler) {
+            // removed by value, the UDN may have been changed since the handler was created
+            zonePlayerHandlers.values().remove(thingHandler);
+            if (snapshotEngine != null) {
+                snapshotEngine.remove((ZonePlayerHandler) thingHandler);
+            }
+        }
+        super.removeHandler(thingHandler);
+    }
     
     
     private ThingUID getPlayerUID(ThingTypeUID thingTypeUID, ThingUID thingUID,
@@ -68,6 +68,40 @@ public class SonosXMLParser {
 		albumArtist;
 	}
 
+	/**
+	 * The readers of the threads parsing events. Creating a reader looks up the parser
+	 * implementation each time, so every thread keeps its reader and only the handler
+	 * is created for each document.
+	 */
+	private static final ThreadLocal<XMLReader> READERS = new ThreadLocal<XMLReader>();
+
+	private static final DefaultHandler NO_HANDLER = new DefaultHandler();
+
+	/**
+	 * Parses a document with the reader of the current thread.
+	 *
+	 * @param xml
+	 * @param handler the handler receiving the content of the document
+	 * @throws IOException
+	 * @throws SAXException
+	 */
+	private static void parse(String xml, DefaultHandler handler) throws IOException, SAXException {
+		// take the reader while parsing, so a nested parse on the same thread creates its own
+		XMLReader reader = READERS.get();
+		READERS.remove();
+		if (reader == null) {
+			reader = XMLReaderFactory.createXMLReader();
+		}
+		try {
+			reader.setContentHandler(handler);
+			reader.parse(new InputSource(new StringReader(xml)));
+		} finally {
+			// do not keep the handler and its results reachable
+			reader.setContentHandler(NO_HANDLER);
+			READERS.set(reader);
+		}
+	}
+
 	/**
 	 * @param xml
 	 * @return a list of alarms from the given xml string.
@@ -77,9 +111,7 @@ public class SonosXMLParser {
 	public static List<SonosAlarm> getAlarmsFromStringResult(String xml) {
 		AlarmHandler handler = new AlarmHandler();
 		try {
-			XMLReader reader = XMLReaderFactory.createXMLReader();
-			reader.setContentHandler(handler);
-			reader.parse(new InputSource(new StringReader(xml)));
+			parse(xml, handler);
 		} catch (IOException e) {
 			logger.error("Could not parse Alarms from string '{}",xml);
 		} catch (SAXException s) {
@@ -98,9 +130,7 @@ public class SonosXMLParser {
 	public static List<SonosEntry> getEntriesFromString(String xml)  {
 		EntryHandler handler = new EntryHandler();
 		try {
-			XMLReader reader = XMLReaderFactory.createXMLReader();
-			reader.setContentHandler(handler);
-			reader.parse(new InputSource(new StringReader(xml)));
+			parse(xml, handler);
 		} catch (IOException e) {
 			logger.error("Could not parse Entries from string '{}'",xml);
 		}
@@ -121,9 +151,7 @@ public class SonosXMLParser {
 	public static List<SonosZoneGroup> getZoneGroupFromXML(String xml) {
 		ZoneGroupHandler handler = new ZoneGroupHandler();
 		try {
-			XMLReader reader = XMLReaderFactory.createXMLReader();
-			reader.setContentHandler(handler);
-			reader.parse(new InputSource(new StringReader(xml)));
+			parse(xml, handler);
 		} catch (IOException e) {
 			// This should never happen - we're not performing I/O!
 			logger.error("Could not parse ZoneGroup from string '{}'",xml);
@@ -138,9 +166,7 @@ public class SonosXMLParser {
 	public static List<String> getRadioTimeFromXML(String xml) {
 		OpmlHandler handler = new OpmlHandler();
 		try {
-			XMLReader reader = XMLReaderFactory.createXMLReader();
-			reader.setContentHandler(handler);
-			reader.parse(new InputSource(new StringReader(xml)));
+			parse(xml, handler);
 		} catch (IOException e) {
 			// This should never happen - we're not performing I/O!
 			logger.error("Could not parse RadioTime from string '{}'",xml);
@@ -155,9 +181,7 @@ public class SonosXMLParser {
 	public static Map<String, String> getRenderingControlFromXML(String xml) {
 		RenderingControlEventHandler handler = new RenderingControlEventHandler();
 		try {
-			XMLReader reader = XMLReaderFactory.createXMLReader();
-			reader.setContentHandler(handler);
-			reader.parse(new InputSource(new StringReader(xml)));
+			parse(xml, handler);
 		} catch (IOException e) {
 			// This should never happen - we're not performing I/O!
 			logger.debug("Could not parse Rendering Control from string '{}'", xml);
@@ -170,9 +194,7 @@ public class SonosXMLParser {
 	public static Map<String, String> getAVTransportFromXML(String xml) {
 		AVTransportEventHandler handler = new AVTransportEventHandler();
 		try {
-			XMLReader reader = XMLReaderFactory.createXMLReader();
-			reader.setContentHandler(handler);
-			reader.parse(new InputSource(new StringReader(xml)));
+			parse(xml, handler);
 		} catch (IOException e) {
 			// This should never happen - we're not performing I/O!
 			logger.error("Could not parse AV Transport from string '{}'",xml);
@@ -185,9 +207,7 @@ public class SonosXMLParser {
 	public static SonosMetaData getMetaDataFromXML(String xml)  {
 		MetaDataHandler handler = new MetaDataHandler();
 		try {
-			XMLReader reader = XMLReaderFactory.createXMLReader();
-			reader.setContentHandler(handler);
-			reader.parse(new InputSource(new StringReader(xml)));
+			parse(xml, handler);
 		} catch (IOException e) {
 			// This should never happen - we're not performing I/O!
 			logger.error("Could not parse MetaData from string '{}'",xml);
@@ -9,6 +9,7 @@ package org.openhab.binding.sonos.internal;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -32,10 +33,12 @@ public class SonosZoneGroup implements Cloneable {
 	}
 
 	public SonosZoneGroup(String id, String coordinator, Collection<String> members) {
-		this.members= new ArrayList<String>(members);
-		if (!this.members.contains(coordinator)) {
-			this.members.add(coordinator);
+		List<String> allMembers = new ArrayList<String>(members);
+		if (!allMembers.contains(coordinator)) {
+			allMembers.add(coordinator);
 		}
+		// groups are shared by the snapshots of the zone group topology
+		this.members = Collections.unmodifiableList(allMembers);
 		this.coordinator = coordinator;
 		this.id = id;
 	}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2014 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.sonos.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@link SonosZoneGroupTopology} indexes the ZoneGroupState documents
+ * sent by the Zone Players. All Zone Players of a household send the same
+ * document, so each version is parsed only once and its index is shared by
+ * all handlers.
+ */
+public class SonosZoneGroupTopology {
+
+	/**
+	 * The number of versions kept, as the players do not receive a new
+	 * version all at the same time
+	 */
+	private static final int MAX_VERSIONS = 4;
+
+	private final Map<String, Snapshot> versions = new LinkedHashMap<String, Snapshot>(MAX_VERSIONS, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Snapshot> eldest) {
+			return size() > MAX_VERSIONS;
+		}
+	};
+
+	/**
+	 * @param zoneGroupState
+	 *            the ZoneGroupState xml
+	 * @return the index of the zone groups of the document
+	 */
+	public synchronized Snapshot getSnapshot(String zoneGroupState) {
+		Snapshot snapshot = versions.get(zoneGroupState);
+		if (snapshot == null) {
+			snapshot = new Snapshot(SonosXMLParser.getZoneGroupFromXML(zoneGroupState));
+			versions.put(zoneGroupState, snapshot);
+		}
+		return snapshot;
+	}
+
+	/**
+	 * The {@link Snapshot} is the immutable index of one ZoneGroupState version.
+	 */
+	public static class Snapshot {
+
+		private final List<SonosZoneGroup> groups;
+		private final Map<String, SonosZoneGroup> groupsByMember = new HashMap<String, SonosZoneGroup>();
+
+		private Snapshot(List<SonosZoneGroup> groups) {
+			this.groups = Collections.unmodifiableList(new ArrayList<SonosZoneGroup>(groups));
+			for (SonosZoneGroup group : groups) {
+				for (String member : group.getMembers()) {
+					if (!groupsByMember.containsKey(member)) {
+						groupsByMember.put(member, group);
+					}
+				}
+			}
+		}
+
+		public List<SonosZoneGroup> getGroups() {
+			return groups;
+		}
+
+		/**
+		 * @param udn
+		 * @return the group of the Zone Player, or null if it is not a member of any group
+		 */
+		public SonosZoneGroup getGroup(String udn) {
+			return groupsByMember.get(udn);
+		}
+
+		/**
+		 * @param udn
+		 * @return the coordinator of the group of the Zone Player, or null if it is not a member of any group
+		 */
+		public String getCoordinator(String udn) {
+			SonosZoneGroup group = groupsByMember.get(udn);
+			return group != null ? group.getCoordinator() : null;
+		}
+	}
+
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2014 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.max.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openhab.binding.max.internal.message.C_Message;
+import org.openhab.binding.max.internal.message.DeviceConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parses the C: lines the Cube sends for all devices after connecting. The
+ * bridge only needs the configuration of a device, the settings and the week
+ * program are decoded when they are asked for.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CMessageBenchmark {
+
+	@Param({ "10", "30", "60" })
+	public int devices;
+
+	private String[] lines;
+
+	@Setup
+	public void setUp() {
+		lines = new String[devices];
+		for (int device = 0; device < devices; device++) {
+			lines[device] = Payloads.getCLine(device);
+		}
+	}
+
+	@Benchmark
+	public void configuration(Blackhole blackhole) {
+		for (String line : lines) {
+			blackhole.consume(DeviceConfiguration.create(new C_Message(line)));
+		}
+	}
+
+	@Benchmark
+	public void settingsAndProgram(Blackhole blackhole) {
+		for (String line : lines) {
+			C_Message message = new C_Message(line);
+			blackhole.consume(message.getComfortTemperature());
+			blackhole.consume(message.getEcoTemperature());
+			blackhole.consume(message.getTemperatureOffset());
+			blackhole.consume(message.getBoostDuration());
+			if (message.hasProgram()) {
+				for (int day = 0; day < C_Message.PROGRAM_DAYS; day++) {
+					for (int switchPoint = 0; switchPoint < C_Message.PROGRAM_SWITCH_POINTS; switchPoint++) {
+						blackhole.consume(message.getProgramTemperature(day, switchPoint));
+						blackhole.consume(message.getProgramEndTime(day, switchPoint));
+					}
+				}
+			}
+		}
+	}
+}
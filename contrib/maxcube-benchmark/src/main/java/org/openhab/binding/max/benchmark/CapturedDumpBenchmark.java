@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2014 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.max.benchmark;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openhab.binding.max.internal.message.C_Message;
+import org.openhab.binding.max.internal.message.Device;
+import org.openhab.binding.max.internal.message.DeviceRegistry;
+import org.openhab.binding.max.internal.message.H_Message;
+import org.openhab.binding.max.internal.message.L_Message;
+import org.openhab.binding.max.internal.message.M_Message;
+import org.openhab.binding.max.internal.message.MaxTokenizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Processes the lines captured from the MAX! Cube simulator (see
+ * {@link Payloads#getCapturedLines()}) the way the bridge does after
+ * connecting: the device registry is built from the M: and C: lines and the
+ * devices are created and updated from the L: lines.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CapturedDumpBenchmark {
+
+	private List<String> lines;
+
+	private MaxTokenizer tokenizer;
+	private Set<Device> changedDevices;
+
+	@Setup
+	public void setUp() {
+		lines = Payloads.getCapturedLines();
+		tokenizer = new MaxTokenizer();
+		changedDevices = new LinkedHashSet<Device>();
+	}
+
+	@Benchmark
+	public DeviceRegistry connect() {
+		DeviceRegistry registry = new DeviceRegistry();
+		changedDevices.clear();
+		for (String line : lines) {
+			if (line.startsWith("H:")) {
+				new H_Message(line);
+			} else if (line.startsWith("M:")) {
+				registry.updateMetadata(new M_Message(line));
+			} else if (line.startsWith("C:")) {
+				registry.updateConfiguration(new C_Message(line));
+			} else if (line.startsWith("L:")) {
+				new L_Message(line).updateDevices(registry, tokenizer, changedDevices);
+			}
+		}
+		return registry;
+	}
+}
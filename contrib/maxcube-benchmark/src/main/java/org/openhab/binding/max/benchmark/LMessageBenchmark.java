@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2014 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.max.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.net.util.Base64;
+import org.openhab.binding.max.internal.Utils;
+import org.openhab.binding.max.internal.message.Device;
+import org.openhab.binding.max.internal.message.DeviceConfiguration;
+import org.openhab.binding.max.internal.message.DeviceRegistry;
+import org.openhab.binding.max.internal.message.L_Message;
+import org.openhab.binding.max.internal.message.M_Message;
+import org.openhab.binding.max.internal.message.MaxTokenizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the decoding of a L: line into the known devices by the copying
+ * {@link MaxTokenizer} enumeration, as done by {@link L_Message} before, with
+ * the reusable tokenizer used by {@link L_Message#updateDevices}.
+ *
+ * Two lines are decoded alternately, so the state of every device changes on
+ * every line. Build the benchmarks with <code>mvn package</code> and run them
+ * with the allocation rate reported by the gc profiler:
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar LMessageBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LMessageBenchmark {
+
+	@Param({ "10", "30", "60" })
+	public int devices;
+
+	private String[] lines;
+	private int line = 0;
+
+	private List<DeviceConfiguration> configurations;
+	private List<Device> copyingDevices;
+
+	private DeviceRegistry registry;
+	private MaxTokenizer tokenizer;
+	private Set<Device> changedDevices;
+
+	@Setup
+	public void setUp() {
+		lines = new String[] { Payloads.getLLine(devices, 0), Payloads.getLLine(devices, 1) };
+
+		registry = new DeviceRegistry();
+		registry.updateMetadata(new M_Message(Payloads.getMLine(devices)));
+		configurations = new ArrayList<DeviceConfiguration>(registry.getConfigurations());
+		copyingDevices = new ArrayList<Device>();
+		tokenizer = new MaxTokenizer();
+		changedDevices = new LinkedHashSet<Device>();
+
+		// both paths start with all devices known
+		copyingTokenizer();
+		reusableTokenizer();
+	}
+
+	private String nextLine() {
+		line ^= 1;
+		return lines[line];
+	}
+
+	@Benchmark
+	public Collection<Device> copyingTokenizer() {
+		byte[] decodedRawMessage = Base64.decodeBase64(nextLine().substring(2).getBytes());
+		MaxTokenizer tokenizer = new MaxTokenizer(decodedRawMessage);
+
+		while (tokenizer.hasMoreElements()) {
+			byte[] token = tokenizer.nextElement();
+			String rfAddress = Utils.toHex(token[0] & 0xFF, token[1] & 0xFF, token[2] & 0xFF);
+
+			Device foundDevice = null;
+			for (Device device : copyingDevices) {
+				if (device.getRFAddress().toUpperCase().equals(rfAddress)) {
+					foundDevice = device;
+				}
+			}
+			if (foundDevice != null) {
+				Device.update(token, configurations, foundDevice);
+			} else {
+				Device device = Device.create(token, configurations);
+				if (device != null) {
+					copyingDevices.add(device);
+				}
+			}
+		}
+		return copyingDevices;
+	}
+
+	@Benchmark
+	public Collection<Device> reusableTokenizer() {
+		changedDevices.clear();
+		new L_Message(nextLine()).updateDevices(registry, tokenizer, changedDevices);
+		return changedDevices;
+	}
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright (c) 2014 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.max.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openhab.binding.max.internal.message.DeviceRegistry;
+import org.openhab.binding.max.internal.message.M_Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parses the M: line listing the rooms and devices, and updates the device
+ * registry from it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MMessageBenchmark {
+
+	@Param({ "10", "30", "60" })
+	public int devices;
+
+	private String line;
+
+	@Setup
+	public void setUp() {
+		line = Payloads.getMLine(devices);
+	}
+
+	@Benchmark
+	public M_Message parse() {
+		return new M_Message(line);
+	}
+
+	@Benchmark
+	public DeviceRegistry updateRegistry() {
+		DeviceRegistry registry = new DeviceRegistry();
+		registry.updateMetadata(new M_Message(line));
+		return registry;
+	}
+}
@@ -0,0 +1,248 @@
+/**
+ * Copyright (c) 2014 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.max.benchmark;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.net.util.Base64;
+
+/**
+ * The {@link Payloads} build the lines a MAX! Cube sends for a given number of
+ * devices, with the same layout as lines captured from a Cube. Every sixth
+ * device is a shutter contact, every tenth a wall mounted thermostat and the
+ * others are heating thermostats, spread over five rooms.
+ *
+ * {@link #getCapturedLines()} returns lines captured from the MAX! Cube
+ * simulator in contrib/maxcube-simulator instead.
+ */
+final class Payloads {
+
+	static final String CUBE_SERIAL_NUMBER = "KEQ0000001";
+
+	/**
+	 * The lines sent after connecting and for a poll by the simulator started with
+	 * <code>--thermostats 7 --wall-thermostats 2 --shutter-contacts 3 --rooms 4</code>.
+	 */
+	private static final String CAPTURED_DUMP = "simulator-dump.txt";
+
+	private static final int ROOMS = 5;
+	private static final int FIRST_RF_ADDRESS = 0x100000;
+
+	private static final int TYPE_HEATING_THERMOSTAT = 1;
+	private static final int TYPE_WALL_THERMOSTAT = 3;
+	private static final int TYPE_SHUTTER_CONTACT = 4;
+
+	private Payloads() {
+	}
+
+	static int getType(int device) {
+		if (device % 6 == 5) {
+			return TYPE_SHUTTER_CONTACT;
+		} else if (device % 10 == 9) {
+			return TYPE_WALL_THERMOSTAT;
+		}
+		return TYPE_HEATING_THERMOSTAT;
+	}
+
+	static int getRFAddress(int device) {
+		return FIRST_RF_ADDRESS + device;
+	}
+
+	static String getSerialNumber(int device) {
+		return String.format("KEQ%07d", device + 1);
+	}
+
+	/**
+	 * @return the H: line of the Cube
+	 */
+	static String getHLine() {
+		return "H:" + CUBE_SERIAL_NUMBER + ",0ab0c1,0113,00000000,477719c0,00,32,0d0c1d,1421,03,0000";
+	}
+
+	/**
+	 * @return the M: line listing the rooms and the devices
+	 */
+	static String getMLine(int devices) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		bytes.write(0x56);
+		bytes.write(0x02);
+		bytes.write(ROOMS);
+		for (int room = 1; room <= ROOMS; room++) {
+			bytes.write(room);
+			addString(bytes, "Room " + room);
+			addAddress(bytes, getRFAddress(room - 1));
+		}
+		bytes.write(devices);
+		for (int device = 0; device < devices; device++) {
+			bytes.write(getType(device));
+			addAddress(bytes, getRFAddress(device));
+			addString(bytes, getSerialNumber(device), false);
+			addString(bytes, "Device " + (device + 1));
+			bytes.write(device % ROOMS + 1);
+		}
+		bytes.write(0x01);
+		return "M:00,01," + encode(bytes);
+	}
+
+	/**
+	 * @return the C: line with the configuration and the week program of a device
+	 */
+	static String getCLine(int device) {
+		int type = getType(device);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		addAddress(bytes, getRFAddress(device));
+		bytes.write(type);
+		bytes.write(device % ROOMS + 1);
+		bytes.write(0x10); // firmware
+		bytes.write(0x00); // test result
+		addString(bytes, getSerialNumber(device), false);
+		if (type != TYPE_SHUTTER_CONTACT) {
+			bytes.write(42); // comfort 21.0
+			bytes.write(34); // eco 17.0
+			bytes.write(61); // max 30.5
+			bytes.write(9); // min 4.5
+			if (type == TYPE_HEATING_THERMOSTAT) {
+				bytes.write(7); // offset 0.0
+				bytes.write(24); // window open 12.0
+				bytes.write(3); // window open duration
+				bytes.write(0x19); // boost
+				bytes.write(0x0C); // decalcification
+				bytes.write(0xFF); // valve maximum
+				bytes.write(0x00); // valve offset
+			}
+			for (int day = 0; day < 7; day++) {
+				// 17.0 until 6:00, 21.0 until 22:00, 17.0 until 24:00
+				addSwitchPoint(bytes, 34, 6 * 60);
+				addSwitchPoint(bytes, 42, 22 * 60);
+				for (int switchPoint = 2; switchPoint < 13; switchPoint++) {
+					addSwitchPoint(bytes, 34, 24 * 60);
+				}
+			}
+			if (type == TYPE_WALL_THERMOSTAT) {
+				bytes.write(0x01);
+				bytes.write(0x02);
+				bytes.write(0x03);
+			}
+		}
+		byte[] data = bytes.toByteArray();
+		ByteArrayOutputStream message = new ByteArrayOutputStream();
+		message.write(data.length);
+		message.write(data, 0, data.length);
+		return "C:" + String.format("%06x", getRFAddress(device)) + "," + encode(message);
+	}
+
+	/**
+	 * @param variant
+	 *            lines with a different variant differ in the state of every device
+	 * @return the L: line with the state of all devices
+	 */
+	static String getLLine(int devices, int variant) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		for (int device = 0; device < devices; device++) {
+			int setpoint = 36 + (device + variant) % 8;
+			int actual = 190 + (device * 7 + variant) % 40;
+			switch (getType(device)) {
+			case TYPE_SHUTTER_CONTACT:
+				bytes.write(6);
+				addAddress(bytes, getRFAddress(device));
+				bytes.write(0x00);
+				bytes.write(0x12);
+				bytes.write(0x10 | ((device + variant) % 2 == 0 ? 0x02 : 0x00));
+				break;
+			case TYPE_WALL_THERMOSTAT:
+				bytes.write(12);
+				addAddress(bytes, getRFAddress(device));
+				bytes.write(0x00);
+				bytes.write(0x12);
+				bytes.write(0x18);
+				bytes.write(0x00);
+				bytes.write(setpoint | ((actual >> 1) & 0x80));
+				bytes.write(0x00);
+				bytes.write(0x00);
+				bytes.write(0x00);
+				bytes.write(actual & 0xFF);
+				break;
+			default:
+				bytes.write(11);
+				addAddress(bytes, getRFAddress(device));
+				bytes.write(0x00);
+				bytes.write(0x12);
+				bytes.write(0x18);
+				bytes.write((device * 13 + variant) % 100);
+				bytes.write(setpoint);
+				bytes.write((actual >> 8) & 0xFF);
+				bytes.write(actual & 0xFF);
+				bytes.write(0x00);
+				break;
+			}
+		}
+		return "L:" + encode(bytes);
+	}
+
+	/**
+	 * @return the captured H:, M:, C: and L: lines, in the order they have been received
+	 */
+	static List<String> getCapturedLines() {
+		InputStream in = Payloads.class.getResourceAsStream(CAPTURED_DUMP);
+		if (in == null) {
+			throw new IllegalStateException("Missing resource " + CAPTURED_DUMP);
+		}
+		List<String> lines = new ArrayList<String>();
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(in, "US-ASCII"));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (!line.isEmpty()) {
+						lines.add(line);
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot read resource " + CAPTURED_DUMP, e);
+		}
+		return lines;
+	}
+
+	private static void addAddress(ByteArrayOutputStream bytes, int address) {
+		bytes.write((address >> 16) & 0xFF);
+		bytes.write((address >> 8) & 0xFF);
+		bytes.write(address & 0xFF);
+	}
+
+	private static void addSwitchPoint(ByteArrayOutputStream bytes, int temperature, int endMinutes) {
+		int value = (temperature << 9) | (endMinutes / 5);
+		bytes.write((value >> 8) & 0xFF);
+		bytes.write(value & 0xFF);
+	}
+
+	private static void addString(ByteArrayOutputStream bytes, String value) {
+		addString(bytes, value, true);
+	}
+
+	private static void addString(ByteArrayOutputStream bytes, String value, boolean withLength) {
+		if (withLength) {
+			bytes.write(value.length());
+		}
+		for (int i = 0; i < value.length(); i++) {
+			bytes.write(value.charAt(i) & 0xFF);
+		}
+	}
+
+	private static String encode(ByteArrayOutputStream bytes) {
+		return Base64.encodeBase64StringUnChunked(bytes.toByteArray());
+	}
+}
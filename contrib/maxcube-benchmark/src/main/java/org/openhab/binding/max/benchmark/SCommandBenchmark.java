@@ -0,0 +1,49 @@
+/**
+ * Copyright (c) 2014 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.max.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openhab.binding.max.internal.message.S_Command;
+import org.openhab.binding.max.internal.message.ThermostatModeType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encodes the s: commands for a setpoint change, addressed to the room group
+ * of the device and to the device only.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SCommandBenchmark {
+
+	private String rfAddress = String.format("%06X", Payloads.getRFAddress(0));
+
+	@Benchmark
+	public String groupCommand() {
+		return new S_Command(rfAddress, 1, ThermostatModeType.MANUAL, 21.5).getCommandString();
+	}
+
+	@Benchmark
+	public String deviceCommand() {
+		S_Command command = new S_Command(rfAddress, 1, ThermostatModeType.MANUAL, 21.5);
+		command.setGroupCommand(false);
+		return command.getCommandString();
+	}
+}
@@ -0,0 +1,655 @@
+/**
+ * Copyright (c) 2014 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulates a MAX! Cube LAN gateway, so the MAX! binding can be run and load tested
+ * without eQ-3 hardware.
+ *
+ * The simulator serves the Cube TCP protocol: after connecting it sends the H:, M:, C:
+ * and L: lines, answers <code>l:</code> with a L: line and <code>s:</code> commands with
+ * a S: line, and closes the connection on <code>q:</code>. It also answers the UDP
+ * discovery on port 23272. Optionally it sends L: lines on its own while a connection
+ * is open, as the Cube does when the state of a device changes.
+ *
+ * The number of devices, the response latency, the duty cycle used per command and
+ * forced disconnects can be configured, see {@link #usage()}. Statistics are printed
+ * every 10 seconds.
+ *
+ * The simulator only uses the JDK and is not part of the build:
+ *
+ * <pre>
+ * javac MaxCubeSimulator.java
+ * java MaxCubeSimulator --thermostats 200 --latency 50
+ * </pre>
+ */
+public final class MaxCubeSimulator {
+
+	private static final Charset CHARSET = Charset.forName("ISO-8859-1");
+	private static final String BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+	private static final int TYPE_HEATING_THERMOSTAT = 1;
+	private static final int TYPE_WALL_THERMOSTAT = 3;
+	private static final int TYPE_SHUTTER_CONTACT = 4;
+
+	private int port = 62910;
+	private String serialNumber = "KEQ0000001";
+	private int rfAddress = 0x0AB0C1;
+	private int thermostats = 10;
+	private int wallThermostats = 0;
+	private int shutterContacts = 0;
+	private int rooms = 5;
+	private long latency = 0;
+	private double dutyCyclePerCommand = 1.0;
+	private double dutyCycleRecoveryPerMinute = 100.0 / 60;
+	private int memorySlots = 50;
+	private int disconnectAfter = 0;
+	private double changeRate = 0.1;
+	private long pushInterval = 0;
+	private boolean discovery = true;
+
+	private final List<SimulatedDevice> devices = new ArrayList<SimulatedDevice>();
+	private final Random random = new Random();
+
+	private double dutyCycle = 0;
+	private long dutyCycleUpdated = System.currentTimeMillis();
+
+	private final AtomicLong connections = new AtomicLong();
+	private final AtomicLong polls = new AtomicLong();
+	private final AtomicLong pushes = new AtomicLong();
+	private final AtomicLong commands = new AtomicLong();
+	private final AtomicLong discardedCommands = new AtomicLong();
+	private final AtomicLong disconnects = new AtomicLong();
+	private final AtomicLong discoveries = new AtomicLong();
+
+	private static final class SimulatedDevice {
+		int type;
+		int rfAddress;
+		String serialNumber;
+		String name;
+		int roomId;
+		int mode = 0;
+		int setpoint = 40;
+		int valve = 0;
+		int actualTemperature = 200;
+		boolean batteryLow = false;
+		boolean open = false;
+	}
+
+	public static void main(String[] args) throws IOException {
+		MaxCubeSimulator simulator = new MaxCubeSimulator();
+		try {
+			simulator.parseArguments(args);
+		} catch (RuntimeException e) {
+			System.err.println(e.getMessage());
+			usage();
+			System.exit(1);
+		}
+		simulator.run();
+	}
+
+	private static void usage() {
+		System.err.println("Usage: java MaxCubeSimulator [options]");
+		System.err.println("  --port <port>                TCP port (default 62910)");
+		System.err.println("  --serial <serial>            serial number of the Cube (default KEQ0000001)");
+		System.err.println("  --thermostats <n>            number of heating thermostats (default 10)");
+		System.err.println("  --wall-thermostats <n>       number of wall mounted thermostats (default 0)");
+		System.err.println("  --shutter-contacts <n>       number of shutter contacts (default 0)");
+		System.err.println("  --rooms <n>                  number of rooms (default 5)");
+		System.err.println("  --latency <ms>               delay before each response (default 0)");
+		System.err.println("  --duty-cycle <percent>       duty cycle used per command (default 1.0)");
+		System.err.println("  --duty-cycle-recovery <pct>  duty cycle recovered per minute (default 1.67)");
+		System.err.println("  --memory-slots <n>           free memory slots reported (default 50)");
+		System.err.println("  --disconnect-after <n>       close the connection after n requests (default 0, never)");
+		System.err.println("  --change-rate <fraction>     fraction of devices changing per poll (default 0.1)");
+		System.err.println("  --push-interval <ms>         send changed devices unsolicited at this interval (default 0, never)");
+		System.err.println("  --no-discovery               do not answer UDP discovery");
+	}
+
+	private void parseArguments(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("--no-discovery")) {
+				discovery = false;
+				continue;
+			}
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value for " + arg);
+			}
+			String value = args[++i];
+			if (arg.equals("--port")) {
+				port = Integer.parseInt(value);
+			} else if (arg.equals("--serial")) {
+				if (value.length() != 10) {
+					throw new IllegalArgumentException("The serial number must have 10 characters");
+				}
+				serialNumber = value;
+			} else if (arg.equals("--thermostats")) {
+				thermostats = Integer.parseInt(value);
+			} else if (arg.equals("--wall-thermostats")) {
+				wallThermostats = Integer.parseInt(value);
+			} else if (arg.equals("--shutter-contacts")) {
+				shutterContacts = Integer.parseInt(value);
+			} else if (arg.equals("--rooms")) {
+				rooms = Math.max(1, Math.min(255, Integer.parseInt(value)));
+			} else if (arg.equals("--latency")) {
+				latency = Long.parseLong(value);
+			} else if (arg.equals("--duty-cycle")) {
+				dutyCyclePerCommand = Double.parseDouble(value);
+			} else if (arg.equals("--duty-cycle-recovery")) {
+				dutyCycleRecoveryPerMinute = Double.parseDouble(value);
+			} else if (arg.equals("--memory-slots")) {
+				memorySlots = Integer.parseInt(value);
+			} else if (arg.equals("--disconnect-after")) {
+				disconnectAfter = Integer.parseInt(value);
+			} else if (arg.equals("--change-rate")) {
+				changeRate = Double.parseDouble(value);
+			} else if (arg.equals("--push-interval")) {
+				pushInterval = Long.parseLong(value);
+			} else {
+				throw new IllegalArgumentException("Unknown option " + arg);
+			}
+		}
+		if (thermostats + wallThermostats + shutterContacts > 255) {
+			throw new IllegalArgumentException("The M message supports at most 255 devices");
+		}
+	}
+
+	private void run() throws IOException {
+		createDevices();
+
+		if (discovery) {
+			Thread discoveryThread = new Thread("Discovery") {
+				@Override
+				public void run() {
+					serveDiscovery();
+				}
+			};
+			discoveryThread.setDaemon(true);
+			discoveryThread.start();
+		}
+
+		Thread statisticsThread = new Thread("Statistics") {
+			@Override
+			public void run() {
+				printStatistics();
+			}
+		};
+		statisticsThread.setDaemon(true);
+		statisticsThread.start();
+
+		ServerSocket serverSocket = new ServerSocket(port);
+		System.out.println("MAX! Cube " + serialNumber + " simulating " + devices.size() + " devices on port " + port);
+		while (true) {
+			final Socket socket = serverSocket.accept();
+			connections.incrementAndGet();
+			Thread connectionThread = new Thread("Connection " + socket.getRemoteSocketAddress()) {
+				@Override
+				public void run() {
+					serve(socket);
+				}
+			};
+			connectionThread.setDaemon(true);
+			connectionThread.start();
+		}
+	}
+
+	private void createDevices() {
+		int address = 0x100000;
+		for (int i = 0; i < thermostats + wallThermostats + shutterContacts; i++) {
+			SimulatedDevice device = new SimulatedDevice();
+			if (i < thermostats) {
+				device.type = TYPE_HEATING_THERMOSTAT;
+				device.name = "Thermostat " + (i + 1);
+			} else if (i < thermostats + wallThermostats) {
+				device.type = TYPE_WALL_THERMOSTAT;
+				device.name = "Wall Thermostat " + (i + 1 - thermostats);
+			} else {
+				device.type = TYPE_SHUTTER_CONTACT;
+				device.name = "Window " + (i + 1 - thermostats - wallThermostats);
+			}
+			device.rfAddress = address + i;
+			device.serialNumber = String.format("SIM%07d", i + 1);
+			device.roomId = i % rooms + 1;
+			device.actualTemperature = 180 + random.nextInt(50);
+			devices.add(device);
+		}
+	}
+
+	private void serve(final Socket socket) {
+		int requests = 0;
+		try {
+			socket.setTcpNoDelay(true);
+			BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), CHARSET));
+			final OutputStream out = socket.getOutputStream();
+
+			delay();
+			StringBuilder hello = new StringBuilder();
+			hello.append(getHLine()).append("\r\n");
+			hello.append(getMLine()).append("\r\n");
+			synchronized (this) {
+				for (SimulatedDevice device : devices) {
+					hello.append(getCLine(device)).append("\r\n");
+				}
+			}
+			hello.append(getLLine()).append("\r\n");
+			out.write(hello.toString().getBytes(CHARSET));
+			out.flush();
+
+			if (pushInterval > 0) {
+				Thread pushThread = new Thread("Push " + socket.getRemoteSocketAddress()) {
+					@Override
+					public void run() {
+						push(socket, out);
+					}
+				};
+				pushThread.setDaemon(true);
+				pushThread.start();
+			}
+
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.isEmpty()) {
+					continue;
+				}
+				String response;
+				if (line.startsWith("l:")) {
+					polls.incrementAndGet();
+					changeDevices();
+					response = getLLine();
+				} else if (line.startsWith("s:")) {
+					commands.incrementAndGet();
+					response = executeCommand(line.substring(2));
+				} else if (line.startsWith("q:")) {
+					break;
+				} else {
+					System.out.println("Unsupported request '" + line + "'");
+					continue;
+				}
+				delay();
+				synchronized (out) {
+					out.write((response + "\r\n").getBytes(CHARSET));
+					out.flush();
+				}
+
+				if (disconnectAfter > 0 && ++requests >= disconnectAfter) {
+					disconnects.incrementAndGet();
+					break;
+				}
+			}
+		} catch (SocketException e) {
+			// connection closed by the client
+		} catch (IOException e) {
+			System.out.println("Connection error: " + e.getMessage());
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * Sends the L: line with the changed devices at the push interval until the connection is closed.
+	 */
+	private void push(Socket socket, OutputStream out) {
+		while (!socket.isClosed()) {
+			try {
+				Thread.sleep(pushInterval);
+				String line = getLLine(changeDevices());
+				if (line == null) {
+					continue;
+				}
+				synchronized (out) {
+					out.write((line + "\r\n").getBytes(CHARSET));
+					out.flush();
+				}
+				pushes.incrementAndGet();
+			} catch (InterruptedException e) {
+				return;
+			} catch (IOException e) {
+				return;
+			}
+		}
+	}
+
+	private void delay() {
+		if (latency > 0) {
+			try {
+				Thread.sleep(latency);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private synchronized int getDutyCycle() {
+		long now = System.currentTimeMillis();
+		dutyCycle = Math.max(0, dutyCycle - (now - dutyCycleUpdated) * dutyCycleRecoveryPerMinute / 60000);
+		dutyCycleUpdated = now;
+		return (int) Math.min(100, Math.ceil(dutyCycle));
+	}
+
+	private String getHLine() {
+		Calendar cal = Calendar.getInstance();
+		return "H:" + serialNumber + "," + hex(rfAddress, 6) + ",0113,00000000," + hex(random.nextInt(0xFFFF), 8)
+				+ "," + hex(getDutyCycle(), 2) + "," + hex(memorySlots, 2) + ","
+				+ hex(cal.get(Calendar.YEAR) % 100, 2) + hex(cal.get(Calendar.MONTH) + 1, 2)
+				+ hex(cal.get(Calendar.DAY_OF_MONTH), 2) + "," + hex(cal.get(Calendar.HOUR_OF_DAY), 2)
+				+ hex(cal.get(Calendar.MINUTE), 2) + ",03,0000";
+	}
+
+	private synchronized String getMLine() {
+		List<Integer> bytes = new ArrayList<Integer>();
+		bytes.add(0x56);
+		bytes.add(0x02);
+		bytes.add(rooms);
+		for (int room = 1; room <= rooms; room++) {
+			bytes.add(room);
+			addString(bytes, "Room " + room);
+			addAddress(bytes, getRoomGroupAddress(room));
+		}
+		bytes.add(devices.size());
+		for (SimulatedDevice device : devices) {
+			bytes.add(device.type);
+			addAddress(bytes, device.rfAddress);
+			for (char c : device.serialNumber.toCharArray()) {
+				bytes.add((int) c);
+			}
+			addString(bytes, device.name);
+			bytes.add(device.roomId);
+		}
+		bytes.add(0x01);
+		return "M:00,01," + base64Encode(bytes);
+	}
+
+	private int getRoomGroupAddress(int room) {
+		for (SimulatedDevice device : devices) {
+			if (device.roomId == room && device.type != TYPE_SHUTTER_CONTACT) {
+				return device.rfAddress;
+			}
+		}
+		return 0;
+	}
+
+	private String getCLine(SimulatedDevice device) {
+		List<Integer> bytes = new ArrayList<Integer>();
+		bytes.add(0); // length, set below
+		addAddress(bytes, device.rfAddress);
+		bytes.add(device.type);
+		bytes.add(device.roomId);
+		bytes.add(0x10); // firmware
+		bytes.add(0x00); // test result
+		for (char c : device.serialNumber.toCharArray()) {
+			bytes.add((int) c);
+		}
+		if (device.type == TYPE_HEATING_THERMOSTAT || device.type == TYPE_WALL_THERMOSTAT) {
+			bytes.add(42); // comfort 21.0
+			bytes.add(34); // eco 17.0
+			bytes.add(61); // max 30.5
+			bytes.add(9); // min 4.5
+			if (device.type == TYPE_HEATING_THERMOSTAT) {
+				bytes.add(7); // offset 0.0
+				bytes.add(24); // window open 12.0
+				bytes.add(3); // window open duration
+				bytes.add(0x19); // boost
+				bytes.add(0x0C); // decalcification
+				bytes.add(0xFF); // valve maximum
+				bytes.add(0x00); // valve offset
+			}
+			for (int i = 0; i < 7 * 13; i++) {
+				// 17.0 until 24:00
+				bytes.add(0x44);
+				bytes.add(0x20);
+			}
+			if (device.type == TYPE_WALL_THERMOSTAT) {
+				bytes.add(0x01);
+				bytes.add(0x02);
+				bytes.add(0x03);
+			}
+		}
+		bytes.set(0, bytes.size() - 1);
+		return "C:" + hex(device.rfAddress, 6).toLowerCase() + "," + base64Encode(bytes);
+	}
+
+	private synchronized String getLLine() {
+		return getLLine(devices);
+	}
+
+	/**
+	 * @return the L: line with the given devices, null if there are none
+	 */
+	private synchronized String getLLine(List<SimulatedDevice> lineDevices) {
+		if (lineDevices.isEmpty()) {
+			return null;
+		}
+		List<Integer> bytes = new ArrayList<Integer>();
+		for (SimulatedDevice device : lineDevices) {
+			int flags2 = 0x10 | (device.batteryLow ? 0x80 : 0);
+			switch (device.type) {
+			case TYPE_SHUTTER_CONTACT:
+				bytes.add(6);
+				addAddress(bytes, device.rfAddress);
+				bytes.add(0x00);
+				bytes.add(0x12);
+				bytes.add(flags2 | (device.open ? 0x02 : 0x00));
+				break;
+			case TYPE_WALL_THERMOSTAT:
+				bytes.add(12);
+				addAddress(bytes, device.rfAddress);
+				bytes.add(0x00);
+				bytes.add(0x12);
+				bytes.add(flags2 | device.mode);
+				bytes.add(device.valve);
+				bytes.add(device.setpoint | ((device.actualTemperature >> 1) & 0x80));
+				bytes.add(0x00);
+				bytes.add(0x00);
+				bytes.add(0x00);
+				bytes.add(device.actualTemperature & 0xFF);
+				break;
+			default:
+				bytes.add(11);
+				addAddress(bytes, device.rfAddress);
+				bytes.add(0x00);
+				bytes.add(0x12);
+				bytes.add(flags2 | device.mode);
+				bytes.add(device.valve);
+				bytes.add(device.setpoint);
+				bytes.add((device.actualTemperature >> 8) & 0xFF);
+				bytes.add(device.actualTemperature & 0xFF);
+				bytes.add(0x00);
+				break;
+			}
+		}
+		return "L:" + base64Encode(bytes);
+	}
+
+	/**
+	 * @return the changed devices
+	 */
+	private synchronized List<SimulatedDevice> changeDevices() {
+		List<SimulatedDevice> changed = new ArrayList<SimulatedDevice>();
+		for (SimulatedDevice device : devices) {
+			if (random.nextDouble() >= changeRate) {
+				continue;
+			}
+			changed.add(device);
+			if (device.type == TYPE_SHUTTER_CONTACT) {
+				device.open = !device.open;
+			} else {
+				device.actualTemperature = Math.max(50, Math.min(300, device.actualTemperature + random.nextInt(5) - 2));
+				device.valve = Math.max(0, Math.min(100, device.valve + random.nextInt(11) - 5));
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Executes a S command. Only setting the temperature and mode of a device or a room is supported,
+	 * other commands are acknowledged without effect.
+	 */
+	private synchronized String executeCommand(String payload) {
+		int dutyCycle = getDutyCycle();
+		if (dutyCycle + dutyCyclePerCommand > 100) {
+			discardedCommands.incrementAndGet();
+			return "S:" + hex(dutyCycle, 2) + ",1," + hex(memorySlots, 2);
+		}
+		this.dutyCycle += dutyCyclePerCommand;
+
+		byte[] bytes = base64Decode(payload);
+		if (bytes.length >= 11 && bytes[2] == 0x40) {
+			boolean group = (bytes[3] & 0x04) != 0;
+			int address = ((bytes[6] & 0xFF) << 16) | ((bytes[7] & 0xFF) << 8) | (bytes[8] & 0xFF);
+			int roomId = bytes[9] & 0xFF;
+			int value = bytes[10] & 0xFF;
+			for (SimulatedDevice device : devices) {
+				if (device.type != TYPE_SHUTTER_CONTACT
+						&& (group ? device.roomId == roomId || roomId == 0 : device.rfAddress == address)) {
+					device.mode = (value >> 6) & 0x03;
+					if ((value & 0x3F) != 0) {
+						device.setpoint = value & 0x3F;
+					}
+				}
+			}
+		}
+		return "S:" + hex(getDutyCycle(), 2) + ",0," + hex(memorySlots, 2);
+	}
+
+	private void serveDiscovery() {
+		DatagramSocket socket = null;
+		try {
+			socket = new DatagramSocket(null);
+			socket.setReuseAddress(true);
+			socket.setBroadcast(true);
+			socket.bind(new java.net.InetSocketAddress(23272));
+			byte[] buffer = new byte[1500];
+			while (true) {
+				DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+				socket.receive(packet);
+				String request = new String(packet.getData(), 0, packet.getLength(), CHARSET);
+				if (!request.startsWith("eQ3Max*") || request.length() < 19) {
+					continue;
+				}
+				String requestedSerial = request.substring(8, 18);
+				if (!requestedSerial.equals("**********") && !requestedSerial.equals(serialNumber)) {
+					continue;
+				}
+				discoveries.incrementAndGet();
+				List<Integer> response = new ArrayList<Integer>();
+				for (char c : ("eQ3MaxAp" + serialNumber + ">I").toCharArray()) {
+					response.add((int) c);
+				}
+				response.add(0x00);
+				addAddress(response, rfAddress);
+				response.add(0x01);
+				response.add(0x13);
+				byte[] data = toBytes(response);
+				socket.send(new DatagramPacket(data, data.length, packet.getAddress(), 23272));
+			}
+		} catch (IOException e) {
+			System.out.println("Discovery stopped: " + e.getMessage());
+		} finally {
+			if (socket != null) {
+				socket.close();
+			}
+		}
+	}
+
+	private void printStatistics() {
+		while (true) {
+			try {
+				Thread.sleep(10000);
+			} catch (InterruptedException e) {
+				return;
+			}
+			System.out.println("connections: " + connections + ", polls: " + polls + ", pushes: " + pushes + ", commands: " + commands
+					+ ", discarded: " + discardedCommands + ", forced disconnects: " + disconnects + ", discoveries: "
+					+ discoveries + ", duty cycle: " + getDutyCycle() + "%");
+		}
+	}
+
+	private static void addAddress(List<Integer> bytes, int address) {
+		bytes.add((address >> 16) & 0xFF);
+		bytes.add((address >> 8) & 0xFF);
+		bytes.add(address & 0xFF);
+	}
+
+	private static void addString(List<Integer> bytes, String value) {
+		bytes.add(value.length());
+		for (char c : value.toCharArray()) {
+			bytes.add(c & 0xFF);
+		}
+	}
+
+	private static String hex(int value, int digits) {
+		String hex = Integer.toHexString(value).toUpperCase();
+		while (hex.length() < digits) {
+			hex = "0" + hex;
+		}
+		return hex;
+	}
+
+	private static byte[] toBytes(List<Integer> values) {
+		byte[] bytes = new byte[values.size()];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) (int) values.get(i);
+		}
+		return bytes;
+	}
+
+	private static String base64Encode(List<Integer> values) {
+		byte[] bytes = toBytes(values);
+		StringBuilder result = new StringBuilder((bytes.length + 2) / 3 * 4);
+		for (int i = 0; i < bytes.length; i += 3) {
+			int b0 = bytes[i] & 0xFF;
+			int b1 = i + 1 < bytes.length ? bytes[i + 1] & 0xFF : 0;
+			int b2 = i + 2 < bytes.length ? bytes[i + 2] & 0xFF : 0;
+			result.append(BASE64.charAt(b0 >> 2));
+			result.append(BASE64.charAt(((b0 & 0x03) << 4) | (b1 >> 4)));
+			result.append(i + 1 < bytes.length ? BASE64.charAt(((b1 & 0x0F) << 2) | (b2 >> 6)) : '=');
+			result.append(i + 2 < bytes.length ? BASE64.charAt(b2 & 0x3F) : '=');
+		}
+		return result.toString();
+	}
+
+	private static byte[] base64Decode(String value) {
+		List<Integer> bytes = new ArrayList<Integer>();
+		int bits = 0;
+		int bitCount = 0;
+		for (char c : value.toCharArray()) {
+			int index = BASE64.indexOf(c);
+			if (index < 0) {
+				continue;
+			}
+			bits = (bits << 6) | index;
+			bitCount += 6;
+			if (bitCount >= 8) {
+				bitCount -= 8;
+				bytes.add((bits >> bitCount) & 0xFF);
+			}
+		}
+		return toBytes(bytes);
+	}
+}
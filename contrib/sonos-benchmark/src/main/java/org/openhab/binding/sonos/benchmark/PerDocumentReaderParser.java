@@ -0,0 +1,256 @@
+/**
+ * Copyright (c) 2014 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.sonos.benchmark;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openhab.binding.sonos.internal.SonosMetaData;
+import org.openhab.binding.sonos.internal.SonosXMLParser;
+import org.openhab.binding.sonos.internal.SonosZoneGroup;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+/**
+ * The entry points of the {@link SonosXMLParser} as they were before the parser
+ * kept a reader per thread: every document is parsed by a new reader. The
+ * handlers are copies of the handlers of the parser, so both return the same
+ * results.
+ */
+final class PerDocumentReaderParser {
+
+	private PerDocumentReaderParser() {
+	}
+
+	static Map<String, String> getAVTransportFromXML(String xml) throws IOException, SAXException {
+		AVTransportEventHandler handler = new AVTransportEventHandler();
+		parse(xml, handler);
+		return handler.getChanges();
+	}
+
+	static Map<String, String> getRenderingControlFromXML(String xml) throws IOException, SAXException {
+		RenderingControlEventHandler handler = new RenderingControlEventHandler();
+		parse(xml, handler);
+		return handler.getChanges();
+	}
+
+	static SonosMetaData getMetaDataFromXML(String xml) throws IOException, SAXException {
+		MetaDataHandler handler = new MetaDataHandler();
+		parse(xml, handler);
+		return handler.getMetaData();
+	}
+
+	static List<SonosZoneGroup> getZoneGroupFromXML(String xml) throws IOException, SAXException {
+		ZoneGroupHandler handler = new ZoneGroupHandler();
+		parse(xml, handler);
+		return handler.getGroups();
+	}
+
+	private static void parse(String xml, DefaultHandler handler) throws IOException, SAXException {
+		XMLReader reader = XMLReaderFactory.createXMLReader();
+		reader.setContentHandler(handler);
+		reader.parse(new InputSource(new StringReader(xml)));
+	}
+
+	private enum CurrentElement {
+		item,
+		res,
+		streamContent,
+		albumArtURI,
+		title,
+		upnpClass,
+		creator,
+		album,
+		albumArtist;
+	}
+
+	private static class ZoneGroupHandler extends DefaultHandler {
+
+		private final List<SonosZoneGroup> groups = new ArrayList<SonosZoneGroup>();
+		private final List<String> currentGroupPlayers = new ArrayList<String>();
+		private String coordinator;
+		private String groupId;
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+			if (qName.equals("ZoneGroup")) {
+				groupId = attributes.getValue("ID");
+				coordinator = attributes.getValue("Coordinator");
+			} else if (qName.equals("ZoneGroupMember")) {
+				currentGroupPlayers.add(attributes.getValue("UUID"));
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+			if (qName.equals("ZoneGroup")) {
+				groups.add(new SonosZoneGroup(groupId, coordinator, currentGroupPlayers));
+				currentGroupPlayers.clear();
+			}
+		}
+
+		public List<SonosZoneGroup> getGroups() {
+			return groups;
+		}
+	}
+
+	private static class AVTransportEventHandler extends DefaultHandler {
+
+		private final Map<String, String> changes = new HashMap<String, String>();
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+			// the events are all of the form <qName val="value"/>
+			if (atts.getValue("val") != null) {
+				changes.put(localName, atts.getValue("val"));
+			}
+		}
+
+		public Map<String, String> getChanges() {
+			return changes;
+		}
+	}
+
+	private static class MetaDataHandler extends DefaultHandler {
+
+		private CurrentElement currentElement = null;
+
+		private String id = "-1";
+		private String parentId = "-1";
+		private StringBuilder resource = new StringBuilder();
+		private StringBuilder streamContent = new StringBuilder();
+		private StringBuilder albumArtUri = new StringBuilder();
+		private StringBuilder title = new StringBuilder();
+		private StringBuilder upnpClass = new StringBuilder();
+		private StringBuilder creator = new StringBuilder();
+		private StringBuilder album = new StringBuilder();
+		private StringBuilder albumArtist = new StringBuilder();
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+			if ("item".equals(localName)) {
+				currentElement = CurrentElement.item;
+				id = atts.getValue("id");
+				parentId = atts.getValue("parentID");
+			} else if ("res".equals(localName)) {
+				currentElement = CurrentElement.res;
+			} else if ("streamContent".equals(localName)) {
+				currentElement = CurrentElement.streamContent;
+			} else if ("albumArtURI".equals(localName)) {
+				currentElement = CurrentElement.albumArtURI;
+			} else if ("title".equals(localName)) {
+				currentElement = CurrentElement.title;
+			} else if ("class".equals(localName)) {
+				currentElement = CurrentElement.upnpClass;
+			} else if ("creator".equals(localName)) {
+				currentElement = CurrentElement.creator;
+			} else if ("album".equals(localName)) {
+				currentElement = CurrentElement.album;
+			} else if ("albumArtist".equals(localName)) {
+				currentElement = CurrentElement.albumArtist;
+			} else {
+				// unknown element
+				currentElement = null;
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) throws SAXException {
+			if (currentElement != null) {
+				switch (currentElement) {
+				case item:
+					break;
+				case res:
+					resource.append(ch, start, length);
+					break;
+				case streamContent:
+					streamContent.append(ch, start, length);
+					break;
+				case albumArtURI:
+					albumArtUri.append(ch, start, length);
+					break;
+				case title:
+					title.append(ch, start, length);
+					break;
+				case upnpClass:
+					upnpClass.append(ch, start, length);
+					break;
+				case creator:
+					creator.append(ch, start, length);
+					break;
+				case album:
+					album.append(ch, start, length);
+					break;
+				case albumArtist:
+					albumArtist.append(ch, start, length);
+					break;
+				}
+			}
+		}
+
+		public SonosMetaData getMetaData() {
+			return new SonosMetaData(id, parentId, resource.toString(), streamContent.toString(),
+					albumArtUri.toString(), title.toString(), upnpClass.toString(), creator.toString(),
+					album.toString(), albumArtist.toString());
+		}
+	}
+
+	private static class RenderingControlEventHandler extends DefaultHandler {
+
+		private final Map<String, String> changes = new HashMap<String, String>();
+
+		private boolean getPresetName = false;
+		private String presetName;
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+			if ("Volume".equals(qName)) {
+				changes.put(qName + atts.getValue("channel"), atts.getValue("val"));
+			} else if ("Mute".equals(qName)) {
+				changes.put(qName + atts.getValue("channel"), atts.getValue("val"));
+			} else if ("Bass".equals(qName)) {
+				changes.put(qName, atts.getValue("val"));
+			} else if ("Treble".equals(qName)) {
+				changes.put(qName, atts.getValue("val"));
+			} else if ("Loudness".equals(qName)) {
+				changes.put(qName + atts.getValue("channel"), atts.getValue("val"));
+			} else if ("OutputFixed".equals(qName)) {
+				changes.put(qName, atts.getValue("val"));
+			} else if ("PresetNameList".equals(qName)) {
+				getPresetName = true;
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) throws SAXException {
+			if (getPresetName) {
+				presetName = new String(ch, start, length);
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+			if (getPresetName) {
+				getPresetName = false;
+				changes.put(qName, presetName);
+			}
+		}
+
+		public Map<String, String> getChanges() {
+			return changes;
+		}
+	}
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright (c) 2014 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.sonos.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openhab.binding.sonos.internal.SonosMetaData;
+import org.openhab.binding.sonos.internal.SonosXMLParser;
+import org.openhab.binding.sonos.internal.SonosZoneGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.SAXException;
+
+/**
+ * Parses the documents the Zone Players send with their GENA events by the
+ * {@link SonosXMLParser}, which keeps a reader per thread.
+ *
+ * The <code>...NewReader</code> benchmarks parse the same documents with the
+ * {@link PerDocumentReaderParser}, which creates a reader for each document, as
+ * every entry point of the parser did before. Both parsers are checked to return
+ * the same results in {@link #setUp()}. The Zone Players send their events
+ * concurrently, run the benchmarks with one thread per player and the gc
+ * profiler:
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar -t 14 -prof gc
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SonosXMLParserBenchmark {
+
+	private static final int ZONE_PLAYERS = 14;
+
+	private static final String AV_TRANSPORT_EVENT = "<Event xmlns=\"urn:schemas-upnp-org:metadata-1-0/AVT/\" "
+			+ "xmlns:r=\"urn:schemas-rinconnetworks-com:metadata-1-0/\"><InstanceID val=\"0\">"
+			+ "<TransportState val=\"PLAYING\"/><CurrentPlayMode val=\"NORMAL\"/><CurrentCrossfadeMode val=\"0\"/>"
+			+ "<NumberOfTracks val=\"12\"/><CurrentTrack val=\"3\"/><CurrentSection val=\"0\"/>"
+			+ "<CurrentTrackURI val=\"x-file-cifs://nas/music/Artist/Album/03%20Song.mp3\"/>"
+			+ "<CurrentTrackDuration val=\"0:03:41\"/>"
+			+ "<CurrentTrackMetaData val=\"&lt;DIDL-Lite xmlns:dc=&quot;http://purl.org/dc/elements/1.1/&quot; "
+			+ "xmlns:upnp=&quot;urn:schemas-upnp-org:metadata-1-0/upnp/&quot; "
+			+ "xmlns=&quot;urn:schemas-upnp-org:metadata-1-0/DIDL-Lite/&quot;&gt;&lt;item id=&quot;-1&quot; "
+			+ "parentID=&quot;-1&quot; restricted=&quot;true&quot;&gt;&lt;dc:title&gt;Song&lt;/dc:title&gt;"
+			+ "&lt;upnp:class&gt;object.item.audioItem.musicTrack&lt;/upnp:class&gt;&lt;/item&gt;&lt;/DIDL-Lite&gt;\"/>"
+			+ "<r:NextTrackURI val=\"x-file-cifs://nas/music/Artist/Album/04%20Song.mp3\"/>"
+			+ "<AVTransportURI val=\"x-rincon-queue:RINCON_000E58000000001400#0\"/>"
+			+ "<TransportPlaySpeed val=\"1\"/><CurrentValidPlayModes val=\"SHUFFLE,REPEAT,CROSSFADE\"/>"
+			+ "</InstanceID></Event>";
+
+	private static final String RENDERING_CONTROL_EVENT = "<Event xmlns=\"urn:schemas-upnp-org:metadata-1-0/RCS/\">"
+			+ "<InstanceID val=\"0\"><Volume channel=\"Master\" val=\"23\"/><Volume channel=\"LF\" val=\"100\"/>"
+			+ "<Volume channel=\"RF\" val=\"100\"/><Mute channel=\"Master\" val=\"0\"/><Mute channel=\"LF\" val=\"0\"/>"
+			+ "<Mute channel=\"RF\" val=\"0\"/><Bass val=\"0\"/><Treble val=\"0\"/>"
+			+ "<Loudness channel=\"Master\" val=\"1\"/><OutputFixed val=\"0\"/>"
+			+ "<PresetNameList>FactoryDefaults</PresetNameList></InstanceID></Event>";
+
+	private static final String META_DATA = "<DIDL-Lite xmlns:dc=\"http://purl.org/dc/elements/1.1/\" "
+			+ "xmlns:upnp=\"urn:schemas-upnp-org:metadata-1-0/upnp/\" "
+			+ "xmlns:r=\"urn:schemas-rinconnetworks-com:metadata-1-0/\" "
+			+ "xmlns=\"urn:schemas-upnp-org:metadata-1-0/DIDL-Lite/\"><item id=\"-1\" parentID=\"-1\" "
+			+ "restricted=\"true\"><res protocolInfo=\"x-file-cifs:*:audio/mpeg:*\" duration=\"0:03:41\">"
+			+ "x-file-cifs://nas/music/Artist/Album/03%20Song.mp3</res><r:streamContent></r:streamContent>"
+			+ "<upnp:albumArtURI>/getaa?s=1&amp;u=x-file-cifs%3a%2f%2fnas%2fmusic%2f03%2520Song.mp3</upnp:albumArtURI>"
+			+ "<dc:title>Song</dc:title><upnp:class>object.item.audioItem.musicTrack</upnp:class>"
+			+ "<dc:creator>Artist</dc:creator><upnp:album>Album</upnp:album><r:albumArtist>Artist</r:albumArtist>"
+			+ "</item></DIDL-Lite>";
+
+	private String zoneGroupState;
+
+	@Setup
+	public void setUp() throws IOException, SAXException {
+		// the players of a household in groups of up to three
+		StringBuilder xml = new StringBuilder("<ZoneGroups>");
+		for (int player = 0; player < ZONE_PLAYERS; player++) {
+			String udn = String.format("RINCON_000E5800000%07d", player);
+			if (player % 3 == 0) {
+				if (player > 0) {
+					xml.append("</ZoneGroup>");
+				}
+				xml.append("<ZoneGroup Coordinator=\"").append(udn).append("\" ID=\"").append(udn).append(":")
+						.append(player).append("\">");
+			}
+			xml.append("<ZoneGroupMember UUID=\"").append(udn).append("\" Location=\"http://192.168.1.")
+					.append(100 + player).append(":1400/xml/device_description.xml\" ZoneName=\"Room ")
+					.append(player + 1).append("\" Icon=\"x-rincon-roomicon:living\" SoftwareVersion=\"27.2-80271\"/>");
+		}
+		xml.append("</ZoneGroup></ZoneGroups>");
+		zoneGroupState = xml.toString();
+
+		check("AVTransport", avTransport(), avTransportNewReader());
+		check("RenderingControl", renderingControl(), renderingControlNewReader());
+		check("metadata", metaData().toString(), metaDataNewReader().toString());
+		check("ZoneGroupState", describe(zoneGroupState()), describe(zoneGroupStateNewReader()));
+	}
+
+	private static void check(String document, Object result, Object expected) {
+		if (!result.equals(expected)) {
+			throw new IllegalStateException("The " + document + " results differ: " + result + " instead of "
+					+ expected);
+		}
+	}
+
+	private static String describe(List<SonosZoneGroup> groups) {
+		StringBuilder description = new StringBuilder();
+		for (SonosZoneGroup group : groups) {
+			description.append(group.getId()).append(' ').append(group.getCoordinator()).append(' ')
+					.append(group.getMembers()).append('\n');
+		}
+		return description.toString();
+	}
+
+	@Benchmark
+	public Map<String, String> avTransport() {
+		return SonosXMLParser.getAVTransportFromXML(AV_TRANSPORT_EVENT);
+	}
+
+	@Benchmark
+	public Map<String, String> renderingControl() {
+		return SonosXMLParser.getRenderingControlFromXML(RENDERING_CONTROL_EVENT);
+	}
+
+	@Benchmark
+	public SonosMetaData metaData() {
+		return SonosXMLParser.getMetaDataFromXML(META_DATA);
+	}
+
+	@Benchmark
+	public List<SonosZoneGroup> zoneGroupState() {
+		return SonosXMLParser.getZoneGroupFromXML(zoneGroupState);
+	}
+
+	@Benchmark
+	public Map<String, String> avTransportNewReader() throws IOException, SAXException {
+		return PerDocumentReaderParser.getAVTransportFromXML(AV_TRANSPORT_EVENT);
+	}
+
+	@Benchmark
+	public Map<String, String> renderingControlNewReader() throws IOException, SAXException {
+		return PerDocumentReaderParser.getRenderingControlFromXML(RENDERING_CONTROL_EVENT);
+	}
+
+	@Benchmark
+	public SonosMetaData metaDataNewReader() throws IOException, SAXException {
+		return PerDocumentReaderParser.getMetaDataFromXML(META_DATA);
+	}
+
+	@Benchmark
+	public List<SonosZoneGroup> zoneGroupStateNewReader() throws IOException, SAXException {
+		return PerDocumentReaderParser.getZoneGroupFromXML(zoneGroupState);
+	}
+}